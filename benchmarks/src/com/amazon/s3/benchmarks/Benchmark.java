@@ -0,0 +1,100 @@
+package com.amazon.s3.benchmarks;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing helpers shared by the benchmarks. Each task is run a number of times
+ * to warm up, then timed over a number of runs, and the median is reported.
+ */
+public class Benchmark {
+
+	/** A piece of work to time. */
+	public static abstract class Task {
+		public abstract void run() throws Exception;
+	}
+
+	/** An output stream that discards what's written to it. */
+	public static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	/**
+	 * Times a task and prints its median time per run, in milliseconds.
+	 *
+	 * @return The median time per run, in nanoseconds.
+	 */
+	public static long measure(String name, int warmups, int runs, Task task)
+			throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			task.run();
+		}
+
+		long[] times = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			task.run();
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		long median = times[runs / 2];
+		System.out.println(String.format(Locale.US, "%-40s %10.3f ms", name,
+				median / 1e6));
+		return median;
+	}
+
+	/** Prints how many times faster the second time is than the first. */
+	public static void printSpeedup(String name, long before, long after) {
+		System.out.println(String.format(Locale.US, "%-40s %10.2fx", name,
+				(double) before / after));
+	}
+
+	/** Reads a recorded input, such as a response document, into memory. */
+	public static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns an integer argument, or the default if it isn't given. */
+	public static int intArg(String[] args, int index, int defaultValue) {
+		return args.length > index ? Integer.parseInt(args[index])
+				: defaultValue;
+	}
+}
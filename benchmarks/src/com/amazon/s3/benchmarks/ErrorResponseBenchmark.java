@@ -0,0 +1,92 @@
+package com.amazon.s3.benchmarks;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.w3c.dom.Document;
+
+import com.amazon.s3.DefaultRequest;
+import com.amazon.s3.exceptions.AmazonServiceException.ErrorType;
+import com.amazon.s3.http.HttpMethodName;
+import com.amazon.s3.http.HttpResponse;
+import com.amazon.s3.internal.S3ErrorResponseHandler;
+import com.amazon.s3.model.AmazonS3Exception;
+import com.amazon.s3.util.XpathUtils;
+
+/**
+ * Compares turning a recorded error response into an exception by building a
+ * DOM and looking up each field in it, as {@link S3ErrorResponseHandler} used
+ * to, with the handler's single streaming pass.
+ * <p>
+ * The DOM variant uses the current {@link XpathUtils}, which already caches
+ * its parsed paths and document builders, so it is faster than the handler
+ * was before either change.
+ * <p>
+ * Arguments: runs (default 20), errors parsed per run (default 10000), path of
+ * the recorded error response (default
+ * benchmarks/resources/error-response.xml).
+ */
+public class ErrorResponseBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int runs = Benchmark.intArg(args, 0, 20);
+		final int errors = Benchmark.intArg(args, 1, 10000);
+		final byte[] body = Benchmark.readFile(new File(args.length > 2 ? args[2]
+				: "benchmarks/resources/error-response.xml"));
+
+		final DefaultRequest<Object> request = new DefaultRequest<Object>("s3");
+		request.setHttpMethod(HttpMethodName.GET);
+		final S3ErrorResponseHandler handler = new S3ErrorResponseHandler();
+
+		long dom = Benchmark.measure("dom: document + field lookups", 10, runs,
+				new Benchmark.Task() {
+					public void run() throws Exception {
+						for (int i = 0; i < errors; i++) {
+							Document document = XpathUtils
+									.documentFrom(new ByteArrayInputStream(body));
+							AmazonS3Exception ase = new AmazonS3Exception(
+									XpathUtils.asString("Error/Message",
+											document));
+							ase.setStatusCode(404);
+							ase.setErrorCode(XpathUtils.asString("Error/Code",
+									document));
+							ase.setRequestId(XpathUtils.asString(
+									"Error/RequestId", document));
+							ase.setExtendedRequestId(XpathUtils.asString(
+									"Error/HostId", document));
+							ase.setErrorType(ErrorType.Client);
+						}
+					}
+				});
+
+		long streamed = Benchmark.measure("stream: S3ErrorResponseHandler", 10,
+				runs, new Benchmark.Task() {
+					public void run() throws Exception {
+						for (int i = 0; i < errors; i++) {
+							HttpResponse response = new HttpResponse(request,
+									null);
+							response.setStatusCode(404);
+							response.setContent(new ByteArrayInputStream(body));
+							handler.handle(response);
+						}
+					}
+				});
+
+		Benchmark.printSpeedup("stream vs dom", dom, streamed);
+	}
+}
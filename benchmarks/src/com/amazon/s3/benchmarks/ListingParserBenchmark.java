@@ -0,0 +1,113 @@
+package com.amazon.s3.benchmarks;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.amazon.s3.model.ObjectListing;
+import com.amazon.s3.model.S3ObjectSummary;
+import com.amazon.s3.model.SummaryField;
+import com.amazon.s3.model.transform.Unmarshallers;
+import com.amazon.s3.transform.Unmarshaller;
+
+/**
+ * Compares parsing a recorded 1000-key bucket listing page with the SAX
+ * unmarshaller used by default and with the pull-parser unmarshaller enabled
+ * by {@link com.amazon.s3.services.S3ClientOptions#setPullParserListings},
+ * once for every field and once with only keys and sizes projected.
+ * <p>
+ * Before timing, both parsers are checked to produce the same listing.
+ * <p>
+ * Arguments: runs (default 20), pages parsed per run (default 20), path of
+ * the recorded listing (default benchmarks/resources/list-objects.xml).
+ */
+public class ListingParserBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int runs = Benchmark.intArg(args, 0, 20);
+		int pages = Benchmark.intArg(args, 1, 20);
+		byte[] page = Benchmark.readFile(new File(args.length > 2 ? args[2]
+				: "benchmarks/resources/list-objects.xml"));
+
+		Set<SummaryField> allFields = EnumSet.allOf(SummaryField.class);
+		Set<SummaryField> keyAndSize = EnumSet.of(SummaryField.Size);
+
+		checkSame(page, new Unmarshallers.ListObjectsUnmarshaller(allFields),
+				new Unmarshallers.PullListObjectsUnmarshaller(allFields));
+
+		long sax = measure("sax: all fields", runs, pages, page,
+				new Unmarshallers.ListObjectsUnmarshaller(allFields));
+		long pull = measure("pull: all fields", runs, pages, page,
+				new Unmarshallers.PullListObjectsUnmarshaller(allFields));
+		long saxProjected = measure("sax: key + size", runs, pages, page,
+				new Unmarshallers.ListObjectsUnmarshaller(keyAndSize));
+		long pullProjected = measure("pull: key + size", runs, pages, page,
+				new Unmarshallers.PullListObjectsUnmarshaller(keyAndSize));
+
+		Benchmark.printSpeedup("pull vs sax, all fields", sax, pull);
+		Benchmark.printSpeedup("pull vs sax, key + size", saxProjected,
+				pullProjected);
+	}
+
+	private static long measure(String name, int runs, final int pages,
+			final byte[] page,
+			final Unmarshaller<ObjectListing, InputStream> unmarshaller)
+			throws Exception {
+		return Benchmark.measure(name, 10, runs, new Benchmark.Task() {
+			public void run() throws Exception {
+				for (int i = 0; i < pages; i++) {
+					unmarshaller.unmarshall(new ByteArrayInputStream(page));
+				}
+			}
+		});
+	}
+
+	private static void checkSame(byte[] page,
+			Unmarshaller<ObjectListing, InputStream> expected,
+			Unmarshaller<ObjectListing, InputStream> actual) throws Exception {
+		ObjectListing a = expected.unmarshall(new ByteArrayInputStream(page));
+		ObjectListing b = actual.unmarshall(new ByteArrayInputStream(page));
+		List<S3ObjectSummary> as = a.getObjectSummaries();
+		List<S3ObjectSummary> bs = b.getObjectSummaries();
+		boolean same = as.size() == bs.size()
+				&& a.isTruncated() == b.isTruncated()
+				&& equal(a.getBucketName(), b.getBucketName());
+		for (int i = 0; same && i < as.size(); i++) {
+			S3ObjectSummary x = as.get(i);
+			S3ObjectSummary y = bs.get(i);
+			same = equal(x.getKey(), y.getKey()) && x.getSize() == y.getSize()
+					&& equal(x.getETag(), y.getETag())
+					&& equal(x.getLastModified(), y.getLastModified())
+					&& equal(x.getStorageClass(), y.getStorageClass())
+					&& (x.getOwner() == null ? y.getOwner() == null
+							: y.getOwner() != null
+									&& equal(x.getOwner().getId(), y
+											.getOwner().getId()));
+		}
+		if (!same)
+			throw new IllegalStateException(
+					"The parsers disagree about the recorded listing");
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
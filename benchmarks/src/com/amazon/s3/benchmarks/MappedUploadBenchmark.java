@@ -0,0 +1,92 @@
+package com.amazon.s3.benchmarks;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.apache.http.entity.InputStreamEntity;
+
+import com.amazon.s3.internal.MappedFileInputStream;
+import com.amazon.s3.internal.RepeatableFileInputStream;
+import com.amazon.s3.util.Md5Utils;
+
+/**
+ * Compares hashing and writing out a file upload body read through a
+ * {@link RepeatableFileInputStream} and an {@link InputStreamEntity}, as
+ * uploads are sent by default, with reading it from a
+ * {@link MappedFileInputStream}, as they're sent with memory-mapped uploads
+ * enabled. The body is written to a stream that discards it, so only the
+ * client's own copying is measured.
+ * <p>
+ * Arguments: file size in megabytes (default 64), runs (default 10).
+ */
+public class MappedUploadBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int megabytes = Benchmark.intArg(args, 0, 64);
+		int runs = Benchmark.intArg(args, 1, 10);
+
+		final File file = File.createTempFile("mapped-upload", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			byte[] block = new byte[1024 * 1024];
+			new Random(0).nextBytes(block);
+			for (int i = 0; i < megabytes; i++) {
+				raf.write(block);
+			}
+		} finally {
+			raf.close();
+		}
+		final long length = file.length();
+
+		long streamed = Benchmark.measure("stream: md5 + write", 2, runs,
+				new Benchmark.Task() {
+					public void run() throws Exception {
+						FileInputStream in = new FileInputStream(file);
+						try {
+							Md5Utils.computeMD5Hash(in);
+						} finally {
+							in.close();
+						}
+						RepeatableFileInputStream body = new RepeatableFileInputStream(
+								file);
+						try {
+							new InputStreamEntity(body, length)
+									.writeTo(Benchmark.NULL_OUTPUT);
+						} finally {
+							body.close();
+						}
+					}
+				});
+
+		long mapped = Benchmark.measure("mapped: md5 + write", 2, runs,
+				new Benchmark.Task() {
+					public void run() throws Exception {
+						MappedFileInputStream body = new MappedFileInputStream(
+								file, 0, length);
+						body.computeMD5Hash();
+						body.writeTo(Benchmark.NULL_OUTPUT);
+						body.close();
+					}
+				});
+
+		Benchmark.printSpeedup("mapped vs stream", streamed, mapped);
+	}
+}
@@ -0,0 +1,115 @@
+package com.amazon.s3.benchmarks;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazon.s3.ClientConfiguration;
+import com.amazon.s3.auth.BasicAWSCredentials;
+import com.amazon.s3.internal.Mimetypes;
+import com.amazon.s3.services.AmazonS3Client;
+import com.amazon.s3.uploader.regions.RegionUtils;
+
+/**
+ * Times a cold start of the client: constructing the first client, looking
+ * up a region and a content type, and building the user agent, each run in
+ * a fresh class loader so every class is loaded and initialized again.
+ * <p>
+ * Regions are loaded once from the compiled-in table, as they are by
+ * default, and once by parsing a recorded regions file through the override
+ * property, as they were before the table existed. The remote regions file
+ * used to be fetched first; that request isn't made here, so the difference
+ * understates the saving on a device.
+ * <p>
+ * Arguments: runs (default 20), path of the recorded regions file (default
+ * benchmarks/resources/regions.xml).
+ */
+public class StartupBenchmark {
+
+	private static final String REGIONS_FILE_OVERRIDE = RegionUtils.class
+			.getName() + ".fileOverride";
+
+	/** The work timed in each fresh class loader. */
+	public static class Startup implements Runnable {
+		public void run() {
+			new AmazonS3Client(new BasicAWSCredentials("access", "secret"));
+			RegionUtils.getRegion("eu-west-1");
+			Mimetypes.getInstance().getMimetype("photo.jpg");
+			new ClientConfiguration().getUserAgent();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int runs = Benchmark.intArg(args, 0, 20);
+		final File regionsFile = new File(args.length > 1 ? args[1]
+				: "benchmarks/resources/regions.xml");
+		if (!regionsFile.isFile())
+			throw new IllegalArgumentException("No regions file at "
+					+ regionsFile);
+		final URL[] classpath = classpath();
+
+		Benchmark.Task parseRegions = new Benchmark.Task() {
+			public void run() throws Exception {
+				System.setProperty(REGIONS_FILE_OVERRIDE, regionsFile.getPath());
+				try {
+					startInFreshLoader(classpath);
+				} finally {
+					System.clearProperty(REGIONS_FILE_OVERRIDE);
+				}
+			}
+		};
+		Benchmark.Task bundledRegions = new Benchmark.Task() {
+			public void run() throws Exception {
+				startInFreshLoader(classpath);
+			}
+		};
+
+		// Class loading itself speeds up as the JVM warms up, so warm up both
+		// variants before timing either.
+		for (int i = 0; i < runs; i++) {
+			parseRegions.run();
+			bundledRegions.run();
+		}
+
+		long parsed = Benchmark.measure("cold start: parse regions file", 0,
+				runs, parseRegions);
+		long bundled = Benchmark.measure("cold start: bundled regions", 0,
+				runs, bundledRegions);
+
+		Benchmark.printSpeedup("bundled vs parsed", parsed, bundled);
+	}
+
+	private static void startInFreshLoader(URL[] classpath) throws Exception {
+		URLClassLoader loader = new URLClassLoader(classpath, ClassLoader
+				.getSystemClassLoader().getParent());
+		Runnable startup = (Runnable) loader.loadClass(
+				Startup.class.getName()).newInstance();
+		startup.run();
+	}
+
+	private static URL[] classpath() throws Exception {
+		List<URL> urls = new ArrayList<URL>();
+		for (String entry : System.getProperty("java.class.path").split(
+				File.pathSeparator)) {
+			urls.add(new File(entry).toURI().toURL());
+		}
+		return urls.toArray(new URL[urls.size()]);
+	}
+}
@@ -29,14 +29,28 @@ public class ClientConfiguration {
     /** The default max connection pool size. */
     public static final int DEFAULT_MAX_CONNECTIONS = 50;
 
-    /** The default HTTP user agent header for AWS Java SDK clients. */
-    public static final String DEFAULT_USER_AGENT = VersionInfoUtils.getUserAgent();
+    /**
+     * The product token that starts the default HTTP user agent header. This
+     * is a compile-time constant, so loading this class doesn't read the SDK
+     * version info or system properties; the full default user agent, with
+     * the SDK version and platform details, is only built when
+     * {@link #getUserAgent()} is first called.
+     *
+     * @deprecated Use {@link #getUserAgent()} on a configuration without a
+     *             user agent set instead, which returns the full default user
+     *             agent.
+     */
+    @Deprecated
+    public static final String DEFAULT_USER_AGENT = "aws-sdk-android";
 
     /** The default maximum number of retries for error responses. */
     public static final int DEFAULT_MAX_RETRIES = 3;
 
-    /** The HTTP user agent header passed with all HTTP requests. */
-    private String userAgent = DEFAULT_USER_AGENT;
+    /**
+     * The HTTP user agent header passed with all HTTP requests, or null to
+     * use the SDK's default.
+     */
+    private String userAgent = null;
 
     /**
      * The maximum number of times that a retryable failed request (ex: a 5xx
@@ -219,6 +233,8 @@ public class ClientConfiguration {
      * @return The user agent string to use when sending requests.
      */
     public String getUserAgent() {
+        if (userAgent == null)
+            return VersionInfoUtils.getUserAgent();
         return userAgent;
     }
 
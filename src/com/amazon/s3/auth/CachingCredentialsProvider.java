@@ -0,0 +1,246 @@
+package com.amazon.s3.auth;
+
+/*
+ * Copyright 2012-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+/**
+ * {@link AWSCredentialsProvider} implementation that caches the credentials
+ * returned by another provider, so that providers which read files or walk a
+ * chain of sources aren't consulted on every request.
+ * <p>
+ * Cached credentials are reloaded in the background once they are older than
+ * the refresh interval; callers keep getting the cached credentials while
+ * that happens. Session credentials are temporary, so they also have a
+ * maximum age: once they are older than that and no background refresh has
+ * succeeded, callers wait for the credentials to be reloaded. Other
+ * credentials are never considered expired.
+ * <p>
+ * When the underlying provider finds no credentials, returning null or
+ * credentials without a secret key, nothing is cached and the provider is
+ * consulted again on the next call, so credentials that become available
+ * later are picked up. Background reloads of all instances run on a single
+ * shared daemon thread.
+ */
+public class CachingCredentialsProvider implements AWSCredentialsProvider {
+
+	private static final String TAG = "###CachingCredentialsProvider###";
+
+	/** The default time, in milliseconds, before credentials are reloaded. */
+	public static final long DEFAULT_REFRESH_INTERVAL = 10 * 60 * 1000;
+
+	/** The default time, in milliseconds, session credentials may be used. */
+	public static final long DEFAULT_SESSION_MAX_AGE = 15 * 60 * 1000;
+
+	/** The time, in milliseconds, to wait before retrying a failed reload. */
+	private static final long RETRY_INTERVAL = 10 * 1000;
+
+	/** The time, in seconds, the idle refresh thread is kept alive. */
+	private static final long REFRESH_THREAD_KEEP_ALIVE = 60;
+
+	/** Runs the background reloads of all instances, one at a time. */
+	private static final Executor REFRESH_EXECUTOR = createRefreshExecutor();
+
+	private final AWSCredentialsProvider delegate;
+	private final long refreshInterval;
+	private final long sessionMaxAge;
+
+	private volatile CachedCredentials cached;
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+	/**
+	 * Constructs a new provider caching the credentials of the specified
+	 * provider, with the default refresh interval and session maximum age.
+	 *
+	 * @param delegate
+	 *            The provider whose credentials are cached.
+	 */
+	public CachingCredentialsProvider(AWSCredentialsProvider delegate) {
+		this(delegate, DEFAULT_REFRESH_INTERVAL, DEFAULT_SESSION_MAX_AGE);
+	}
+
+	/**
+	 * Constructs a new provider caching the credentials of the specified
+	 * provider.
+	 *
+	 * @param delegate
+	 *            The provider whose credentials are cached.
+	 * @param refreshInterval
+	 *            The time, in milliseconds, after which credentials are
+	 *            reloaded in the background.
+	 * @param sessionMaxAge
+	 *            The time, in milliseconds, after which session credentials
+	 *            are no longer used; should be longer than the refresh
+	 *            interval and shorter than the lifetime of the sessions.
+	 */
+	public CachingCredentialsProvider(AWSCredentialsProvider delegate,
+			long refreshInterval, long sessionMaxAge) {
+		if (delegate == null)
+			throw new IllegalArgumentException(
+					"Credentials provider cannot be null");
+		if (refreshInterval <= 0 || sessionMaxAge <= 0)
+			throw new IllegalArgumentException(
+					"Refresh interval and maximum age must be positive");
+
+		this.delegate = delegate;
+		this.refreshInterval = refreshInterval;
+		this.sessionMaxAge = sessionMaxAge;
+	}
+
+	public AWSCredentials getCredentials() {
+		CachedCredentials current = cached;
+		long now = System.currentTimeMillis();
+
+		if (current == null || current.expiresAt <= now) {
+			synchronized (this) {
+				current = cached;
+				if (current == null || current.expiresAt <= now) {
+					return load().credentials;
+				}
+			}
+		} else if (current.refreshAt <= now) {
+			refreshInBackground();
+		}
+
+		return current.credentials;
+	}
+
+	/**
+	 * Refreshes the underlying provider and reloads its credentials, blocking
+	 * until they are loaded.
+	 */
+	public void refresh() {
+		delegate.refresh();
+		synchronized (this) {
+			load();
+		}
+	}
+
+	/**
+	 * Loads credentials from the underlying provider and caches them, unless
+	 * none were found; the credentials loaded are returned either way. Callers
+	 * must hold this object's lock.
+	 */
+	private CachedCredentials load() {
+		AWSCredentials credentials = delegate.getCredentials();
+		long now = System.currentTimeMillis();
+		if (credentials == null || credentials.getAWSSecretKey() == null)
+			return new CachedCredentials(credentials, now, now);
+
+		long expiresAt = credentials instanceof AWSSessionCredentials ? now
+				+ sessionMaxAge : Long.MAX_VALUE;
+		CachedCredentials loaded = new CachedCredentials(credentials, now
+				+ refreshInterval, expiresAt);
+		cached = loaded;
+		return loaded;
+	}
+
+	/**
+	 * Starts reloading the credentials on a background thread, unless that's
+	 * already in progress.
+	 */
+	private void refreshInBackground() {
+		if (!refreshing.compareAndSet(false, true))
+			return;
+
+		try {
+			REFRESH_EXECUTOR.execute(new Runnable() {
+				public void run() {
+					try {
+						delegate.refresh();
+						synchronized (CachingCredentialsProvider.this) {
+							if (load() != cached) {
+								Log.w(TAG,
+										"Unable to refresh credentials: none found");
+								retryLater();
+							}
+						}
+					} catch (RuntimeException e) {
+						Log.w(TAG,
+								"Unable to refresh credentials: "
+										+ e.getMessage(), e);
+						synchronized (CachingCredentialsProvider.this) {
+							retryLater();
+						}
+					} finally {
+						refreshing.set(false);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			refreshing.set(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * Keeps the cached credentials after a failed reload, and schedules the
+	 * next reload for after the retry interval. Callers must hold this
+	 * object's lock.
+	 */
+	private void retryLater() {
+		CachedCredentials current = cached;
+		if (current != null) {
+			cached = new CachedCredentials(current.credentials,
+					System.currentTimeMillis() + RETRY_INTERVAL,
+					current.expiresAt);
+		}
+	}
+
+	/**
+	 * Creates the executor for background reloads, whose single daemon thread
+	 * exits when it has been idle for a while.
+	 */
+	private static Executor createRefreshExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+				REFRESH_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"aws-credentials-refresh");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + delegate + ")";
+	}
+
+	private static final class CachedCredentials {
+		final AWSCredentials credentials;
+		final long refreshAt;
+		final long expiresAt;
+
+		CachedCredentials(AWSCredentials credentials, long refreshAt,
+				long expiresAt) {
+			this.credentials = credentials;
+			this.refreshAt = refreshAt;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -335,6 +335,7 @@ public class AmazonHttpClient {
 					Log.d(TAG, "Redirecting to: " + redirectedLocation);
 					redirectedURI = URI.create(redirectedLocation);
 					httpRequest.setURI(redirectedURI);
+					executionContext.setRedirectLocation(redirectedURI);
 					awsRequestMetrics.addProperty(Field.StatusCode.name(),
 							response.getStatusLine().getStatusCode());
 					awsRequestMetrics.addProperty(
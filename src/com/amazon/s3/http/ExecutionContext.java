@@ -15,6 +15,7 @@ package com.amazon.s3.http;
  * permissions and limitations under the License.
  */
 
+import java.net.URI;
 import java.util.List;
 
 import com.amazon.s3.auth.AWSCredentials;
@@ -41,6 +42,11 @@ public class ExecutionContext {
 	 */
 	private AWSCredentials credentials;
 
+	/**
+	 * The location the request was last redirected to with a 307, if any.
+	 */
+	private URI redirectLocation;
+
 	public String getContextUserAgent() {
 		return contextUserAgent;
 	}
@@ -140,4 +146,27 @@ public class ExecutionContext {
 	public void setCustomBackoffStrategy(CustomBackoffStrategy backoffStrategy) {
 		this.backoffStrategy = backoffStrategy;
 	}
+
+	/**
+	 * Returns the location the runtime layer was last sent to by a 307
+	 * Temporary Redirect while executing the associated request, or null if
+	 * the request wasn't redirected.
+	 * 
+	 * @return The location of the last temporary redirect.
+	 */
+	public URI getRedirectLocation() {
+		return redirectLocation;
+	}
+
+	/**
+	 * Records the location of a 307 Temporary Redirect received while
+	 * executing the associated request, so callers can send later requests
+	 * there directly.
+	 * 
+	 * @param redirectLocation
+	 *            The location of the temporary redirect.
+	 */
+	public void setRedirectLocation(URI redirectLocation) {
+		this.redirectLocation = redirectLocation;
+	}
 }
@@ -50,7 +50,6 @@ import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.client.params.HttpClientParams;
 
@@ -75,16 +74,15 @@ class HttpClientFactory {
      * @return The new, configured HttpClient.
      */
     public HttpClient createHttpClient(ClientConfiguration config) {
-        /* Form User-Agent information */
-        String userAgent = config.getUserAgent();
-        if (!(userAgent.equals(ClientConfiguration.DEFAULT_USER_AGENT))) {
-            userAgent += ", " + ClientConfiguration.DEFAULT_USER_AGENT;
-        }
+        /*
+         * No default User-Agent is set here: every request carries its own
+         * User-Agent header, so the default user agent string is only built
+         * when the first request is sent.
+         */
 
         /* Set HTTP client parameters */
         HttpParams httpClientParams = new BasicHttpParams();
         HttpClientParams.setRedirecting(httpClientParams, false);
-        HttpProtocolParams.setUserAgent(httpClientParams, userAgent);
         HttpConnectionParams.setConnectionTimeout(httpClientParams, config.getConnectionTimeout());
         HttpConnectionParams.setSoTimeout(httpClientParams, config.getSocketTimeout());
         HttpConnectionParams.setStaleCheckingEnabled(httpClientParams, false);
@@ -15,6 +15,7 @@ package com.amazon.s3.http;
  * permissions and limitations under the License.
  */
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -25,6 +26,7 @@ import org.apache.http.entity.InputStreamEntity;
 import android.util.Log;
 
 import com.amazon.s3.Request;
+import com.amazon.s3.internal.MappedFileInputStream;
 
 /**
  * Custom implementation of {@link RequestEntity} that delegates to an
@@ -32,6 +34,10 @@ import com.amazon.s3.Request;
  * the underlying InputStream supports being reset, this RequestEntity will
  * report that it is repeatable and will reset the stream on all subsequent
  * attempts to write out the request.
+ * <p>
+ * The stream isn't closed after each attempt, as InputStreamEntity would close
+ * it, since a closed stream may no longer be able to reset. The caller that
+ * supplied the stream closes it once the request has finished.
  */
 class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
 
@@ -90,8 +96,8 @@ class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
 
 		String contentType = request.getHeaders().get("Content-Type");
 
-		inputStreamRequestEntity = new InputStreamEntity(request.getContent(),
-				contentLength);
+		inputStreamRequestEntity = new InputStreamEntity(
+				new UnclosedInputStream(request.getContent()), contentLength);
 		inputStreamRequestEntity.setContentType(contentType);
 		content = request.getContent();
 
@@ -139,7 +145,18 @@ class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
 				content.reset();
 
 			firstAttempt = false;
-			inputStreamRequestEntity.writeTo(output);
+			if (content instanceof MappedFileInputStream) {
+				/*
+				 * Memory-mapped content is written from the mapping in large
+				 * chunks instead of through InputStreamEntity's small copy
+				 * buffer. Content wrapped for progress reporting isn't a
+				 * MappedFileInputStream and takes the usual path.
+				 */
+				((MappedFileInputStream) content).writeTo(output);
+				output.flush();
+			} else {
+				inputStreamRequestEntity.writeTo(output);
+			}
 		} catch (IOException ioe) {
 			if (originalException == null)
 				originalException = ioe;
@@ -147,4 +164,18 @@ class RepeatableInputStreamRequestEntity extends BasicHttpEntity {
 		}
 	}
 
+	/**
+	 * Passes everything but close() through to the wrapped stream, so that
+	 * InputStreamEntity leaves the request's content open between attempts.
+	 */
+	private static class UnclosedInputStream extends FilterInputStream {
+		UnclosedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
 }
@@ -0,0 +1,218 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded, concurrent cache of the endpoint each bucket's requests are sent
+ * to, used by <code>AmazonS3Client</code>.
+ * <p>
+ * The cache holds two kinds of entries. Computed entries record the
+ * virtual-host or path-style endpoint derived from the client's own endpoint,
+ * so it isn't recomputed for every request. Learned entries record the
+ * endpoint a bucket actually lives at, taken from a 307 Temporary Redirect or
+ * from the bucket's location, so later requests skip the redirect. Learned
+ * entries from redirects expire, since S3 only sends them while a bucket's DNS
+ * name is propagating; callers should also invalidate a bucket's entry when a
+ * request to it fails.
+ * <p>
+ * All entries are tied to the client endpoint they were created for, and are
+ * dropped if the client's endpoint changes.
+ */
+public class BucketEndpointCache {
+
+	/** The default maximum number of buckets cached. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** How long, in milliseconds, an endpoint learned from a 307 is kept. */
+	public static final long REDIRECT_TIME_TO_LIVE = 15 * 60 * 1000;
+
+	private final ConcurrentHashMap<String, Resolution> entries = new ConcurrentHashMap<String, Resolution>();
+	private final int maxEntries;
+	private volatile URI clientEndpoint;
+
+	/**
+	 * Creates a new cache holding at most the specified number of buckets.
+	 */
+	public BucketEndpointCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException(
+					"Maximum number of entries must be positive");
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the cached endpoint for the specified bucket, or null if there
+	 * is none, or if it was cached for a different client endpoint.
+	 */
+	public Resolution get(URI clientEndpoint, String bucketName) {
+		if (clientEndpoint != this.clientEndpoint) {
+			return null;
+		}
+		Resolution resolution = entries.get(bucketName);
+		if (resolution == null)
+			return null;
+		if (resolution.expiresAt <= System.currentTimeMillis()) {
+			entries.remove(bucketName, resolution);
+			return null;
+		}
+		return resolution;
+	}
+
+	/**
+	 * Caches the endpoint computed for a bucket from the client's endpoint.
+	 * An endpoint already learned for the bucket is left in place.
+	 *
+	 * @return The cached entry for the bucket.
+	 */
+	public Resolution putComputed(URI clientEndpoint, String bucketName,
+			URI endpoint, boolean virtualHost) {
+		Resolution resolution = new Resolution(endpoint, virtualHost, false,
+				Long.MAX_VALUE);
+		useEndpoint(clientEndpoint);
+		Resolution existing = entries.putIfAbsent(bucketName, resolution);
+		if (existing != null) {
+			return existing;
+		}
+		trim();
+		return resolution;
+	}
+
+	/**
+	 * Records the location a request for a bucket was redirected to. Only the
+	 * scheme, host and port of the location are kept.
+	 */
+	public void putRedirect(URI clientEndpoint, String bucketName,
+			URI location) {
+		String host = location.getHost();
+		if (host == null)
+			return;
+		putLearned(clientEndpoint, bucketName, location.getScheme(), host,
+				location.getPort(), System.currentTimeMillis()
+						+ REDIRECT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Records the regional host serving a bucket, for example from its
+	 * location constraint. Requests for the bucket use this host, in virtual
+	 * host or path style as appropriate.
+	 */
+	public void putRegionalHost(URI clientEndpoint, String bucketName,
+			String regionalHost, boolean virtualHost) {
+		String host = virtualHost ? bucketName + "." + regionalHost
+				: regionalHost;
+		putLearned(clientEndpoint, bucketName, clientEndpoint.getScheme(),
+				host, clientEndpoint.getPort(), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Removes any cached endpoint for the specified bucket.
+	 */
+	public void invalidate(String bucketName) {
+		entries.remove(bucketName);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	private void putLearned(URI clientEndpoint, String bucketName,
+			String scheme, String host, int port, long expiresAt) {
+		useEndpoint(clientEndpoint);
+		URI endpoint;
+		try {
+			endpoint = new URI(scheme, null, host, port, null, null, null);
+		} catch (URISyntaxException e) {
+			return;
+		}
+		boolean virtualHost = host.startsWith(bucketName + ".");
+		entries.put(bucketName, new Resolution(endpoint, virtualHost, true,
+				expiresAt));
+		trim();
+	}
+
+	/**
+	 * Ties the cache to the specified client endpoint, clearing it if it was
+	 * tied to a different one.
+	 */
+	private synchronized void useEndpoint(URI clientEndpoint) {
+		if (clientEndpoint != this.clientEndpoint) {
+			entries.clear();
+			this.clientEndpoint = clientEndpoint;
+		}
+	}
+
+	/**
+	 * Drops computed entries, then learned ones, until the cache is back under
+	 * its limit.
+	 */
+	private void trim() {
+		if (entries.size() <= maxEntries)
+			return;
+		Iterator<Resolution> it = entries.values().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			if (!it.next().learned) {
+				it.remove();
+			}
+		}
+		it = entries.values().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * The endpoint requests for a bucket are sent to.
+	 */
+	public static final class Resolution {
+		private final URI endpoint;
+		private final boolean virtualHost;
+		private final boolean learned;
+		private final long expiresAt;
+
+		Resolution(URI endpoint, boolean virtualHost, boolean learned,
+				long expiresAt) {
+			this.endpoint = endpoint;
+			this.virtualHost = virtualHost;
+			this.learned = learned;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * Returns the endpoint requests for the bucket are sent to.
+		 */
+		public URI getEndpoint() {
+			return endpoint;
+		}
+
+		/**
+		 * Returns true if the endpoint's host names the bucket, so resource
+		 * paths should not include it.
+		 */
+		public boolean isVirtualHost() {
+			return virtualHost;
+		}
+	}
+}
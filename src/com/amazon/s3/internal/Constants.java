@@ -65,4 +65,12 @@ public class Constants {
      * intervention.
      */
     public static final int DEFAULT_STREAM_BUFFER_SIZE = 128 * KB;
+
+    /**
+     * The default number of bytes held in memory when uploading a stream whose
+     * length isn't known up front. The stream is drained before the upload
+     * starts so that its length can be sent, and anything past this many bytes
+     * is spilled to a temporary file.
+     */
+    public static final int DEFAULT_STREAM_MEMORY_THRESHOLD = 5 * MB;
 }
@@ -0,0 +1,193 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.NoSuchAlgorithmException;
+
+import com.amazon.s3.util.Md5Utils;
+
+/**
+ * A repeatable input stream over a memory-mapped region of a file. Data is
+ * read straight out of the page cache, so uploads of large local files don't
+ * go through an intermediate <code>FileInputStream</code> buffer, and the
+ * region's MD5 can be computed without copying it onto the heap.
+ * <p>
+ * Only the read side avoids copies. HttpClient gives the request entity an
+ * <code>OutputStream</code>, not a channel, so {@link #writeTo(OutputStream)}
+ * still copies the data through a heap chunk on its way to the socket.
+ * <p>
+ * A single mapping is limited to {@link #MAXIMUM_MAPPED_LENGTH} bytes; callers
+ * should check {@link #canMap(long)} and fall back to
+ * {@link RepeatableFileChannelInputStream} for larger regions.
+ */
+public class MappedFileInputStream extends InputStream {
+
+	/** The largest region that can be mapped by one stream. */
+	public static final long MAXIMUM_MAPPED_LENGTH = Integer.MAX_VALUE;
+
+	/** The size of the chunks written out by {@link #writeTo(OutputStream)}. */
+	private static final int WRITE_CHUNK_SIZE = 64 * Constants.KB;
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * Returns true if a region of the specified length can be mapped by a
+	 * single stream.
+	 */
+	public static boolean canMap(long length) {
+		return length >= 0 && length <= MAXIMUM_MAPPED_LENGTH;
+	}
+
+	/**
+	 * Maps a region of the specified file. The file is only held open while
+	 * the mapping is created; the mapping stays valid after that.
+	 *
+	 * @param file
+	 *            The file to map.
+	 * @param offset
+	 *            The offset, in bytes, of the first byte of the region.
+	 * @param length
+	 *            The length, in bytes, of the region.
+	 *
+	 * @throws IOException
+	 *             If the file can't be opened or mapped.
+	 */
+	public MappedFileInputStream(File file, long offset, long length)
+			throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+		if (offset < 0 || !canMap(length)) {
+			throw new IllegalArgumentException("Unable to map " + length
+					+ " bytes at offset " + offset);
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer mapped = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, offset, length);
+			this.buffer = mapped;
+		} finally {
+			raf.close();
+		}
+		buffer.mark();
+	}
+
+	/**
+	 * Returns the length, in bytes, of the mapped region.
+	 */
+	public long getLength() {
+		return buffer.limit();
+	}
+
+	/**
+	 * Computes the MD5 digest of the whole mapped region, without moving this
+	 * stream's position.
+	 */
+	public byte[] computeMD5Hash() throws NoSuchAlgorithmException {
+		ByteBuffer region = buffer.duplicate();
+		region.clear();
+		return Md5Utils.computeMD5Hash(region);
+	}
+
+	/**
+	 * Writes the rest of the mapped region to the specified stream, in large
+	 * chunks, and leaves this stream at its end. Each chunk is copied from the
+	 * mapping into one heap buffer before it's written, since an
+	 * <code>OutputStream</code> can only be given a byte array.
+	 *
+	 * @param output
+	 *            The stream to write to.
+	 */
+	public synchronized void writeTo(OutputStream output) throws IOException {
+		byte[] chunk = new byte[Math.min(WRITE_CHUNK_SIZE, buffer.remaining())];
+		while (buffer.hasRemaining()) {
+			int count = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, count);
+			output.write(chunk, 0, count);
+		}
+	}
+
+	/**
+	 * @see java.io.InputStream#markSupported()
+	 */
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * @see java.io.InputStream#mark(int)
+	 */
+	public synchronized void mark(int readlimit) {
+		buffer.mark();
+	}
+
+	/**
+	 * @see java.io.InputStream#reset()
+	 */
+	public synchronized void reset() throws IOException {
+		buffer.reset();
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return buffer.remaining();
+	}
+
+	/**
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		int skipped = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	public synchronized int read() throws IOException {
+		if (!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xFF;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public synchronized int read(byte[] b, int off, int len)
+			throws IOException {
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+}
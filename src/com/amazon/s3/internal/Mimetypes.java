@@ -23,8 +23,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.util.Log;
 
@@ -43,6 +43,9 @@ import android.util.Log;
  * blank lines in the file are ignored, as are lines starting with
  * <code>#</code> which are considered comments. Lines that have a mimetype but
  * no associated extensions are also ignored.
+ * <p>
+ * The file is only read when the instance is first requested, and lookups
+ * take no locks.
  */
 public class Mimetypes {
 	private static final String TAG = "###MimeTypes###";
@@ -59,28 +62,39 @@ public class Mimetypes {
 	/** The default gzip mimetype: application/x-gzip */
 	public static final String MIMETYPE_GZIP = "application/x-gzip";
 
-	private static Mimetypes mimetypes = null;
-
 	/**
 	 * Map that stores file extensions as keys, and the corresponding mimetype
 	 * as values.
 	 */
-	private HashMap<String, String> extensionToMimetypeMap = new HashMap<String, String>();
+	private final ConcurrentHashMap<String, String> extensionToMimetypeMap = new ConcurrentHashMap<String, String>();
 
 	private Mimetypes() {
 	}
 
+	/**
+	 * Holds the shared instance, which is created when this class is first
+	 * initialized, the first time {@link Mimetypes#getInstance()} is called.
+	 */
+	private static final class InstanceHolder {
+		static final Mimetypes INSTANCE = load();
+	}
+
+	/**
+	 * Returns the shared instance, with MIME type info from the file
+	 * 'mime.types' in the classpath, if it's available.
+	 */
+	public static Mimetypes getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
 	/**
 	 * Loads MIME type info from the file 'mime.types' in the classpath, if it's
 	 * available.
 	 */
-	public synchronized static Mimetypes getInstance() {
-		if (mimetypes != null)
-			return mimetypes;
-
-		mimetypes = new Mimetypes();
-		InputStream mimetypesFile = mimetypes.getClass().getResourceAsStream(
-				"/mime.types");
+	private static Mimetypes load() {
+		Mimetypes mimetypes = new Mimetypes();
+		InputStream mimetypesFile = Mimetypes.class
+				.getResourceAsStream("/mime.types");
 		if (mimetypesFile != null) {
 
 			Log.d(TAG,
@@ -94,6 +108,11 @@ public class Mimetypes {
 						"Failed to load mime types from file in the classpath: mime.types",
 						e);
 
+			} finally {
+				try {
+					mimetypesFile.close();
+				} catch (IOException e) {
+				}
 			}
 		} else {
 
@@ -116,6 +135,7 @@ public class Mimetypes {
 	public void loadAndReplaceMimetypes(InputStream is) throws IOException {
 		BufferedReader br = new BufferedReader(new InputStreamReader(is));
 		String line = null;
+		int count = 0;
 
 		while ((line = br.readLine()) != null) {
 			line = line.trim();
@@ -124,25 +144,18 @@ public class Mimetypes {
 				// Ignore comments and empty lines.
 			} else {
 				StringTokenizer st = new StringTokenizer(line, " \t");
+				// Lines with no associated file extensions are ignored.
 				if (st.countTokens() > 1) {
 					String mimetype = st.nextToken();
 					while (st.hasMoreTokens()) {
-						String extension = st.nextToken();
-						extensionToMimetypeMap.put(extension, mimetype);
-
-						Log.d(TAG, "Setting mime type for extension '"
-								+ extension + "' to '" + mimetype + "'");
-
+						extensionToMimetypeMap.put(st.nextToken(), mimetype);
+						count++;
 					}
-				} else {
-
-					Log.d(TAG,
-							"Ignoring mimetype with no associated file extensions: '"
-									+ line + "'");
-
 				}
 			}
 		}
+
+		Log.d(TAG, "Loaded " + count + " mime type extensions");
 	}
 
 	/**
@@ -168,27 +181,10 @@ public class Mimetypes {
 		int lastPeriodIndex = fileName.lastIndexOf(".");
 		if (lastPeriodIndex > 0 && lastPeriodIndex + 1 < fileName.length()) {
 			String ext = fileName.substring(lastPeriodIndex + 1);
-			if (extensionToMimetypeMap.keySet().contains(ext)) {
-				String mimetype = (String) extensionToMimetypeMap.get(ext);
-
-				Log.d(TAG, "Recognised extension '" + ext + "', mimetype is: '"
-						+ mimetype + "'");
-
+			String mimetype = extensionToMimetypeMap.get(ext);
+			if (mimetype != null) {
 				return mimetype;
-			} else {
-
-				Log.d(TAG, "Extension '" + ext
-						+ "' is unrecognized in mime type listing"
-						+ ", using default mime type: '"
-						+ MIMETYPE_OCTET_STREAM + "'");
-
 			}
-		} else {
-
-			Log.d(TAG,
-					"File name has no extension, mime type cannot be recognised for: "
-							+ fileName);
-
 		}
 		return MIMETYPE_OCTET_STREAM;
 	}
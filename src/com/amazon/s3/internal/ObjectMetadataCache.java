@@ -0,0 +1,319 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.amazon.s3.model.AmazonS3Exception;
+import com.amazon.s3.model.ObjectMetadata;
+
+/**
+ * A bounded, concurrent cache of object metadata and bucket existence, used by
+ * <code>AmazonS3Client</code> to answer repeated <code>getObjectMetadata</code>
+ * and <code>doesBucketExist</code> calls without a request.
+ * <p>
+ * Positive results (metadata, or a bucket that exists) and negative results (a
+ * 404 for an object, or a bucket that doesn't exist) expire after separate
+ * times to live. Callers are expected to invalidate entries for anything they
+ * write or delete.
+ * <p>
+ * Every invalidation starts a new generation for what it invalidates. Callers
+ * read {@link #getGeneration(String, String)} for the object or bucket before
+ * sending the request whose result they cache, and pass it to the put
+ * methods; a result from a request that started before an invalidation of
+ * the same object may predate the change, so it isn't kept. Objects share
+ * generations across a fixed number of stripes, so an invalidation only
+ * occasionally discards a concurrent result for an unrelated object.
+ * <p>
+ * The cache holds at most a fixed number of entries. When it is full, expired
+ * entries are dropped first, then arbitrary ones; this is cheaper than strict
+ * LRU bookkeeping and never blocks readers.
+ */
+public class ObjectMetadataCache {
+
+	private final ConcurrentHashMap<CacheKey, Entry> entries = new ConcurrentHashMap<CacheKey, Entry>();
+	private final int maxEntries;
+	private final long timeToLive;
+	private final long negativeTimeToLive;
+
+	/** The number of stripes object generations are spread across. */
+	private static final int GENERATION_STRIPES = 256;
+
+	/** Incremented by invalidations of whole buckets and of everything. */
+	private final AtomicLong globalGeneration = new AtomicLong();
+
+	/** Incremented by invalidations of the objects that hash to each stripe. */
+	private final AtomicLongArray objectGenerations = new AtomicLongArray(
+			GENERATION_STRIPES);
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of entries held.
+	 * @param timeToLive
+	 *            How long, in milliseconds, positive results are kept.
+	 * @param negativeTimeToLive
+	 *            How long, in milliseconds, negative results are kept.
+	 */
+	public ObjectMetadataCache(int maxEntries, long timeToLive,
+			long negativeTimeToLive) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException(
+					"Maximum number of entries must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.negativeTimeToLive = negativeTimeToLive;
+	}
+
+	/**
+	 * Returns a copy of the cached metadata for the specified object, or null
+	 * if none is cached.
+	 *
+	 * @throws AmazonS3Exception
+	 *             If the object is cached as not found.
+	 */
+	public ObjectMetadata getObjectMetadata(String bucketName, String key,
+			String versionId) throws AmazonS3Exception {
+		Entry entry = get(new CacheKey(bucketName, key, versionId));
+		if (entry == null)
+			return null;
+		if (entry.notFound != null)
+			throw copy(entry.notFound);
+		return ServiceUtils.copyObjectMetadata(entry.metadata);
+	}
+
+	/**
+	 * Returns the current generation of an object, or of a bucket if the key is
+	 * null, to be read before sending a request whose result will be cached.
+	 * It changes when the object is invalidated, when its bucket or the whole
+	 * cache is invalidated, and occasionally when an unrelated object is.
+	 */
+	public long getGeneration(String bucketName, String key) {
+		// Both counters only go up, so their sum only stays the same while
+		// neither changes.
+		return globalGeneration.get()
+				+ objectGenerations.get(stripe(bucketName, key));
+	}
+
+	/**
+	 * Caches metadata returned for the specified object by a request sent in
+	 * the given generation.
+	 */
+	public void putObjectMetadata(String bucketName, String key,
+			String versionId, ObjectMetadata metadata, long generation) {
+		Entry entry = new Entry(System.currentTimeMillis() + timeToLive);
+		entry.metadata = ServiceUtils.copyObjectMetadata(metadata);
+		put(new CacheKey(bucketName, key, versionId), entry, generation);
+	}
+
+	/**
+	 * Caches a 404 returned for the specified object by a request sent in the
+	 * given generation.
+	 */
+	public void putObjectNotFound(String bucketName, String key,
+			String versionId, AmazonS3Exception notFound, long generation) {
+		Entry entry = new Entry(System.currentTimeMillis() + negativeTimeToLive);
+		entry.notFound = notFound;
+		put(new CacheKey(bucketName, key, versionId), entry, generation);
+	}
+
+	/**
+	 * Returns whether the specified bucket is cached as existing, or null if
+	 * nothing is cached for it.
+	 */
+	public Boolean getBucketExists(String bucketName) {
+		Entry entry = get(new CacheKey(bucketName, null, null));
+		return entry == null ? null : Boolean.valueOf(entry.exists);
+	}
+
+	/**
+	 * Caches whether the specified bucket exists, as found by a request sent
+	 * in the given generation.
+	 */
+	public void putBucketExists(String bucketName, boolean exists,
+			long generation) {
+		Entry entry = new Entry(System.currentTimeMillis()
+				+ (exists ? timeToLive : negativeTimeToLive));
+		entry.exists = exists;
+		put(new CacheKey(bucketName, null, null), entry, generation);
+	}
+
+	/**
+	 * Removes the entries for an object that has been written or deleted: the
+	 * entry for its current version, and for the given version ID if any.
+	 */
+	public void invalidateObject(String bucketName, String key,
+			String versionId) {
+		objectGenerations.incrementAndGet(stripe(bucketName, key));
+		entries.remove(new CacheKey(bucketName, key, null));
+		if (versionId != null) {
+			entries.remove(new CacheKey(bucketName, key, versionId));
+		}
+	}
+
+	/**
+	 * Removes all entries for a bucket and the objects in it.
+	 */
+	public void invalidateBucket(String bucketName) {
+		globalGeneration.incrementAndGet();
+		Iterator<CacheKey> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().bucketName.equals(bucketName)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		globalGeneration.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of entries currently held, including any that have
+	 * expired but not yet been removed.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private Entry get(CacheKey cacheKey) {
+		Entry entry = entries.get(cacheKey);
+		if (entry == null)
+			return null;
+		if (entry.expiresAt <= System.currentTimeMillis()) {
+			entries.remove(cacheKey, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds an entry, unless its object or bucket has been invalidated since
+	 * the given generation. Invalidations count the generation up before they
+	 * remove entries, and the generation is checked again after the entry is
+	 * added, so an invalidation racing with the put either sees the entry and
+	 * removes it, or is seen here and the entry is taken back out.
+	 */
+	private void put(CacheKey cacheKey, Entry entry, long generation) {
+		if (entry.expiresAt <= System.currentTimeMillis()
+				|| getGeneration(cacheKey.bucketName, cacheKey.key) != generation)
+			return;
+		entries.put(cacheKey, entry);
+		if (getGeneration(cacheKey.bucketName, cacheKey.key) != generation) {
+			entries.remove(cacheKey, entry);
+			return;
+		}
+		if (entries.size() > maxEntries) {
+			trim();
+		}
+	}
+
+	/**
+	 * Drops expired entries, then arbitrary ones, until the cache is back
+	 * under its limit.
+	 */
+	private void trim() {
+		long now = System.currentTimeMillis();
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expiresAt <= now) {
+				it.remove();
+			}
+		}
+
+		it = entries.values().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Returns the stripe holding the generation of the specified object, or of
+	 * the bucket if the key is null.
+	 */
+	private static int stripe(String bucketName, String key) {
+		int hash = 31 * bucketName.hashCode()
+				+ (key == null ? 0 : key.hashCode());
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % GENERATION_STRIPES;
+	}
+
+	/**
+	 * Returns a new exception describing the same error as the cached one, so
+	 * each caller gets its own stack trace.
+	 */
+	private static AmazonS3Exception copy(AmazonS3Exception notFound) {
+		AmazonS3Exception copy = new AmazonS3Exception(notFound.getMessage(),
+				notFound);
+		copy.setStatusCode(notFound.getStatusCode());
+		copy.setErrorCode(notFound.getErrorCode());
+		copy.setErrorType(notFound.getErrorType());
+		copy.setServiceName(notFound.getServiceName());
+		copy.setRequestId(notFound.getRequestId());
+		copy.setExtendedRequestId(notFound.getExtendedRequestId());
+		return copy;
+	}
+
+	private static final class CacheKey {
+		final String bucketName;
+		final String key;
+		final String versionId;
+
+		CacheKey(String bucketName, String key, String versionId) {
+			this.bucketName = bucketName;
+			this.key = key;
+			this.versionId = versionId;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey))
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return bucketName.equals(other.bucketName)
+					&& (key == null ? other.key == null : key.equals(other.key))
+					&& (versionId == null ? other.versionId == null
+							: versionId.equals(other.versionId));
+		}
+
+		public int hashCode() {
+			int hash = bucketName.hashCode();
+			hash = 31 * hash + (key == null ? 0 : key.hashCode());
+			hash = 31 * hash + (versionId == null ? 0 : versionId.hashCode());
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+		final long expiresAt;
+		ObjectMetadata metadata;
+		AmazonS3Exception notFound;
+		boolean exists;
+
+		Entry(long expiresAt) {
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+/**
+ * A repeatable input stream over a region of a file, backed by a
+ * {@link FileChannel}. All reads are positional, so marking, resetting and
+ * skipping only move an offset and never reopen the file or read data to
+ * discard it.
+ * <p>
+ * Because positional reads don't touch the channel's own position, any number
+ * of these streams may share one open channel, for example one per part of a
+ * multipart upload of the same file. A stream only closes the channel if it
+ * opened the channel itself, or was asked to.
+ * <p>
+ * A closed stream can still be reset, which reopens the file if this stream
+ * closed its channel, so a request can be retried after its stream was closed
+ * by a failed attempt.
+ */
+public class RepeatableFileChannelInputStream extends InputStream {
+	private static final String TAG = "###RepeatableFileChannelInputStream###";
+
+	private final File file;
+	private FileChannel channel;
+	private final boolean closeChannel;
+	private final long startOffset;
+	private final long endOffset;
+
+	private long position;
+	private long markPosition;
+	private boolean closed;
+
+	/**
+	 * Creates a repeatable input stream over the whole of a file.
+	 *
+	 * @param file
+	 *            The file from which this input stream reads data.
+	 *
+	 * @throws FileNotFoundException
+	 *             If the specified file doesn't exist, or can't be opened.
+	 */
+	public RepeatableFileChannelInputStream(File file)
+			throws FileNotFoundException {
+		this(file, 0, file == null ? 0 : file.length());
+	}
+
+	/**
+	 * Creates a repeatable input stream over a region of a file.
+	 *
+	 * @param file
+	 *            The file from which this input stream reads data.
+	 * @param offset
+	 *            The offset, in bytes, of the first byte returned.
+	 * @param length
+	 *            The number of bytes returned before the stream looks empty.
+	 *
+	 * @throws FileNotFoundException
+	 *             If the specified file doesn't exist, or can't be opened.
+	 */
+	public RepeatableFileChannelInputStream(File file, long offset, long length)
+			throws FileNotFoundException {
+		this(file, openChannel(file), offset, length, true);
+	}
+
+	/**
+	 * Creates a repeatable input stream over a region of an already open
+	 * channel.
+	 *
+	 * @param channel
+	 *            The channel from which this input stream reads data.
+	 * @param offset
+	 *            The offset, in bytes, of the first byte returned.
+	 * @param length
+	 *            The number of bytes returned before the stream looks empty.
+	 * @param closeChannel
+	 *            True if the channel should be closed when this stream is
+	 *            closed.
+	 */
+	public RepeatableFileChannelInputStream(FileChannel channel, long offset,
+			long length, boolean closeChannel) {
+		this(null, channel, offset, length, closeChannel);
+	}
+
+	private RepeatableFileChannelInputStream(File file, FileChannel channel,
+			long offset, long length, boolean closeChannel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("FileChannel cannot be null");
+		}
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException(
+					"Offset and length must not be negative");
+		}
+		this.file = file;
+		this.channel = channel;
+		this.closeChannel = closeChannel;
+		this.startOffset = offset;
+		this.endOffset = offset + length;
+		this.position = offset;
+		this.markPosition = offset;
+	}
+
+	private static FileChannel openChannel(File file)
+			throws FileNotFoundException {
+		if (file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+		return new RandomAccessFile(file, "r").getChannel();
+	}
+
+	/**
+	 * Returns the channel this stream reads data from.
+	 */
+	public synchronized FileChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the number of bytes between the start and end of the region of
+	 * the file this stream covers.
+	 */
+	public long getLength() {
+		return endOffset - startOffset;
+	}
+
+	/**
+	 * Moves this stream to the specified offset, relative to the start of its
+	 * region.
+	 *
+	 * @param offset
+	 *            The new offset. Offsets past the end of the region leave the
+	 *            stream at its end.
+	 */
+	public synchronized void seek(long offset) {
+		if (offset < 0) {
+			throw new IllegalArgumentException("Offset must not be negative");
+		}
+		position = Math.min(endOffset, startOffset + offset);
+	}
+
+	/**
+	 * Resets the input stream to the last mark point, or the beginning of the
+	 * stream if there is no mark point. If the stream has been closed, it's
+	 * opened again, reopening the file if this stream closed its channel.
+	 *
+	 * @throws IOException
+	 *             If the file can't be reopened, or the stream was given a
+	 *             channel that has since been closed.
+	 */
+	public synchronized void reset() throws IOException {
+		if (closed) {
+			if (!channel.isOpen()) {
+				if (file == null) {
+					throw new IOException("Channel has been closed");
+				}
+				channel = openChannel(file);
+			}
+			closed = false;
+		}
+
+		Log.d(TAG, "Reset to mark point " + (markPosition - startOffset)
+				+ " after returning " + (position - markPosition) + " bytes");
+
+		position = markPosition;
+	}
+
+	/**
+	 * @see java.io.InputStream#markSupported()
+	 */
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * @see java.io.InputStream#mark(int)
+	 */
+	public synchronized void mark(int readlimit) {
+		markPosition = position;
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, endOffset - position);
+	}
+
+	/**
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		long skipped = Math.min(n, endOffset - position);
+		position += skipped;
+		return skipped;
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		byte[] tmp = new byte[1];
+		int count = read(tmp, 0, 1);
+		if (count == -1)
+			return -1;
+		return tmp[0] & 0xFF;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public synchronized int read(byte[] b, int off, int len)
+			throws IOException {
+		if (closed) {
+			throw new IOException("Stream has been closed");
+		}
+		if (len == 0)
+			return 0;
+		long remaining = endOffset - position;
+		if (remaining <= 0)
+			return -1;
+
+		ByteBuffer target = ByteBuffer.wrap(b, off,
+				(int) Math.min(len, remaining));
+		int count = channel.read(target, position);
+		if (count > 0) {
+			position += count;
+		}
+		return count;
+	}
+
+	/**
+	 * Closes the underlying channel if this stream owns it.
+	 *
+	 * @see java.io.InputStream#close()
+	 */
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (closeChannel) {
+			channel.close();
+		}
+	}
+}
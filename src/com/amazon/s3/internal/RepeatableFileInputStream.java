@@ -23,12 +23,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 import android.util.Log;
 
 /**
  * A repeatable input stream for files. This input stream can be repeated an
  * unlimited number of times, without any limitation on when a repeat can occur.
+ * <p>
+ * {@link RepeatableFileChannelInputStream} should be preferred when only a
+ * region of the file is needed, or when several streams read the same file.
  */
 public class RepeatableFileInputStream extends InputStream {
 	private static final String TAG = "###RepeatableFileInputStream###";
@@ -66,22 +70,21 @@ public class RepeatableFileInputStream extends InputStream {
 
 	/**
 	 * Resets the input stream to the last mark point, or the beginning of the
-	 * stream if there is no mark point, by creating a new FileInputStream based
-	 * on the underlying file.
+	 * stream if there is no mark point, by repositioning the underlying file's
+	 * channel. If the stream has been closed, the file is opened again first,
+	 * so a stream can be reset after a failed request closed it.
 	 * 
 	 * @throws IOException
-	 *             when the FileInputStream cannot be re-created.
+	 *             when the file cannot be reopened or the channel cannot be
+	 *             repositioned.
 	 */
 	public void reset() throws IOException {
-		this.fis.close();
-		this.fis = new FileInputStream(file);
-
-		long skipped = 0;
-		long toSkip = markPoint;
-		while (toSkip > 0) {
-			skipped = this.fis.skip(toSkip);
-			toSkip -= skipped;
+		FileChannel channel = this.fis.getChannel();
+		if (!channel.isOpen()) {
+			this.fis = new FileInputStream(file);
+			channel = this.fis.getChannel();
 		}
+		channel.position(markPoint);
 
 		Log.d(TAG, "Reset to mark point " + markPoint + " after returning "
 				+ bytesReadPastMarkPoint + " bytes");
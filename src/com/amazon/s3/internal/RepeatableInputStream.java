@@ -31,6 +31,12 @@ import android.util.Log;
  * <b>Note:</b> Always use a {@link RepeatableFileInputStream} instead of this
  * class if you are sourcing data from a file, as the file-based repeatable
  * input stream can be repeated without any limitations.
+ * <p>
+ * The replay buffer is borrowed from a {@link StreamBufferPool} and handed
+ * back when it is no longer needed, either because more data has been read
+ * than it can hold, or because this stream has been closed. A stream that's
+ * garbage collected without being closed hands its buffer back when it's
+ * finalized. A closed stream can't be marked, reset or read again.
  */
 public class RepeatableInputStream extends InputStream {
 	private static final String TAG = "###RepeatableInputStream###";
@@ -40,6 +46,8 @@ public class RepeatableInputStream extends InputStream {
 	private int bufferOffset = 0;
 	private long bytesReadPastMark = 0;
 	private byte[] buffer = null;
+	private volatile boolean closed = false;
+	private final StreamBufferPool bufferPool;
 
 	/**
 	 * Creates a repeatable input stream based on another input stream.
@@ -52,16 +60,39 @@ public class RepeatableInputStream extends InputStream {
 	 *            The number of bytes buffered by this class.
 	 */
 	public RepeatableInputStream(InputStream inputStream, int bufferSize) {
+		this(inputStream, bufferSize, StreamBufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a repeatable input stream based on another input stream, whose
+	 * buffer is borrowed from the specified pool.
+	 * 
+	 * @param inputStream
+	 *            The input stream to wrap. The data read from the wrapped input
+	 *            stream is buffered as it is read, up to the buffer limit
+	 *            specified.
+	 * @param bufferSize
+	 *            The number of bytes buffered by this class.
+	 * @param bufferPool
+	 *            The pool to borrow the buffer from. Blocks if the pool's
+	 *            memory cap has been reached.
+	 */
+	public RepeatableInputStream(InputStream inputStream, int bufferSize,
+			StreamBufferPool bufferPool) {
 		if (inputStream == null) {
 			throw new IllegalArgumentException("InputStream cannot be null");
 		}
+		if (bufferPool == null) {
+			throw new IllegalArgumentException("StreamBufferPool cannot be null");
+		}
 
 		this.is = inputStream;
 		this.bufferSize = bufferSize;
-		this.buffer = new byte[this.bufferSize];
+		this.bufferPool = bufferPool;
+		this.buffer = bufferPool.acquire(this.bufferSize);
 
 		Log.d(TAG, "Underlying input stream will be repeatable up to "
-				+ this.buffer.length + " bytes");
+				+ this.bufferSize + " bytes");
 
 	}
 
@@ -71,9 +102,13 @@ public class RepeatableInputStream extends InputStream {
 	 * 
 	 * @throws IOException
 	 *             When the available buffer size has been exceeded, in which
-	 *             case the input stream data cannot be repeated.
+	 *             case the input stream data cannot be repeated, or the
+	 *             stream has been closed.
 	 */
 	public void reset() throws IOException {
+		if (closed) {
+			throw new IOException("Stream has been closed");
+		}
 		if (bytesReadPastMark <= bufferSize) {
 
 			Log.d(TAG, "Reset after reading " + bytesReadPastMark + " bytes.");
@@ -99,8 +134,15 @@ public class RepeatableInputStream extends InputStream {
 	 * This method can only be used while less data has been read from the input
 	 * stream than fits into the buffer. The readLimit parameter is ignored
 	 * entirely.
+	 *
+	 * @throws IllegalStateException
+	 *             If the stream has been closed, since its buffer has already
+	 *             been handed back to the pool.
 	 */
 	public synchronized void mark(int readlimit) {
+		if (closed) {
+			throw new IllegalStateException("Stream has been closed");
+		}
 
 		Log.d(TAG, "Input stream marked at " + bytesReadPastMark + " bytes");
 
@@ -108,20 +150,23 @@ public class RepeatableInputStream extends InputStream {
 			/*
 			 * Clear buffer of already-read data to make more space. It's safe
 			 * to cast bytesReadPastMark to an int because it is known to be
-			 * less than bufferSize, which is an int.
+			 * less than bufferSize, which is an int. The data is shifted in
+			 * place, since System.arraycopy handles overlapping ranges.
 			 */
-			byte[] newBuffer = new byte[this.bufferSize];
-			System.arraycopy(buffer, bufferOffset, newBuffer, 0,
-					(int) (bytesReadPastMark - bufferOffset));
-			this.buffer = newBuffer;
+			if (bufferOffset > 0) {
+				System.arraycopy(buffer, bufferOffset, buffer, 0,
+						(int) (bytesReadPastMark - bufferOffset));
+			}
 			this.bytesReadPastMark -= bufferOffset;
 			this.bufferOffset = 0;
 		} else {
-			// If mark is called after the buffer was already exceeded, create a
-			// new buffer.
+			// If mark is called after the buffer was already exceeded, borrow
+			// a new buffer.
+			bufferPool.release(buffer);
+			this.buffer = null;
 			this.bufferOffset = 0;
 			this.bytesReadPastMark = 0;
-			this.buffer = new byte[this.bufferSize];
+			this.buffer = bufferPool.acquire(this.bufferSize);
 		}
 	}
 
@@ -136,14 +181,41 @@ public class RepeatableInputStream extends InputStream {
 	 * @see java.io.InputStream#close()
 	 */
 	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			bufferPool.release(buffer);
+			buffer = null;
+		}
 		is.close();
 	}
 
+	/**
+	 * Hands the buffer back to the pool if this stream was never closed, so
+	 * that a caller who forgets to close it doesn't hold a share of the pool's
+	 * cap for good.
+	 */
+	protected void finalize() throws Throwable {
+		synchronized (this) {
+			if (!closed && buffer != null) {
+				Log.w(TAG, "Returning the buffer of an input stream that was "
+						+ "never closed to the pool. Please ensure upload "
+						+ "streams are always closed.");
+				bufferPool.release(buffer);
+				buffer = null;
+			}
+		}
+		super.finalize();
+	}
+
 	/**
 	 * @see java.io.InputStream#read(byte[], int, int)
 	 */
 	public int read(byte[] out, int outOffset, int outLength)
 			throws IOException {
+		if (closed) {
+			throw new IOException("Stream has been closed");
+		}
+
 		// Check whether we already have buffered data.
 		if (bufferOffset < bytesReadPastMark && buffer != null) {
 			// Data is being repeated, so read from buffer instead of wrapped
@@ -180,8 +252,9 @@ public class RepeatableInputStream extends InputStream {
 					"Buffer size "
 							+ bufferSize
 							+ " has been exceeded and the input stream "
-							+ "will not be repeatable until the next mark. Freeing buffer memory");
+							+ "will not be repeatable until the next mark. Returning buffer to pool");
 
+			bufferPool.release(buffer);
 			buffer = null;
 		}
 
@@ -15,7 +15,15 @@ package com.amazon.s3.internal;
  * permissions and limitations under the License.
  */
 
-import org.w3c.dom.Document;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.amazon.s3.Headers;
 import com.amazon.s3.exceptions.AmazonServiceException;
@@ -24,7 +32,6 @@ import com.amazon.s3.http.HttpMethodName;
 import com.amazon.s3.http.HttpResponse;
 import com.amazon.s3.http.HttpResponseHandler;
 import com.amazon.s3.model.AmazonS3Exception;
-import com.amazon.s3.util.XpathUtils;
 
 
 
@@ -37,10 +44,27 @@ import com.amazon.s3.util.XpathUtils;
  * and some information isn't explicitly represented in the XML error response
  * body (ex: error type/fault information) so it has to be inferred from other
  * parts of the error response.
+ * <p>
+ * Error bodies are read in a single streaming pass that only keeps the Code,
+ * Message, RequestId and HostId values, so no document tree is built. Each
+ * thread reuses its own XML reader, since error responses can arrive in
+ * bursts when requests are throttled.
  */
 public class S3ErrorResponseHandler
         implements HttpResponseHandler<AmazonServiceException> {
 
+    /** The XML reader used by each thread to parse error responses. */
+    private static final ThreadLocal<XMLReader> xmlReader = new ThreadLocal<XMLReader>() {
+        @Override
+        protected XMLReader initialValue() {
+            try {
+                return XMLReaderFactory.createXMLReader();
+            } catch (SAXException e) {
+                return null;
+            }
+        }
+    };
+
     /**
      * @see com.amazonaws.http.HttpResponseHandler#handle(com.amazonaws.http.HttpResponse)
      */
@@ -63,22 +87,49 @@ public class S3ErrorResponseHandler
             return ase;
         }
 
-        Document document = XpathUtils.documentFrom(errorResponse.getContent());
-        String message = XpathUtils.asString("Error/Message", document);
-        String errorCode = XpathUtils.asString("Error/Code", document);
-        String requestId = XpathUtils.asString("Error/RequestId", document);
-        String extendedRequestId = XpathUtils.asString("Error/HostId", document);
+        ErrorResponseHandler error = parseErrorResponse(errorResponse.getContent());
 
-        AmazonS3Exception ase = new AmazonS3Exception(message);
+        AmazonS3Exception ase = new AmazonS3Exception(error.message);
         ase.setStatusCode(errorResponse.getStatusCode());
-        ase.setErrorCode(errorCode);
-        ase.setRequestId(requestId);
-        ase.setExtendedRequestId(extendedRequestId);
+        ase.setErrorCode(error.errorCode);
+        ase.setRequestId(error.requestId);
+        ase.setExtendedRequestId(error.extendedRequestId);
         fillInErrorType(ase, errorResponse);
 
         return ase;
     }
 
+    /**
+     * Reads the fields of an S3 XML error document from the specified stream,
+     * which is closed afterwards.
+     *
+     * @param content
+     *            The error response body.
+     *
+     * @return The handler holding the values read.
+     */
+    private ErrorResponseHandler parseErrorResponse(InputStream content)
+            throws SAXException, IOException {
+        ErrorResponseHandler handler = new ErrorResponseHandler();
+        try {
+            XMLReader reader = xmlReader.get();
+            if (reader == null) {
+                reader = XMLReaderFactory.createXMLReader();
+            }
+            reader.setContentHandler(handler);
+            reader.setErrorHandler(handler);
+            try {
+                reader.parse(new InputSource(content));
+            } finally {
+                reader.setContentHandler(null);
+                reader.setErrorHandler(null);
+            }
+        } finally {
+            content.close();
+        }
+        return handler;
+    }
+
     /**
      * Fills in the AWS error type information in the specified
      * AmazonServiceException by looking at the HTTP status code in the error
@@ -112,4 +163,70 @@ public class S3ErrorResponseHandler
         return false;
     }
 
+    /**
+     * Collects the text of the Code, Message, RequestId and HostId children
+     * of the root Error element, ignoring everything else. Values are
+     * trimmed, and left null when the element is missing.
+     */
+    private static final class ErrorResponseHandler extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder();
+        private int depth = 0;
+        private boolean inError = false;
+        private boolean collecting = false;
+
+        String errorCode;
+        String message;
+        String requestId;
+        String extendedRequestId;
+
+        @Override
+        public void startElement(String uri, String name, String qName,
+                Attributes attrs) {
+            String elementName = localName(name, qName);
+            depth++;
+            if (depth == 1) {
+                inError = elementName.equals("Error");
+            } else if (depth == 2 && inError) {
+                collecting = true;
+                text.setLength(0);
+            } else {
+                collecting = false;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String name, String qName) {
+            String elementName = localName(name, qName);
+            if (depth == 2 && inError) {
+                String value = text.toString().trim();
+                if (elementName.equals("Code")) {
+                    errorCode = value;
+                } else if (elementName.equals("Message")) {
+                    message = value;
+                } else if (elementName.equals("RequestId")) {
+                    requestId = value;
+                } else if (elementName.equals("HostId")) {
+                    extendedRequestId = value;
+                }
+            }
+            collecting = false;
+            depth--;
+        }
+
+        @Override
+        public void characters(char ch[], int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private static String localName(String name, String qName) {
+            if (name != null && name.length() > 0) {
+                return name;
+            }
+            int colon = qName.indexOf(':');
+            return colon < 0 ? qName : qName.substring(colon + 1);
+        }
+    }
+
 }
@@ -31,13 +31,18 @@ import java.net.URLEncoder;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.util.Log;
 
 import com.amazon.s3.Request;
 import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.Owner;
 import com.amazon.s3.model.S3Object;
+import com.amazon.s3.model.S3ObjectSummary;
 import com.amazon.s3.util.BinaryUtils;
 import com.amazon.s3.util.DateUtils;
 import com.amazon.s3.util.Md5Utils;
@@ -67,6 +72,57 @@ public class ServiceUtils {
 		return dateUtils.formatRfc822Date(date);
 	}
 
+	/**
+	 * Returns a copy of the specified metadata, for callers handing the same
+	 * metadata to several owners that may modify it.
+	 */
+	public static ObjectMetadata copyObjectMetadata(ObjectMetadata metadata) {
+		ObjectMetadata copy = new ObjectMetadata();
+		copy.setUserMetadata(new HashMap<String, String>(metadata
+				.getUserMetadata()));
+		for (Map.Entry<String, Object> header : metadata.getRawMetadata()
+				.entrySet()) {
+			Object value = header.getValue();
+			if (value instanceof Date) {
+				value = ((Date) value).clone();
+			}
+			copy.setHeader(header.getKey(), value);
+		}
+		if (metadata.getExpirationTime() != null) {
+			copy.setExpirationTime((Date) metadata.getExpirationTime().clone());
+		}
+		copy.setExpirationTimeRuleId(metadata.getExpirationTimeRuleId());
+		if (metadata.getOngoingRestore() != null) {
+			copy.setOngoingRestore(metadata.getOngoingRestore().booleanValue());
+		}
+		if (metadata.getRestoreExpirationTime() != null) {
+			copy.setRestoreExpirationTime((Date) metadata
+					.getRestoreExpirationTime().clone());
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the specified object summary, for callers handing the
+	 * same summary to several owners that may modify it.
+	 */
+	public static S3ObjectSummary copyObjectSummary(S3ObjectSummary summary) {
+		S3ObjectSummary copy = new S3ObjectSummary();
+		copy.setBucketName(summary.getBucketName());
+		copy.setKey(summary.getKey());
+		copy.setETag(summary.getETag());
+		copy.setSize(summary.getSize());
+		if (summary.getLastModified() != null) {
+			copy.setLastModified((Date) summary.getLastModified().clone());
+		}
+		copy.setStorageClass(summary.getStorageClass());
+		if (summary.getOwner() != null) {
+			copy.setOwner(new Owner(summary.getOwner().getId(), summary
+					.getOwner().getDisplayName()));
+		}
+		return copy;
+	}
+
 	/**
 	 * Returns true if the specified ETag was from a multipart upload.
 	 * 
@@ -0,0 +1,124 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+
+/**
+ * Coalesces concurrent identical calls, used by <code>AmazonS3Client</code>
+ * so that many threads asking for the same thing at once send one request.
+ * <p>
+ * The first caller with a given key runs the call; callers arriving with the
+ * same key while it is in flight wait for it and receive the same result, or
+ * the same exception. Nothing is remembered once the call completes, so this
+ * is not a cache: a caller arriving just after a call completes starts a new
+ * one. Results are shared between callers, so callers must copy any result
+ * they hand out that can be modified.
+ */
+public class SingleFlight {
+
+	private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<String, Call>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Runs the specified call, or waits for the identical call already in
+	 * flight, and returns its result.
+	 *
+	 * @param key
+	 *            A key identifying the call; calls with equal keys must be
+	 *            interchangeable.
+	 * @param callable
+	 *            The call to run if none is in flight.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> callable)
+			throws AmazonClientException {
+		Call call = new Call();
+		Call inFlight = calls.putIfAbsent(key, call);
+		if (inFlight != null) {
+			coalescedCount.incrementAndGet();
+			return (T) inFlight.await();
+		}
+
+		try {
+			call.result = callable.call();
+			call.completed = true;
+		} catch (RuntimeException e) {
+			call.exception = e;
+		} catch (Exception e) {
+			call.exception = new AmazonClientException(e.getMessage(), e);
+		} finally {
+			if (call.exception != null)
+				call.completed = true;
+			calls.remove(key, call);
+			call.done.countDown();
+		}
+		if (call.exception != null)
+			throw call.exception;
+		return (T) call.result;
+	}
+
+	/**
+	 * Returns the number of calls that were answered by waiting for an
+	 * identical call, rather than running their own.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Builds a key from the specified parts. Each part is prefixed with its
+	 * length, so different parts can never produce the same key.
+	 */
+	public static String key(String... parts) {
+		StringBuilder key = new StringBuilder();
+		for (String part : parts) {
+			if (part == null) {
+				key.append("-/");
+			} else {
+				key.append(part.length()).append('/').append(part);
+			}
+		}
+		return key.toString();
+	}
+
+	private static final class Call {
+		final CountDownLatch done = new CountDownLatch(1);
+		Object result;
+		RuntimeException exception;
+		boolean completed;
+
+		Object await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException(
+						"Interrupted while waiting for an identical request", e);
+			}
+			if (exception != null)
+				throw exception;
+			if (!completed)
+				throw new AmazonClientException("An identical request failed");
+			return result;
+		}
+	}
+}
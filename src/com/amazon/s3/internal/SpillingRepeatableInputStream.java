@@ -0,0 +1,260 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import android.util.Log;
+
+/**
+ * A repeatable input stream for data of unknown length. The source stream is
+ * drained up front: the first bytes, up to a configurable threshold, are held
+ * in memory and anything beyond that is spilled to a temporary file. Once
+ * buffered, the total length is known and the stream can be marked and reset
+ * any number of times, without holding more than the threshold in memory.
+ * <p>
+ * The temporary file, if one was created, is deleted when this stream is
+ * closed.
+ */
+public class SpillingRepeatableInputStream extends InputStream {
+	private static final String TAG = "###SpillingRepeatableInputStream###";
+
+	/** The initial size of the in-memory buffer, grown up to the threshold. */
+	private static final int INITIAL_MEMORY_BUFFER_SIZE = 64 * Constants.KB;
+
+	private final InputStream source;
+	private final byte[] memory;
+	private final int memoryLength;
+	private final File spillFile;
+	private RandomAccessFile spill;
+	private final long length;
+
+	private long position = 0;
+	private long markPosition = 0;
+
+	/**
+	 * Drains the specified stream into a new repeatable stream, holding at most
+	 * <code>memoryThreshold</code> bytes in memory and spilling the rest to a
+	 * temporary file.
+	 *
+	 * @param source
+	 *            The stream to buffer. It is read to the end, and closed when
+	 *            the returned stream is closed.
+	 * @param memoryThreshold
+	 *            The maximum number of bytes held in memory.
+	 *
+	 * @return A repeatable stream containing all data from the source stream.
+	 *
+	 * @throws IOException
+	 *             If the source stream can't be read, or the temporary file
+	 *             can't be written.
+	 */
+	public static SpillingRepeatableInputStream buffer(InputStream source,
+			int memoryThreshold) throws IOException {
+		if (source == null) {
+			throw new IllegalArgumentException("InputStream cannot be null");
+		}
+		if (memoryThreshold < 0) {
+			throw new IllegalArgumentException(
+					"Memory threshold must not be negative");
+		}
+
+		byte[] memory = new byte[Math.min(memoryThreshold,
+				INITIAL_MEMORY_BUFFER_SIZE)];
+		int memoryLength = 0;
+
+		// Fill memory first, growing the buffer up to the threshold.
+		while (true) {
+			if (memoryLength == memory.length) {
+				if (memory.length >= memoryThreshold)
+					break;
+				byte[] grown = new byte[(int) Math.min(memoryThreshold,
+						2L * memory.length)];
+				System.arraycopy(memory, 0, grown, 0, memoryLength);
+				memory = grown;
+			}
+			int count = source.read(memory, memoryLength, memory.length
+					- memoryLength);
+			if (count == -1) {
+				return new SpillingRepeatableInputStream(source, memory,
+						memoryLength, null, memoryLength);
+			}
+			memoryLength += count;
+		}
+
+		// Anything that didn't fit goes to a temporary file.
+		File spillFile = File.createTempFile("aws-s3-upload", ".tmp");
+		long spilled = 0;
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(spillFile));
+			byte[] chunk = new byte[8 * Constants.KB];
+			int count;
+			while ((count = source.read(chunk)) != -1) {
+				out.write(chunk, 0, count);
+				spilled += count;
+			}
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ignored) {
+				}
+			}
+			if (!spillFile.delete()) {
+				Log.w(TAG, "Unable to delete temporary file " + spillFile);
+			}
+			throw e;
+		}
+
+		Log.d(TAG, "Buffered " + memoryLength + " bytes in memory and spilled "
+				+ spilled + " bytes to " + spillFile);
+
+		SpillingRepeatableInputStream stream = null;
+		try {
+			stream = new SpillingRepeatableInputStream(source, memory,
+					memoryLength, spillFile, memoryLength + spilled);
+			return stream;
+		} finally {
+			if (stream == null && !spillFile.delete()) {
+				Log.w(TAG, "Unable to delete temporary file " + spillFile);
+			}
+		}
+	}
+
+	private SpillingRepeatableInputStream(InputStream source, byte[] memory,
+			int memoryLength, File spillFile, long length) throws IOException {
+		this.source = source;
+		this.memory = memory;
+		this.memoryLength = memoryLength;
+		this.spillFile = spillFile;
+		this.length = length;
+		if (spillFile != null) {
+			this.spill = new RandomAccessFile(spillFile, "r");
+		}
+	}
+
+	/**
+	 * Returns the total number of bytes in this stream.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @see java.io.InputStream#markSupported()
+	 */
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * @see java.io.InputStream#mark(int)
+	 */
+	public synchronized void mark(int readlimit) {
+		markPosition = position;
+	}
+
+	/**
+	 * Resets this stream to the last mark point, or the beginning of the
+	 * stream if there is no mark point. This never needs to re-read data.
+	 */
+	public synchronized void reset() throws IOException {
+		position = markPosition;
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, length - position);
+	}
+
+	/**
+	 * @see java.io.InputStream#skip(long)
+	 */
+	public long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		long skipped = Math.min(n, length - position);
+		position += skipped;
+		return skipped;
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		byte[] tmp = new byte[1];
+		int count = read(tmp, 0, 1);
+		if (count == -1)
+			return -1;
+		return tmp[0] & 0xFF;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (position >= length)
+			return -1;
+
+		if (position < memoryLength) {
+			int count = (int) Math.min(len, memoryLength - position);
+			System.arraycopy(memory, (int) position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		if (spill == null) {
+			throw new IOException("Stream has been closed");
+		}
+		spill.seek(position - memoryLength);
+		int count = spill.read(b, off,
+				(int) Math.min(len, length - position));
+		if (count > 0) {
+			position += count;
+		}
+		return count;
+	}
+
+	/**
+	 * Closes the source stream and deletes the temporary file, if any.
+	 */
+	public void close() throws IOException {
+		try {
+			if (spill != null) {
+				spill.close();
+				spill = null;
+				if (!spillFile.delete()) {
+					Log.w(TAG, "Unable to delete temporary file " + spillFile);
+				}
+			}
+		} finally {
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+
+/**
+ * A shared pool of byte buffers used by {@link RepeatableInputStream} to hold
+ * the data it may need to replay on a retry.
+ * <p>
+ * Buffers are handed out in power-of-two size classes, from
+ * {@link #MIN_POOLED_BUFFER_SIZE} up to {@link #MAX_POOLED_BUFFER_SIZE}, and
+ * returned buffers are kept for reuse so that concurrent stream uploads don't
+ * allocate a fresh retry buffer for every request. Requests larger than the
+ * largest size class are allocated directly and are never retained.
+ * <p>
+ * The total number of bytes handed out at any one time is capped. When the
+ * cap has been reached, callers block in {@link #acquire(int)} until other
+ * streams release their buffers, which applies back-pressure to the number of
+ * concurrent stream uploads instead of growing the heap without limit. A
+ * caller waits at most {@link #DEFAULT_MAX_WAIT_MILLIS} (or the wait given to
+ * the constructor) and is then given a buffer outside the cap, so a stream
+ * that's never closed can't block every later upload. Until a buffer is next
+ * released, later callers that would have to wait are given a buffer outside
+ * the cap straight away instead of waiting out the same timeout again.
+ */
+public class StreamBufferPool {
+	private static final String TAG = "###StreamBufferPool###";
+
+	/** System property used to override the default pool's memory cap. */
+	public static final String MAX_POOL_SIZE_PROPERTY = "com.amazonaws.sdk.s3.streamBufferPoolSize";
+
+	/** The default cap, in bytes, on buffers handed out by the default pool. */
+	public static final long DEFAULT_MAX_POOL_SIZE = 64L * Constants.MB;
+
+	/** The smallest size class handed out by the pool. */
+	public static final int MIN_POOLED_BUFFER_SIZE = 4 * Constants.KB;
+
+	/** The largest size class handed out and retained by the pool. */
+	public static final int MAX_POOLED_BUFFER_SIZE = 16 * Constants.MB;
+
+	/**
+	 * The default time, in milliseconds, a caller waits for the cap before
+	 * being given a buffer outside it.
+	 */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 1000;
+
+	/** The maximum number of idle buffers retained per size class. */
+	private static final int MAX_IDLE_BUFFERS_PER_CLASS = 16;
+
+	private static final int MIN_SIZE_CLASS = Integer
+			.numberOfTrailingZeros(MIN_POOLED_BUFFER_SIZE);
+	private static final int MAX_SIZE_CLASS = Integer
+			.numberOfTrailingZeros(MAX_POOLED_BUFFER_SIZE);
+
+	private static volatile StreamBufferPool defaultPool;
+
+	/** Idle buffers, indexed by size class. */
+	private final ConcurrentLinkedQueue<byte[]>[] idleBuffers;
+
+	/** Maximum time, in milliseconds, to wait for the cap. */
+	private final long maxWaitMillis;
+
+	/**
+	 * Buffers handed out outside the cap after a wait timed out, which aren't
+	 * counted in bytesInUse; guarded by this.
+	 */
+	private final Map<byte[], Boolean> uncountedBuffers = new WeakHashMap<byte[], Boolean>();
+
+	/** Number of idle buffers in each size class. */
+	private final AtomicInteger[] idleCounts;
+
+	/** Cap on the number of bytes handed out at any one time. */
+	private final long maxPoolSize;
+
+	/** Number of bytes currently handed out; guarded by this. */
+	private long bytesInUse = 0;
+
+	/**
+	 * True if a wait for the cap timed out and no buffer has been released
+	 * since; guarded by this.
+	 */
+	private boolean starved = false;
+
+	/**
+	 * Returns the pool shared by all streams that don't specify their own. Its
+	 * memory cap defaults to {@link #DEFAULT_MAX_POOL_SIZE} and can be
+	 * overridden with the {@link #MAX_POOL_SIZE_PROPERTY} system property.
+	 */
+	public static StreamBufferPool getDefault() {
+		if (defaultPool == null) {
+			synchronized (StreamBufferPool.class) {
+				if (defaultPool == null) {
+					long maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+					String override = System
+							.getProperty(MAX_POOL_SIZE_PROPERTY);
+					if (override != null) {
+						try {
+							maxPoolSize = Long.parseLong(override);
+						} catch (Exception e) {
+							Log.w(TAG,
+									"Unable to parse buffer pool size override from value: "
+											+ override);
+						}
+					}
+					defaultPool = new StreamBufferPool(maxPoolSize);
+				}
+			}
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Creates a new buffer pool.
+	 *
+	 * @param maxPoolSize
+	 *            The maximum number of bytes that may be handed out by this
+	 *            pool at any one time.
+	 */
+	public StreamBufferPool(long maxPoolSize) {
+		this(maxPoolSize, DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * Creates a new buffer pool.
+	 *
+	 * @param maxPoolSize
+	 *            The maximum number of bytes that may be handed out by this
+	 *            pool at any one time.
+	 * @param maxWaitMillis
+	 *            The maximum time, in milliseconds, a caller waits for the cap
+	 *            before being given a buffer outside it.
+	 */
+	public StreamBufferPool(long maxPoolSize, long maxWaitMillis) {
+		if (maxPoolSize <= 0) {
+			throw new IllegalArgumentException(
+					"Buffer pool size must be greater than zero");
+		}
+		if (maxWaitMillis < 0) {
+			throw new IllegalArgumentException(
+					"Maximum wait must not be negative");
+		}
+		this.maxPoolSize = maxPoolSize;
+		this.maxWaitMillis = maxWaitMillis;
+
+		int classes = MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1;
+		this.idleBuffers = newQueues(classes);
+		this.idleCounts = new AtomicInteger[classes];
+		for (int i = 0; i < classes; i++) {
+			idleBuffers[i] = new ConcurrentLinkedQueue<byte[]>();
+			idleCounts[i] = new AtomicInteger();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ConcurrentLinkedQueue<byte[]>[] newQueues(int count) {
+		return new ConcurrentLinkedQueue[count];
+	}
+
+	/**
+	 * Borrows a buffer of at least the specified size from this pool, blocking
+	 * while the pool's memory cap is exhausted. A single request larger than
+	 * the cap is only granted once no other buffers are outstanding. If the
+	 * cap stays exhausted for the pool's maximum wait, a buffer outside the cap
+	 * is allocated instead.
+	 *
+	 * @param size
+	 *            The minimum size of the returned buffer.
+	 *
+	 * @return A buffer at least <code>size</code> bytes long, which must be
+	 *         handed back through {@link #release(byte[])}.
+	 * @throws AmazonClientException
+	 *             If the thread is interrupted while waiting; its interrupt
+	 *             status is kept.
+	 */
+	public byte[] acquire(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException(
+					"Buffer size must not be negative");
+		}
+
+		int sizeClass = sizeClassFor(size);
+		int bufferSize = sizeClass < 0 ? size : 1 << sizeClass;
+
+		if (!reserve(bufferSize)) {
+			Log.w(TAG, "No room in the stream buffer pool for " + bufferSize
+					+ " bytes; allocating outside the pool. Streams that are "
+					+ "never closed keep their buffers from the pool.");
+			byte[] buffer = new byte[bufferSize];
+			synchronized (this) {
+				uncountedBuffers.put(buffer, Boolean.TRUE);
+			}
+			return buffer;
+		}
+
+		if (sizeClass >= 0) {
+			int index = sizeClass - MIN_SIZE_CLASS;
+			byte[] buffer = idleBuffers[index].poll();
+			if (buffer != null) {
+				idleCounts[index].decrementAndGet();
+				return buffer;
+			}
+		}
+
+		try {
+			return new byte[bufferSize];
+		} catch (OutOfMemoryError oome) {
+			unreserve(bufferSize);
+			throw oome;
+		}
+	}
+
+	/**
+	 * Returns a buffer previously borrowed through {@link #acquire(int)} to
+	 * this pool. Callers must not touch the buffer once it has been released.
+	 *
+	 * @param buffer
+	 *            The buffer to return, or null for a no-op.
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null)
+			return;
+
+		synchronized (this) {
+			if (uncountedBuffers.remove(buffer) != null)
+				return;
+		}
+
+		int sizeClass = sizeClassFor(buffer.length);
+		if (sizeClass >= 0 && buffer.length == 1 << sizeClass) {
+			int index = sizeClass - MIN_SIZE_CLASS;
+			if (idleCounts[index].incrementAndGet() <= MAX_IDLE_BUFFERS_PER_CLASS) {
+				idleBuffers[index].offer(buffer);
+			} else {
+				idleCounts[index].decrementAndGet();
+			}
+		}
+
+		unreserve(buffer.length);
+	}
+
+	/**
+	 * Returns the number of bytes currently handed out by this pool.
+	 */
+	public synchronized long getBytesInUse() {
+		return bytesInUse;
+	}
+
+	/**
+	 * Returns the maximum number of bytes this pool hands out at any one time.
+	 */
+	public long getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * Waits until the bytes given fit under the cap and counts them as in use.
+	 * Returns false, without counting them, if they still don't fit after the
+	 * maximum wait, or straight away if an earlier wait timed out and nothing
+	 * has been released since.
+	 */
+	private synchronized boolean reserve(int size) {
+		long deadline = System.currentTimeMillis() + maxWaitMillis;
+		while (bytesInUse > 0 && bytesInUse + size > maxPoolSize) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (starved || remaining <= 0) {
+				starved = true;
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException(
+						"Interrupted while waiting for a stream buffer", e);
+			}
+		}
+		bytesInUse += size;
+		return true;
+	}
+
+	private synchronized void unreserve(int size) {
+		bytesInUse -= size;
+		starved = false;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the size class (as a power of two) that holds buffers of the
+	 * specified size, or -1 if the size is too large to be pooled.
+	 */
+	private static int sizeClassFor(int size) {
+		if (size > MAX_POOLED_BUFFER_SIZE)
+			return -1;
+		if (size <= MIN_POOLED_BUFFER_SIZE)
+			return MIN_SIZE_CLASS;
+		return 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+}
@@ -0,0 +1,625 @@
+package com.amazon.s3.model;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A compact, append-only record of the objects in an Amazon S3 bucket, for
+ * listings too large to hold as {@link S3ObjectSummary} objects.
+ * </p>
+ * <p>
+ * Keys are stored as UTF-8 in a single byte array, each one stored as the
+ * number of leading bytes it shares with the key before it followed by the
+ * rest of its bytes. Since Amazon S3 lists keys in order, neighbouring keys
+ * usually share long prefixes. Every {@value #RESTART_INTERVAL}th key is
+ * stored whole, so a key can be found by index without decoding the keys
+ * before it. Sizes and last modified times are stored in arrays of longs, and
+ * each distinct storage class and owner is stored once and referred to by
+ * number.
+ * </p>
+ * <p>
+ * ETags aren't stored. Entries are read back in order with a {@link Cursor},
+ * which decodes each key into the same buffer, or by index.
+ * </p>
+ * <p>
+ * Listings are filled by
+ * {@link com.amazon.s3.services.AmazonS3Client#listObjects(ListObjectsRequest, CompactObjectListing)}
+ * and
+ * {@link com.amazon.s3.services.AmazonS3Client#listAllObjects(ListObjectsRequest)}
+ * directly from the listing responses, without creating a summary for each
+ * object.
+ * </p>
+ * <p>
+ * This class isn't thread safe. A cursor can be used while entries are being
+ * added, and sees the entries added after it was created.
+ * </p>
+ */
+public class CompactObjectListing {
+
+    /** How often a key is stored whole rather than against the key before it */
+    public static final int RESTART_INTERVAL = 16;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The name of the Amazon S3 bucket containing the listed objects */
+    private String bucketName;
+
+    /** The number of entries */
+    private int count;
+
+    /** The encoded keys, and the number of bytes of it in use */
+    private byte[] keyData = new byte[INITIAL_CAPACITY * 16];
+    private int keyDataLength;
+
+    /** The offset in keyData of every RESTART_INTERVALth key */
+    private int[] restarts = new int[INITIAL_CAPACITY / RESTART_INTERVAL];
+
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private long[] lastModified = new long[INITIAL_CAPACITY];
+
+    /** One more than the index in storageClassNames of each entry, or 0 for none */
+    private byte[] storageClasses = new byte[INITIAL_CAPACITY];
+
+    /** The index in ownerList of each entry's owner, or -1 for none */
+    private int[] owners = new int[INITIAL_CAPACITY];
+
+    private final List<String> storageClassNames = new ArrayList<String>();
+    private final List<Owner> ownerList = new ArrayList<Owner>();
+    private final Map<String, Integer> ownerIndexes = new HashMap<String, Integer>();
+
+    /** The owner of the last entry added, which is usually the next one's too */
+    private int lastOwner = -1;
+
+    private final List<String> commonPrefixes = new ArrayList<String>();
+
+    /** The last key added, as UTF-8 */
+    private byte[] previousKey = new byte[256];
+    private int previousKeyLength;
+
+    /** Scratch space for the key being added */
+    private byte[] encodedKey = new byte[256];
+    private char[] keyChars = new char[256];
+
+    /**
+     * Gets the name of the Amazon S3 bucket containing the listed objects.
+     *
+     * @return The name of the Amazon S3 bucket containing the listed objects.
+     */
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    /**
+     * For internal use only. Sets the name of the Amazon S3 bucket containing
+     * the listed objects.
+     *
+     * @param bucketName
+     *            The name of the Amazon S3 bucket containing the listed
+     *            objects.
+     */
+    public void setBucketName(String bucketName) {
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Returns the number of objects in this listing.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns whether this listing has no objects.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Gets the common prefixes of every page added to this listing. Common
+     * prefixes are only listed for requests that specified a delimiter.
+     *
+     * @return The common prefixes of every page added to this listing.
+     */
+    public List<String> getCommonPrefixes() {
+        return commonPrefixes;
+    }
+
+    /**
+     * Adds an object to the end of this listing. The key must not be null.
+     *
+     * @param summary
+     *            The summary of the object to add.
+     */
+    public void add(S3ObjectSummary summary) {
+        Owner owner = summary.getOwner();
+        Date date = summary.getLastModified();
+        add(summary.getKey(), summary.getSize(), date == null ? -1
+                : date.getTime(), summary.getStorageClass(), owner == null ? null
+                : owner.getId(), owner == null ? null : owner.getDisplayName());
+    }
+
+    /**
+     * Adds an object to the end of this listing.
+     *
+     * @param key
+     *            The object's key.
+     * @param size
+     *            The object's size in bytes, or -1 if it's unknown.
+     * @param lastModified
+     *            The time the object was last modified in milliseconds since
+     *            the epoch, or -1 if it's unknown.
+     * @param storageClass
+     *            The object's storage class, or null if it's unknown.
+     * @param ownerId
+     *            The ID of the object's owner, or null if the owner is
+     *            unknown.
+     * @param ownerDisplayName
+     *            The display name of the object's owner, or null.
+     */
+    public void add(String key, long size, long lastModified,
+            String storageClass, String ownerId, String ownerDisplayName) {
+        int length = key.length();
+        if (length > keyChars.length) {
+            keyChars = new char[Math.max(length, keyChars.length * 2)];
+        }
+        key.getChars(0, length, keyChars, 0);
+        add(keyChars, 0, length, size, lastModified, storageClass, ownerId,
+                ownerDisplayName);
+    }
+
+    /**
+     * For internal use only. Adds an object to the end of this listing, taking
+     * its key from a range of characters so no string is created for it.
+     *
+     * @see #add(String, long, long, String, String, String)
+     */
+    public void add(char[] key, int offset, int length, long size,
+            long lastModified, String storageClass, String ownerId,
+            String ownerDisplayName) {
+        ensureCapacity(count + 1);
+
+        int keyLength = encode(key, offset, length);
+        int shared = 0;
+        if (count % RESTART_INTERVAL == 0) {
+            restarts[count / RESTART_INTERVAL] = keyDataLength;
+        } else {
+            int limit = Math.min(keyLength, previousKeyLength);
+            while (shared < limit && encodedKey[shared] == previousKey[shared])
+                shared++;
+        }
+
+        int suffix = keyLength - shared;
+        ensureKeyDataCapacity(keyDataLength + 10 + suffix);
+        writeVarint(shared);
+        writeVarint(suffix);
+        System.arraycopy(encodedKey, shared, keyData, keyDataLength, suffix);
+        keyDataLength += suffix;
+
+        byte[] swap = previousKey;
+        previousKey = encodedKey;
+        previousKeyLength = keyLength;
+        encodedKey = swap;
+
+        sizes[count] = size;
+        this.lastModified[count] = lastModified;
+        storageClasses[count] = storageClassIndex(storageClass);
+        owners[count] = ownerIndex(ownerId, ownerDisplayName);
+        count++;
+    }
+
+    /**
+     * Returns a cursor positioned before the first object in this listing.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the key of the object at the index given.
+     */
+    public String getKey(int index) {
+        checkIndex(index);
+        Cursor cursor = new Cursor();
+        cursor.seek(index);
+        return cursor.getKey();
+    }
+
+    /**
+     * Returns the size in bytes of the object at the index given, or -1 if
+     * it's unknown.
+     */
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * Returns the time the object at the index given was last modified, in
+     * milliseconds since the epoch, or -1 if it's unknown.
+     */
+    public long getLastModified(int index) {
+        checkIndex(index);
+        return lastModified[index];
+    }
+
+    /**
+     * Returns the storage class of the object at the index given, or null if
+     * it's unknown.
+     */
+    public String getStorageClass(int index) {
+        checkIndex(index);
+        int storageClass = storageClasses[index] & 0xff;
+        return storageClass == 0 ? null : storageClassNames
+                .get(storageClass - 1);
+    }
+
+    /**
+     * Returns the owner of the object at the index given, or null if it's
+     * unknown. Objects with the same owner share the same {@link Owner}.
+     */
+    public Owner getOwner(int index) {
+        checkIndex(index);
+        int owner = owners[index];
+        return owner < 0 ? null : ownerList.get(owner);
+    }
+
+    /**
+     * Returns a new summary of the object at the index given. Its ETag isn't
+     * set.
+     */
+    public S3ObjectSummary getObjectSummary(int index) {
+        checkIndex(index);
+        Cursor cursor = new Cursor();
+        cursor.seek(index);
+        return cursor.toObjectSummary();
+    }
+
+    /**
+     * Returns the number of bytes used to store the keys of this listing.
+     */
+    public int getKeyDataSize() {
+        return keyDataLength;
+    }
+
+    /**
+     * Removes the objects after the first ones, so the listing holds only the
+     * number of objects given. Common prefixes aren't changed. Cursors
+     * positioned beyond the new end must not be used.
+     *
+     * @param size
+     *            The number of objects to keep, from 0 to {@link #size()}.
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > count)
+            throw new IndexOutOfBoundsException("Size: " + size
+                    + ", current size: " + count);
+        if (size == count)
+            return;
+
+        if (size == 0) {
+            keyDataLength = 0;
+            previousKeyLength = 0;
+        } else {
+            // The key data ends where the first removed key began, and the
+            // next key added is compared with the last key kept.
+            Cursor cursor = new Cursor();
+            cursor.seek(size - 1);
+            keyDataLength = cursor.offset;
+            if (cursor.keyLength > previousKey.length)
+                previousKey = new byte[cursor.keyLength];
+            System.arraycopy(cursor.key, 0, previousKey, 0, cursor.keyLength);
+            previousKeyLength = cursor.keyLength;
+        }
+        count = size;
+    }
+
+    /**
+     * Shrinks the storage of this listing to fit the objects in it, for
+     * listings that won't grow any more.
+     */
+    public void trimToSize() {
+        keyData = copyOf(keyData, keyDataLength);
+        restarts = copyOf(restarts, (count + RESTART_INTERVAL - 1)
+                / RESTART_INTERVAL);
+        sizes = copyOf(sizes, count);
+        lastModified = copyOf(lastModified, count);
+        storageClasses = copyOf(storageClasses, count);
+        owners = copyOf(owners, count);
+    }
+
+    /**
+     * Reads the objects of a listing in order. The key of the current object
+     * is decoded into a buffer owned by the cursor, which is reused for each
+     * object, so reading keys with {@link #getKeyBytes()} and
+     * {@link #getKeyLength()} creates no objects.
+     */
+    public class Cursor {
+
+        private int index = -1;
+
+        /** The offset in keyData of the next key */
+        private int offset = 0;
+
+        private byte[] key = new byte[256];
+        private int keyLength;
+
+        /**
+         * Moves to the next object in the listing.
+         *
+         * @return Whether there was a next object.
+         */
+        public boolean next() {
+            if (index + 1 >= count)
+                return false;
+            index++;
+            readKey();
+            return true;
+        }
+
+        /** Moves to the object at the index given, decoding from the nearest whole key. */
+        private void seek(int target) {
+            int restart = target / RESTART_INTERVAL;
+            offset = restarts[restart];
+            index = restart * RESTART_INTERVAL - 1;
+            while (index < target) {
+                index++;
+                readKey();
+            }
+        }
+
+        private void readKey() {
+            int shared = readVarint();
+            int suffix = readVarint();
+            int length = shared + suffix;
+            if (length > key.length) {
+                byte[] grown = new byte[Math.max(length, key.length * 2)];
+                System.arraycopy(key, 0, grown, 0, shared);
+                key = grown;
+            }
+            System.arraycopy(keyData, offset, key, shared, suffix);
+            offset += suffix;
+            keyLength = length;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = keyData[offset++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /**
+         * Returns the index of the current object in the listing.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the key of the current object.
+         */
+        public String getKey() {
+            return new String(key, 0, keyLength, UTF8);
+        }
+
+        /**
+         * Returns the buffer holding the key of the current object as UTF-8.
+         * Only the first {@link #getKeyLength()} bytes are the key, and the
+         * buffer is overwritten when the cursor moves.
+         */
+        public byte[] getKeyBytes() {
+            return key;
+        }
+
+        /**
+         * Returns the length in bytes of the UTF-8 key of the current object.
+         */
+        public int getKeyLength() {
+            return keyLength;
+        }
+
+        /**
+         * Returns the size in bytes of the current object, or -1 if it's
+         * unknown.
+         */
+        public long getSize() {
+            return sizes[index];
+        }
+
+        /**
+         * Returns the time the current object was last modified, in
+         * milliseconds since the epoch, or -1 if it's unknown.
+         */
+        public long getLastModified() {
+            return lastModified[index];
+        }
+
+        /**
+         * Returns the storage class of the current object, or null if it's
+         * unknown.
+         */
+        public String getStorageClass() {
+            return CompactObjectListing.this.getStorageClass(index);
+        }
+
+        /**
+         * Returns the owner of the current object, or null if it's unknown.
+         */
+        public Owner getOwner() {
+            return CompactObjectListing.this.getOwner(index);
+        }
+
+        /**
+         * Returns a new summary of the current object. Its ETag isn't set.
+         */
+        public S3ObjectSummary toObjectSummary() {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(bucketName);
+            summary.setKey(getKey());
+            summary.setSize(getSize());
+            long time = getLastModified();
+            if (time != -1)
+                summary.setLastModified(new Date(time));
+            summary.setStorageClass(getStorageClass());
+            summary.setOwner(getOwner());
+            return summary;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + count);
+    }
+
+    /**
+     * Encodes a key into encodedKey as UTF-8, the same way
+     * {@link String#getBytes(String)} does, and returns its length.
+     */
+    private int encode(char[] chars, int offset, int length) {
+        if (length * 3 > encodedKey.length) {
+            encodedKey = new byte[Math.max(length * 3, encodedKey.length * 2)];
+        }
+
+        byte[] out = encodedKey;
+        int n = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xc0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                out[n++] = (byte) (0xf0 | (codePoint >> 18));
+                out[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[n++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (c >= '\uD800' && c <= '\uDFFF') {
+                out[n++] = (byte) '?';
+            } else {
+                out[n++] = (byte) (0xe0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return n;
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7f) != 0) {
+            keyData[keyDataLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        keyData[keyDataLength++] = (byte) value;
+    }
+
+    private byte storageClassIndex(String storageClass) {
+        if (storageClass == null)
+            return 0;
+
+        int index = storageClassNames.indexOf(storageClass);
+        if (index < 0) {
+            if (storageClassNames.size() == 255)
+                throw new IllegalStateException(
+                        "Too many distinct storage classes in listing");
+            storageClassNames.add(storageClass);
+            index = storageClassNames.size() - 1;
+        }
+        return (byte) (index + 1);
+    }
+
+    private int ownerIndex(String id, String displayName) {
+        if (id == null && displayName == null)
+            return -1;
+
+        if (lastOwner >= 0) {
+            Owner owner = ownerList.get(lastOwner);
+            if (equal(id, owner.getId())
+                    && equal(displayName, owner.getDisplayName()))
+                return lastOwner;
+        }
+
+        String ownerKey = id + "\n" + displayName;
+        Integer index = ownerIndexes.get(ownerKey);
+        if (index == null) {
+            index = Integer.valueOf(ownerList.size());
+            ownerList.add(new Owner(id, displayName));
+            ownerIndexes.put(ownerKey, index);
+        }
+        lastOwner = index.intValue();
+        return lastOwner;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sizes.length)
+            return;
+
+        int grown = Math.max(capacity, sizes.length * 2);
+        sizes = copyOf(sizes, grown);
+        lastModified = copyOf(lastModified, grown);
+        storageClasses = copyOf(storageClasses, grown);
+        owners = copyOf(owners, grown);
+        int restartCapacity = (grown + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        if (restartCapacity > restarts.length)
+            restarts = copyOf(restarts, restartCapacity);
+    }
+
+    private void ensureKeyDataCapacity(int capacity) {
+        if (capacity > keyData.length)
+            keyData = copyOf(keyData, Math.max(capacity, keyData.length * 2));
+    }
+
+    private static byte[] copyOf(byte[] array, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
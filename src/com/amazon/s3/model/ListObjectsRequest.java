@@ -1,5 +1,8 @@
 package com.amazon.s3.model;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import com.amazon.s3.AmazonWebServiceRequest;
 
 /*
@@ -106,6 +109,12 @@ public class ListObjectsRequest extends AmazonWebServiceRequest {
      */
     private Integer maxKeys;
 
+    /**
+     * Optional parameter naming the summary fields read from the response;
+     * null reads every field.
+     */
+    private Set<SummaryField> summaryFields;
+
 
     /**
      * Constructs a new {@link ListObjectsRequest} object.
@@ -414,4 +423,60 @@ public class ListObjectsRequest extends AmazonWebServiceRequest {
         return this;
     }
 
+    /**
+     * Gets the optional set of summary fields read from the response, or null
+     * if every field is read.
+     *
+     * @return The summary fields read from the response, or null for all of
+     *         them.
+     *
+     * @see ListObjectsRequest#setSummaryFields(Set)
+     * @see SummaryField
+     */
+    public Set<SummaryField> getSummaryFields() {
+        return summaryFields;
+    }
+
+    /**
+     * Sets the optional set of summary fields read from the response. Fields
+     * not in the set are skipped while the response is parsed and left unset in
+     * the returned summaries; the keys are always read. Null, the default,
+     * reads every field.
+     *
+     * @param summaryFields
+     *            The summary fields to read, or null for all of them.
+     *
+     * @see ListObjectsRequest#getSummaryFields()
+     * @see SummaryField
+     */
+    public void setSummaryFields(Set<SummaryField> summaryFields) {
+        this.summaryFields = summaryFields == null ? null : EnumSet
+                .copyOf(summaryFields.isEmpty() ? EnumSet.noneOf(SummaryField.class)
+                        : summaryFields);
+    }
+
+    /**
+     * Sets the summary fields read from the response. Fields not given are
+     * skipped while the response is parsed and left unset in the returned
+     * summaries; the keys are always read.
+     * Returns this {@link ListObjectsRequest}, enabling additional method
+     * calls to be chained together.
+     *
+     * @param summaryFields
+     *            The summary fields to read.
+     *
+     * @return This {@link ListObjectsRequest}, enabling additional method
+     *         calls to be chained together.
+     *
+     * @see ListObjectsRequest#setSummaryFields(Set)
+     */
+    public ListObjectsRequest withSummaryFields(SummaryField... summaryFields) {
+        Set<SummaryField> fields = EnumSet.noneOf(SummaryField.class);
+        for (SummaryField field : summaryFields) {
+            fields.add(field);
+        }
+        setSummaryFields(fields);
+        return this;
+    }
+
 }
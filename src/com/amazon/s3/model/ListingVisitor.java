@@ -0,0 +1,56 @@
+package com.amazon.s3.model;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+ * Visitor interface for the objects and common prefixes of a bucket listing,
+ * called for each one as the listing responses are parsed.
+ * <p>
+ * The visitor is called on the thread that's listing, while the response is
+ * still being read, so the summaries of a page are never held together and
+ * the visitor's work overlaps with the rest of the page arriving. The
+ * response isn't read any further until the visitor returns, so a visitor
+ * that's slow to return slows the listing down to its own pace.
+ * <p>
+ * Returning false from either method stops the listing; the rest of the
+ * current page is discarded and no more pages are requested.
+ *
+ * @see com.amazon.s3.services.AmazonS3Client#listObjects(ListObjectsRequest,
+ *      ListingVisitor)
+ */
+public interface ListingVisitor {
+
+	/**
+	 * Called for each object in the listing, in the order listed.
+	 *
+	 * @param objectSummary
+	 *            The summary of the object, which the visitor may keep.
+	 * @return True to continue the listing, or false to stop it.
+	 */
+	public boolean visitObject(S3ObjectSummary objectSummary);
+
+	/**
+	 * Called for each common prefix in the listing, in the order listed.
+	 * Common prefixes are only listed for requests that specified a
+	 * delimiter.
+	 *
+	 * @param commonPrefix
+	 *            The common prefix.
+	 * @return True to continue the listing, or false to stop it.
+	 */
+	public boolean visitCommonPrefix(String commonPrefix);
+
+}
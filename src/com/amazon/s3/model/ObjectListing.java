@@ -17,6 +17,7 @@ package com.amazon.s3.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -86,6 +87,12 @@ public class ObjectListing {
      */
     private String delimiter;
 
+    /**
+     * The summary fields requested by the caller when this listing was
+     * returned, or null if every field was requested
+     */
+    private Set<SummaryField> summaryFields;
+
     /**
      * Gets the list of object summaries describing the objects stored in the
      * S3 bucket. Listings for large buckets can be
@@ -348,4 +355,28 @@ public class ObjectListing {
         this.isTruncated = isTruncated;
     }
 
+    /**
+     * Gets the summary fields that were read into this listing's summaries, or
+     * null if every field was read. Requests for the next batch of this listing
+     * read the same fields.
+     *
+     * @return The summary fields read, or null for all of them.
+     *
+     * @see SummaryField
+     */
+    public Set<SummaryField> getSummaryFields() {
+        return summaryFields;
+    }
+
+    /**
+     * For internal use only. Sets the summary fields that were read into this
+     * listing's summaries.
+     *
+     * @param summaryFields
+     *            The summary fields read, or null for all of them.
+     */
+    public void setSummaryFields(Set<SummaryField> summaryFields) {
+        this.summaryFields = summaryFields;
+    }
+
 }
@@ -204,8 +204,9 @@ public class PutObjectRequest extends AmazonWebServiceRequest {
      * specified in the object metadata parameter; Amazon S3 requires it
      * be passed in before the data is uploaded. Failure to specify a content
      * length will cause the entire contents of the input stream to be buffered
-     * locally in memory so that the content length can be calculated, which can
-     * result in negative performance problems.
+     * locally (in memory up to a threshold, and in a temporary file after
+     * that) so that the content length can be calculated, which can result in
+     * negative performance problems.
      * </p>
      *
      * @param bucketName
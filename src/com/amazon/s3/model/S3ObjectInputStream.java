@@ -55,7 +55,9 @@ public class S3ObjectInputStream extends FilterInputStream {
      * @see EofSensorInputStream
      */
     public void abort() throws IOException {
-        getHttpRequest().abort();
+        if (getHttpRequest() != null) {
+            getHttpRequest().abort();
+        }
         try {
             close();            
         } catch (SocketException e) {
@@ -126,9 +126,11 @@ public class S3ObjectSummary {
     }
 
     /**
-     * Gets the size of this object in bytes.
+     * Gets the size of this object in bytes. If this summary came from a
+     * listing that didn't read {@link SummaryField#Size}, the size is -1, so
+     * that it can't be mistaken for an empty object.
      * 
-     * @return The size of this object in bytes.
+     * @return The size of this object in bytes, or -1 if it wasn't read.
      * 
      * @see 3ObjectSummary#setSize(long)
      */
@@ -309,9 +309,11 @@ public class S3VersionSummary {
 	}
 
 	/**
-	 * Gets the size of this version in bytes.
+	 * Gets the size of this version in bytes. If this summary came from a
+	 * listing that didn't read {@link SummaryField#Size}, the size is -1, so
+	 * that it can't be mistaken for an empty version.
 	 * 
-	 * @return The size of this version in bytes.
+	 * @return The size of this version in bytes, or -1 if it wasn't read.
 	 * 
 	 * @see S3VersionSummary#setSize(long)
 	 */
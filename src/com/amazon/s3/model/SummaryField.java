@@ -0,0 +1,60 @@
+package com.amazon.s3.model;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+ * <p>
+ * Specifies the fields of object and version summaries that are read from
+ * listing responses.
+ * </p>
+ * <p>
+ * By default every field of every summary in a listing is read. Callers that
+ * only need some of them can name those fields with
+ * {@link ListObjectsRequest#setSummaryFields(java.util.Set)} or
+ * {@link ListVersionsRequest#setSummaryFields(java.util.Set)}; the other
+ * fields are then skipped while the response is parsed and left unset in the
+ * summaries, which saves parsing dates and creating owners for every entry.
+ * The key of each summary, and whether a version is a delete marker, are
+ * always read.
+ * </p>
+ */
+public enum SummaryField {
+
+    /** The ETag of the object, without surrounding quotes. */
+    ETag,
+
+    /**
+     * The size of the object, in bytes. Summaries read without it have a size
+     * of -1.
+     */
+    Size,
+
+    /** The date the object was last modified. */
+    LastModified,
+
+    /** The storage class of the object. */
+    StorageClass,
+
+    /** The owner of the object. */
+    Owner,
+
+    /** The version ID of the object; only read from version listings. */
+    VersionId,
+
+    /** Whether the version is the latest; only read from version listings. */
+    IsLatest;
+
+}
@@ -17,6 +17,7 @@ package com.amazon.s3.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Contains the results of listing the versions in an Amazon S3 bucket,
@@ -98,6 +99,12 @@ public class VersionListing {
 	 */
 	private String delimiter;
 
+	/**
+	 * The summary fields requested by the caller when this listing was
+	 * returned, or null if every field was requested
+	 */
+	private Set<SummaryField> summaryFields;
+
 	/**
 	 * Gets the list of version summaries describing the versions stored in the
 	 * associated S3 bucket. Callers should remember that listings for large
@@ -421,4 +428,28 @@ public class VersionListing {
 		this.isTruncated = isTruncated;
 	}
 
+	/**
+	 * Gets the summary fields that were read into this listing's summaries, or
+	 * null if every field was read. Requests for the next batch of this listing
+	 * read the same fields.
+	 *
+	 * @return The summary fields read, or null for all of them.
+	 *
+	 * @see SummaryField
+	 */
+	public Set<SummaryField> getSummaryFields() {
+		return summaryFields;
+	}
+
+	/**
+	 * For internal use only. Sets the summary fields that were read into this
+	 * listing's summaries.
+	 *
+	 * @param summaryFields
+	 *            The summary fields read, or null for all of them.
+	 */
+	public void setSummaryFields(Set<SummaryField> summaryFields) {
+		this.summaryFields = summaryFields;
+	}
+
 }
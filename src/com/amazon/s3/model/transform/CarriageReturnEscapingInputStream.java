@@ -0,0 +1,108 @@
+package com.amazon.s3.model.transform;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replaces carriage returns with character references as the document is
+ * read, so the parser keeps them in element text instead of normalizing them
+ * to line feeds. This is the streaming equivalent of the sanitizing done by
+ * {@link XmlResponsesSaxParser#sanitizeXmlDocument}, for listings parsed as
+ * they're read; it works on bytes because a carriage return byte never occurs
+ * inside a multi-byte UTF-8 character.
+ */
+final class CarriageReturnEscapingInputStream extends FilterInputStream {
+	private static final byte[] ESCAPE = { '&', '#', '0', '1', '3', ';' };
+
+	private final byte[] buffer = new byte[8192];
+	private int position = 0;
+	private int limit = 0;
+	private int escapePosition = ESCAPE.length;
+
+	CarriageReturnEscapingInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int read = read(b, 0, 1);
+		return read <= 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		int count = 0;
+		while (count < len) {
+			if (escapePosition < ESCAPE.length) {
+				b[off + count++] = ESCAPE[escapePosition++];
+				continue;
+			}
+			if (position == limit) {
+				// Return what's ready rather than block for more
+				if (count > 0)
+					break;
+				int read = in.read(buffer, 0, buffer.length);
+				if (read < 0)
+					return -1;
+				position = 0;
+				limit = read;
+				continue;
+			}
+
+			byte c = buffer[position++];
+			if (c == '\r') {
+				escapePosition = 0;
+			} else {
+				b[off + count++] = c;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() >= 0)
+			skipped++;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (limit - position) + (ESCAPE.length - escapePosition);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+}
@@ -18,6 +18,7 @@ package com.amazon.s3.model.transform;
 
 import java.io.InputStream;
 import java.util.List;
+import java.util.Set;
 
 import com.amazon.s3.model.AccessControlList;
 import com.amazon.s3.model.Bucket;
@@ -28,12 +29,15 @@ import com.amazon.s3.model.BucketNotificationConfiguration;
 import com.amazon.s3.model.BucketTaggingConfiguration;
 import com.amazon.s3.model.BucketVersioningConfiguration;
 import com.amazon.s3.model.BucketWebsiteConfiguration;
+import com.amazon.s3.model.CompactObjectListing;
 import com.amazon.s3.model.DeleteObjectsResponse;
 import com.amazon.s3.model.InitiateMultipartUploadResult;
+import com.amazon.s3.model.ListingVisitor;
 import com.amazon.s3.model.MultipartUploadListing;
 import com.amazon.s3.model.ObjectListing;
 import com.amazon.s3.model.Owner;
 import com.amazon.s3.model.PartListing;
+import com.amazon.s3.model.SummaryField;
 import com.amazon.s3.model.VersionListing;
 import com.amazon.s3.model.transform.XmlResponsesSaxParser.CompleteMultipartUploadHandler;
 import com.amazon.s3.model.transform.XmlResponsesSaxParser.CopyObjectResultHandler;
@@ -73,9 +77,24 @@ public class Unmarshallers {
      */
     public static final class ListObjectsUnmarshaller implements
             Unmarshaller<ObjectListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+
+        public ListObjectsUnmarshaller() {
+            this(null);
+        }
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         */
+        public ListObjectsUnmarshaller(Set<SummaryField> summaryFields) {
+            this.summaryFields = summaryFields;
+        }
+
         public ObjectListing unmarshall(InputStream in) throws Exception {
             return new XmlResponsesSaxParser()
-                    .parseListBucketObjectsResponse(in).getObjectListing();
+                    .parseListBucketObjectsResponse(in, summaryFields)
+                    .getObjectListing();
         }
     }
 
@@ -84,9 +103,23 @@ public class Unmarshallers {
      */
     public static final class VersionListUnmarshaller implements
             Unmarshaller<VersionListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+
+        public VersionListUnmarshaller() {
+            this(null);
+        }
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         */
+        public VersionListUnmarshaller(Set<SummaryField> summaryFields) {
+            this.summaryFields = summaryFields;
+        }
+
         public VersionListing unmarshall(InputStream in) throws Exception {
             return new XmlResponsesSaxParser()
-                    .parseListVersionsResponse(in).getListing();
+                    .parseListVersionsResponse(in, summaryFields).getListing();
         }
     }
 
@@ -227,6 +260,161 @@ public class Unmarshallers {
         }
     }
     
+    /**
+     * Unmarshaller for the ListObjects XML response, using a pull parser.
+     */
+    public static final class PullListObjectsUnmarshaller implements
+            Unmarshaller<ObjectListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+
+        public PullListObjectsUnmarshaller() {
+            this(null);
+        }
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         */
+        public PullListObjectsUnmarshaller(Set<SummaryField> summaryFields) {
+            this.summaryFields = summaryFields;
+        }
+
+        public ObjectListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser()
+                    .parseListBucketObjectsResponse(in, summaryFields);
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListObjects XML response, using a pull parser, that
+     * adds the listed objects to a compact listing instead of the listing it
+     * returns.
+     */
+    public static final class CompactListObjectsUnmarshaller implements
+            Unmarshaller<ObjectListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+        private final CompactObjectListing compactListing;
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         * @param compactListing
+         *            The compact listing to add the listed objects to.
+         */
+        public CompactListObjectsUnmarshaller(Set<SummaryField> summaryFields,
+                CompactObjectListing compactListing) {
+            this.summaryFields = summaryFields;
+            this.compactListing = compactListing;
+        }
+
+        public ObjectListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser().parseListBucketObjectsResponse(
+                    in, summaryFields, compactListing);
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListObjects XML response that passes the listed
+     * objects and common prefixes to a visitor as they're parsed.
+     */
+    public static final class VisitingListObjectsUnmarshaller implements
+            Unmarshaller<ObjectListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+        private final ListingVisitor visitor;
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         * @param visitor
+         *            The visitor to pass the objects and common prefixes to.
+         */
+        public VisitingListObjectsUnmarshaller(Set<SummaryField> summaryFields,
+                ListingVisitor visitor) {
+            this.summaryFields = summaryFields;
+            this.visitor = visitor;
+        }
+
+        public ObjectListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesSaxParser().parseListBucketObjectsResponse(
+                    in, summaryFields, visitor).getObjectListing();
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListObjects XML response, using a pull parser,
+     * that passes the listed objects and common prefixes to a visitor as
+     * they're parsed.
+     */
+    public static final class PullVisitingListObjectsUnmarshaller implements
+            Unmarshaller<ObjectListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+        private final ListingVisitor visitor;
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         * @param visitor
+         *            The visitor to pass the objects and common prefixes to.
+         */
+        public PullVisitingListObjectsUnmarshaller(
+                Set<SummaryField> summaryFields, ListingVisitor visitor) {
+            this.summaryFields = summaryFields;
+            this.visitor = visitor;
+        }
+
+        public ObjectListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser().parseListBucketObjectsResponse(
+                    in, summaryFields, visitor);
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListVersions XML response, using a pull parser.
+     */
+    public static final class PullVersionListUnmarshaller implements
+            Unmarshaller<VersionListing, InputStream> {
+        private final Set<SummaryField> summaryFields;
+
+        public PullVersionListUnmarshaller() {
+            this(null);
+        }
+
+        /**
+         * @param summaryFields
+         *            The summary fields to read, or null for all of them.
+         */
+        public PullVersionListUnmarshaller(Set<SummaryField> summaryFields) {
+            this.summaryFields = summaryFields;
+        }
+
+        public VersionListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser().parseListVersionsResponse(in,
+                    summaryFields);
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListMultipartUploads XML response, using a pull
+     * parser.
+     */
+    public static final class PullListMultipartUploadsResultUnmarshaller implements
+            Unmarshaller<MultipartUploadListing, InputStream> {
+        public MultipartUploadListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser()
+                    .parseListMultipartUploadsResponse(in);
+        }
+    }
+
+    /**
+     * Unmarshaller for the ListParts XML response, using a pull parser.
+     */
+    public static final class PullListPartsResultUnmarshaller implements
+            Unmarshaller<PartListing, InputStream> {
+        public PartListing unmarshall(InputStream in) throws Exception {
+            return new XmlResponsesPullParser().parseListPartsResponse(in);
+        }
+    }
+
     public static final class DeleteObjectsResultUnmarshaller implements
             Unmarshaller<DeleteObjectsResponse, InputStream> {
 
@@ -0,0 +1,1311 @@
+package com.amazon.s3.model.transform;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import android.util.Log;
+import android.util.Xml;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.internal.ServiceUtils;
+import com.amazon.s3.model.CompactObjectListing;
+import com.amazon.s3.model.ListingVisitor;
+import com.amazon.s3.model.MultipartUpload;
+import com.amazon.s3.model.MultipartUploadListing;
+import com.amazon.s3.model.ObjectListing;
+import com.amazon.s3.model.Owner;
+import com.amazon.s3.model.PartListing;
+import com.amazon.s3.model.PartSummary;
+import com.amazon.s3.model.S3ObjectSummary;
+import com.amazon.s3.model.S3VersionSummary;
+import com.amazon.s3.model.SummaryField;
+import com.amazon.s3.model.VersionListing;
+import com.amazon.s3.util.DateUtils;
+
+/**
+ * XML pull parser for the listing documents returned by S3, producing the
+ * same objects as the listing handlers of {@link XmlResponsesSaxParser} with
+ * less work per element.
+ * <p>
+ * Element names are looked up once in a table of known names and then
+ * handled by number instead of being compared against each name in turn.
+ * Element text is collected into a reused character buffer, and numbers,
+ * flags and dates are read straight from it, so only the values that end up
+ * in the listing become strings. Dates in the usual S3 formats are parsed
+ * without going through the shared, synchronized date formats. When only
+ * some summary fields are requested, the text of the others isn't collected
+ * at all.
+ * <p>
+ * A parser can be used for several documents, one at a time.
+ */
+public class XmlResponsesPullParser {
+	private static final String TAG = "###XmlResponsesPullParser###";
+
+	// Known element names, used in place of the names themselves
+	private static final int UNKNOWN = 0;
+	private static final int BUCKET = 1;
+	private static final int COMMON_PREFIXES = 2;
+	private static final int CONTENTS = 3;
+	private static final int DELETE_MARKER = 4;
+	private static final int DELIMITER = 5;
+	private static final int DISPLAY_NAME = 6;
+	private static final int ETAG = 7;
+	private static final int ID = 8;
+	private static final int INITIATED = 9;
+	private static final int INITIATOR = 10;
+	private static final int IS_LATEST = 11;
+	private static final int IS_TRUNCATED = 12;
+	private static final int KEY = 13;
+	private static final int KEY_MARKER = 14;
+	private static final int LAST_MODIFIED = 15;
+	private static final int LIST_MULTIPART_UPLOADS_RESULT = 16;
+	private static final int LIST_PARTS_RESULT = 17;
+	private static final int LIST_VERSIONS_RESULT = 18;
+	private static final int MARKER = 19;
+	private static final int MAX_KEYS = 20;
+	private static final int MAX_PARTS = 21;
+	private static final int MAX_UPLOADS = 22;
+	private static final int NAME = 23;
+	private static final int NEXT_KEY_MARKER = 24;
+	private static final int NEXT_MARKER = 25;
+	private static final int NEXT_PART_NUMBER_MARKER = 26;
+	private static final int NEXT_UPLOAD_ID_MARKER = 27;
+	private static final int NEXT_VERSION_ID_MARKER = 28;
+	private static final int OWNER = 29;
+	private static final int PART = 30;
+	private static final int PART_NUMBER = 31;
+	private static final int PART_NUMBER_MARKER = 32;
+	private static final int PREFIX = 33;
+	private static final int SIZE = 34;
+	private static final int STORAGE_CLASS = 35;
+	private static final int UPLOAD = 36;
+	private static final int UPLOAD_ID = 37;
+	private static final int UPLOAD_ID_MARKER = 38;
+	private static final int VERSION = 39;
+	private static final int VERSION_ID = 40;
+	private static final int VERSION_ID_MARKER = 41;
+
+	private static final Map<String, Integer> ELEMENTS = new HashMap<String, Integer>();
+
+	static {
+		ELEMENTS.put("Bucket", BUCKET);
+		ELEMENTS.put("CommonPrefixes", COMMON_PREFIXES);
+		ELEMENTS.put("Contents", CONTENTS);
+		ELEMENTS.put("DeleteMarker", DELETE_MARKER);
+		ELEMENTS.put("Delimiter", DELIMITER);
+		ELEMENTS.put("DisplayName", DISPLAY_NAME);
+		ELEMENTS.put("ETag", ETAG);
+		ELEMENTS.put("ID", ID);
+		ELEMENTS.put("Initiated", INITIATED);
+		ELEMENTS.put("Initiator", INITIATOR);
+		ELEMENTS.put("IsLatest", IS_LATEST);
+		ELEMENTS.put("IsTruncated", IS_TRUNCATED);
+		ELEMENTS.put("Key", KEY);
+		ELEMENTS.put("KeyMarker", KEY_MARKER);
+		ELEMENTS.put("LastModified", LAST_MODIFIED);
+		ELEMENTS.put("ListMultipartUploadsResult", LIST_MULTIPART_UPLOADS_RESULT);
+		ELEMENTS.put("ListPartsResult", LIST_PARTS_RESULT);
+		ELEMENTS.put("ListVersionsResult", LIST_VERSIONS_RESULT);
+		ELEMENTS.put("Marker", MARKER);
+		ELEMENTS.put("MaxKeys", MAX_KEYS);
+		ELEMENTS.put("MaxParts", MAX_PARTS);
+		ELEMENTS.put("MaxUploads", MAX_UPLOADS);
+		ELEMENTS.put("Name", NAME);
+		ELEMENTS.put("NextKeyMarker", NEXT_KEY_MARKER);
+		ELEMENTS.put("NextMarker", NEXT_MARKER);
+		ELEMENTS.put("NextPartNumberMarker", NEXT_PART_NUMBER_MARKER);
+		ELEMENTS.put("NextUploadIdMarker", NEXT_UPLOAD_ID_MARKER);
+		ELEMENTS.put("NextVersionIdMarker", NEXT_VERSION_ID_MARKER);
+		ELEMENTS.put("Owner", OWNER);
+		ELEMENTS.put("Part", PART);
+		ELEMENTS.put("PartNumber", PART_NUMBER);
+		ELEMENTS.put("PartNumberMarker", PART_NUMBER_MARKER);
+		ELEMENTS.put("Prefix", PREFIX);
+		ELEMENTS.put("Size", SIZE);
+		ELEMENTS.put("StorageClass", STORAGE_CLASS);
+		ELEMENTS.put("Upload", UPLOAD);
+		ELEMENTS.put("UploadId", UPLOAD_ID);
+		ELEMENTS.put("UploadIdMarker", UPLOAD_ID_MARKER);
+		ELEMENTS.put("Version", VERSION);
+		ELEMENTS.put("VersionId", VERSION_ID);
+		ELEMENTS.put("VersionIdMarker", VERSION_ID_MARKER);
+	}
+
+	private final XmlPullParser parser;
+
+	/** The text of the current element */
+	private char[] text = new char[256];
+	private int textLength = 0;
+	private final int[] textBounds = new int[2];
+
+	/** The elements enclosing the current position */
+	private int[] elements = new int[16];
+	private int depth = 0;
+
+	/**
+	 * Constructs the XML pull parser.
+	 * 
+	 * @throws AmazonClientException
+	 */
+	public XmlResponsesPullParser() throws AmazonClientException {
+		try {
+			parser = Xml.newPullParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+		} catch (Exception e) {
+			throw new AmazonClientException(
+					"Couldn't initialize an XML pull parser", e);
+		}
+	}
+
+	/**
+	 * Parses a ListBucket response XML document from an input stream.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @return the object listing parsed from the XML stream.
+	 * @throws AmazonClientException
+	 */
+	public ObjectListing parseListBucketObjectsResponse(InputStream inputStream)
+			throws AmazonClientException {
+		return parseListBucketObjectsResponse(inputStream, null);
+	}
+
+	/**
+	 * Parses a ListBucket response XML document from an input stream, reading
+	 * only the specified summary fields.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @return the object listing parsed from the XML stream.
+	 * @throws AmazonClientException
+	 */
+	public ObjectListing parseListBucketObjectsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields)
+			throws AmazonClientException {
+		ListBucketReader reader = new ListBucketReader(summaryFields, null);
+		parse(reader, inputStream, true);
+		return reader.getObjectListing();
+	}
+
+	/**
+	 * Parses a ListBucket response XML document from an input stream, passing
+	 * each object and common prefix to a visitor as it's parsed instead of
+	 * collecting them.
+	 * <p>
+	 * If the visitor stops the listing, the rest of the document isn't parsed
+	 * and the listing is marked as truncated, with the last object key or
+	 * common prefix visited as its next marker.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @param visitor
+	 *            the visitor to pass the objects and common prefixes to.
+	 * @return the details of the listing parsed from the XML stream, without
+	 *         any objects or common prefixes.
+	 * @throws AmazonClientException
+	 */
+	public ObjectListing parseListBucketObjectsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields,
+			ListingVisitor visitor) throws AmazonClientException {
+		ListBucketReader reader = new ListBucketReader(summaryFields, visitor);
+		parse(reader, inputStream, true);
+		return reader.getObjectListing();
+	}
+
+	/**
+	 * Parses a ListBucket response XML document from an input stream, adding
+	 * the objects to a compact listing instead of the listing returned.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them. ETags
+	 *            are never read.
+	 * @param compactListing
+	 *            the compact listing to add the objects to.
+	 * @return the details and common prefixes of the listing parsed from the
+	 *         XML stream, without any object summaries.
+	 * @throws AmazonClientException
+	 */
+	public ObjectListing parseListBucketObjectsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields,
+			CompactObjectListing compactListing) throws AmazonClientException {
+		CompactListBucketReader reader = new CompactListBucketReader(
+				summaryFields, compactListing);
+		parse(reader, inputStream, true);
+		return reader.getObjectListing();
+	}
+
+	/**
+	 * Parses a ListVersions response XML document from an input stream.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @return the version listing parsed from the XML stream.
+	 * @throws AmazonClientException
+	 */
+	public VersionListing parseListVersionsResponse(InputStream inputStream)
+			throws AmazonClientException {
+		return parseListVersionsResponse(inputStream, null);
+	}
+
+	/**
+	 * Parses a ListVersions response XML document from an input stream,
+	 * reading only the specified summary fields.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @return the version listing parsed from the XML stream.
+	 * @throws AmazonClientException
+	 */
+	public VersionListing parseListVersionsResponse(InputStream inputStream,
+			Set<SummaryField> summaryFields) throws AmazonClientException {
+		ListVersionsReader reader = new ListVersionsReader(summaryFields);
+		parse(reader, inputStream, true);
+		return reader.getListing();
+	}
+
+	/**
+	 * Parses a ListMultipartUploads response XML document from an input
+	 * stream.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @return the multipart upload listing parsed from the XML stream, or
+	 *         null if the document isn't a ListMultipartUploadsResult.
+	 * @throws AmazonClientException
+	 */
+	public MultipartUploadListing parseListMultipartUploadsResponse(
+			InputStream inputStream) throws AmazonClientException {
+		ListMultipartUploadsReader reader = new ListMultipartUploadsReader();
+		parse(reader, inputStream, false);
+		return reader.getListMultipartUploadsResult();
+	}
+
+	/**
+	 * Parses a ListParts response XML document from an input stream.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @return the part listing parsed from the XML stream, or null if the
+	 *         document isn't a ListPartsResult.
+	 * @throws AmazonClientException
+	 */
+	public PartListing parseListPartsResponse(InputStream inputStream)
+			throws AmazonClientException {
+		ListPartsReader reader = new ListPartsReader();
+		parse(reader, inputStream, false);
+		return reader.getListPartsResult();
+	}
+
+	/**
+	 * Reads an XML document from an input stream, passing its elements to a
+	 * reader.
+	 * 
+	 * @param reader
+	 *            the reader for the XML document
+	 * @param inputStream
+	 *            an input stream containing the XML document to parse
+	 * @param escapeCarriageReturns
+	 *            whether to keep carriage returns in element text, as
+	 *            {@link XmlResponsesSaxParser} does for the listings it
+	 *            sanitizes, instead of letting the parser normalize them
+	 * 
+	 * @throws AmazonClientException
+	 *             any parsing, IO or other exceptions are wrapped in an
+	 *             AmazonClientException.
+	 */
+	private void parse(ElementReader reader, InputStream inputStream,
+			boolean escapeCarriageReturns) throws AmazonClientException {
+		try {
+			InputStream in = escapeCarriageReturns ? new CarriageReturnEscapingInputStream(
+					inputStream) : inputStream;
+			parser.setInput(in, Constants.DEFAULT_ENCODING);
+			depth = 0;
+			textLength = 0;
+
+			boolean readingText = true;
+			int event = parser.getEventType();
+			while (event != XmlPullParser.END_DOCUMENT) {
+				if (event == XmlPullParser.START_TAG) {
+					Integer known = ELEMENTS.get(parser.getName());
+					int element = known == null ? UNKNOWN : known.intValue();
+					pushElement(element);
+					textLength = 0;
+					readingText = reader.startElement(element);
+				} else if (event == XmlPullParser.TEXT) {
+					if (readingText)
+						appendText();
+				} else if (event == XmlPullParser.END_TAG) {
+					reader.endElement(popElement());
+					textLength = 0;
+					readingText = true;
+				}
+				event = parser.next();
+			}
+		} catch (ListingStoppedException e) {
+			// The listing visitor doesn't want the rest of the document.
+			Log.d(TAG, "Listing stopped by visitor");
+		} catch (Throwable t) {
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				Log.e(TAG,
+						"Unable to close response InputStream up after XML parse failure",
+						e);
+			}
+			throw new AmazonClientException(
+					"Failed to parse XML document with reader "
+							+ reader.getClass(), t);
+		}
+	}
+
+	private void pushElement(int element) {
+		if (depth == elements.length) {
+			int[] grown = new int[depth * 2];
+			System.arraycopy(elements, 0, grown, 0, depth);
+			elements = grown;
+		}
+		elements[depth++] = element;
+	}
+
+	private int popElement() {
+		return depth > 0 ? elements[--depth] : UNKNOWN;
+	}
+
+	private void appendText() {
+		char[] chars = parser.getTextCharacters(textBounds);
+		int length = textBounds[1];
+		if (chars == null || length <= 0)
+			return;
+
+		if (textLength + length > text.length) {
+			char[] grown = new char[Math.max(text.length * 2, textLength
+					+ length)];
+			System.arraycopy(text, 0, grown, 0, textLength);
+			text = grown;
+		}
+		System.arraycopy(chars, textBounds[0], text, textLength, length);
+		textLength += length;
+	}
+
+	// ////////////////
+	// Element text //
+	// ////////////////
+
+	/** Returns the text of the element that just ended. */
+	private String text() {
+		return new String(text, 0, textLength);
+	}
+
+	/** Returns the text of the element that just ended, or null if empty. */
+	private String textOrNull() {
+		return textLength == 0 ? null : text();
+	}
+
+	/** Returns whether the text of the element that just ended is the string given. */
+	private boolean textEquals(String s) {
+		if (s.length() != textLength)
+			return false;
+		for (int i = 0; i < textLength; i++) {
+			if (text[i] != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the text of the element that just ended as a long, parsing
+	 * plain digits directly and anything else with {@link Long#parseLong}.
+	 */
+	private long textAsLong() {
+		if (textLength == 0 || textLength > 18)
+			return Long.parseLong(text());
+
+		long value = 0;
+		for (int i = 0; i < textLength; i++) {
+			char c = text[i];
+			if (c < '0' || c > '9')
+				return Long.parseLong(text());
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the text of the element that just ended as an int, parsing
+	 * plain digits directly and anything else with {@link Integer#parseInt}.
+	 */
+	private int textAsInt() {
+		if (textLength == 0 || textLength > 9)
+			return Integer.parseInt(text());
+
+		int value = 0;
+		for (int i = 0; i < textLength; i++) {
+			char c = text[i];
+			if (c < '0' || c > '9')
+				return Integer.parseInt(text());
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the text of the element that just ended as an Integer, or null
+	 * if it's empty.
+	 */
+	private Integer textAsInteger() {
+		return textLength == 0 ? null : Integer.valueOf(textAsInt());
+	}
+
+	/**
+	 * Returns the text of the element that just ended without surrounding
+	 * whitespace and quotes, as {@link ServiceUtils#removeQuotes(String)}
+	 * does.
+	 */
+	private String textWithoutQuotes() {
+		int start = 0;
+		int end = textLength;
+		while (start < end && text[start] <= ' ')
+			start++;
+		while (end > start && text[end - 1] <= ' ')
+			end--;
+		if (start < end && text[start] == '"')
+			start++;
+		if (end > start && text[end - 1] == '"')
+			end--;
+		return new String(text, start, end - start);
+	}
+
+	/**
+	 * Returns the text of the element that just ended as an ISO 8601 date.
+	 */
+	private Date textAsDate() throws ParseException {
+		long time = DateUtils.parseIso8601Time(text, 0, textLength);
+		if (time != Long.MIN_VALUE)
+			return new Date(time);
+		return ServiceUtils.parseIso8601Date(text());
+	}
+
+	/**
+	 * Thrown by a listing reader to stop parsing when its visitor stops the
+	 * listing.
+	 */
+	private static class ListingStoppedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	// ///////////
+	// Readers //
+	// ///////////
+
+	/**
+	 * Receives the elements of a document as it's parsed. The text of an
+	 * element is available through the text methods of the enclosing parser
+	 * when the element ends, unless the reader skipped it when the element
+	 * started.
+	 */
+	private abstract class ElementReader {
+		/**
+		 * Handles the start of an element, returning whether its text should
+		 * be collected.
+		 */
+		abstract boolean startElement(int element);
+
+		abstract void endElement(int element) throws Exception;
+	}
+
+	/**
+	 * Reader for ListBucket response XML documents, equivalent to
+	 * {@link XmlResponsesSaxParser.ListBucketHandler}.
+	 */
+	private class ListBucketReader extends ElementReader {
+		private S3ObjectSummary currentObject = null;
+		private Owner currentOwner = null;
+		boolean insideCommonPrefixes = false;
+
+		private ObjectListing objectListing = new ObjectListing();
+		List<String> commonPrefixes = new ArrayList<String>();
+
+		/** The key of the last object in the listing */
+		String lastKey = null;
+		private String lastCommonPrefix = null;
+
+		// Listing properties.
+		String bucketName = null;
+		private String requestPrefix = null;
+		private String requestMarker = null;
+		private int requestMaxKeys = 0;
+		private String requestDelimiter = null;
+		private boolean listingTruncated = false;
+		private String nextMarker = null;
+
+		/** The summary fields read, or null for all of them */
+		private final Set<SummaryField> summaryFields;
+
+		/**
+		 * The visitor passed the objects and common prefixes instead of
+		 * collecting them, or null
+		 */
+		private final ListingVisitor visitor;
+
+		/** The last object key or common prefix visited, if the visitor stopped */
+		private String stoppedAt = null;
+
+		ListBucketReader(Set<SummaryField> summaryFields,
+				ListingVisitor visitor) {
+			this.summaryFields = summaryFields;
+			this.visitor = visitor;
+		}
+
+		/**
+		 * Records where the visitor stopped the listing and stops parsing.
+		 */
+		private void stop(String lastVisited) {
+			stoppedAt = lastVisited;
+			throw new ListingStoppedException();
+		}
+
+		boolean isRead(SummaryField field) {
+			return summaryFields == null || summaryFields.contains(field);
+		}
+
+		ObjectListing getObjectListing() {
+			objectListing.setBucketName(bucketName);
+			objectListing.setCommonPrefixes(commonPrefixes);
+			objectListing.setDelimiter(requestDelimiter);
+			objectListing.setMarker(requestMarker);
+			objectListing.setMaxKeys(requestMaxKeys);
+			objectListing.setPrefix(requestPrefix);
+			objectListing.setTruncated(listingTruncated);
+
+			/*
+			 * S3 only includes the NextMarker XML element if the request
+			 * specified a delimiter, but for consistency we'd like to always
+			 * give easy access to the next marker if we're returning a list of
+			 * results that's truncated.
+			 */
+			if (stoppedAt != null) {
+				objectListing.setTruncated(true);
+				objectListing.setNextMarker(stoppedAt);
+			} else if (nextMarker != null) {
+				objectListing.setNextMarker(nextMarker);
+			} else if (listingTruncated) {
+				String nextMarker = null;
+				if (lastKey != null) {
+					nextMarker = lastKey;
+				} else if (lastCommonPrefix != null) {
+					nextMarker = lastCommonPrefix;
+				} else {
+					Log.e(TAG,
+							"S3 response indicates truncated results, but contains no object summaries or common prefixes.");
+				}
+
+				objectListing.setNextMarker(nextMarker);
+			}
+
+			return objectListing;
+		}
+
+		@Override
+		boolean startElement(int element) {
+			switch (element) {
+			case CONTENTS:
+				currentObject = new S3ObjectSummary();
+				currentObject.setBucketName(bucketName);
+				if (!isRead(SummaryField.Size))
+					currentObject.setSize(-1);
+				currentOwner = null;
+				break;
+			case OWNER:
+				if (isRead(SummaryField.Owner)) {
+					currentOwner = new Owner();
+					currentObject.setOwner(currentOwner);
+				}
+				break;
+			case COMMON_PREFIXES:
+				insideCommonPrefixes = true;
+				break;
+			case LAST_MODIFIED:
+				return isRead(SummaryField.LastModified);
+			case ETAG:
+				return isRead(SummaryField.ETag);
+			case SIZE:
+				return isRead(SummaryField.Size);
+			case STORAGE_CLASS:
+				return isRead(SummaryField.StorageClass);
+			case ID:
+			case DISPLAY_NAME:
+				return isRead(SummaryField.Owner);
+			}
+			return true;
+		}
+
+		@Override
+		void endElement(int element) {
+			switch (element) {
+			// Listing details
+			case NAME:
+				bucketName = text();
+				Log.d(TAG, "Examining listing for bucket: " + bucketName);
+				break;
+			case PREFIX:
+				if (insideCommonPrefixes) {
+					lastCommonPrefix = text();
+					if (visitor == null) {
+						commonPrefixes.add(lastCommonPrefix);
+					} else if (!visitor.visitCommonPrefix(lastCommonPrefix)) {
+						stop(lastCommonPrefix);
+					}
+				} else {
+					requestPrefix = textOrNull();
+				}
+				break;
+			case MARKER:
+				requestMarker = textOrNull();
+				break;
+			case NEXT_MARKER:
+				nextMarker = text();
+				break;
+			case MAX_KEYS:
+				try {
+					requestMaxKeys = textAsInt();
+				} catch (NumberFormatException nfe) {
+					Log.e(TAG, "Unable to parse integer value '" + text()
+							+ "'", nfe);
+					requestMaxKeys = -1;
+				}
+				break;
+			case DELIMITER:
+				requestDelimiter = textOrNull();
+				break;
+			case IS_TRUNCATED:
+				String isTruncatedStr = text().toLowerCase(Locale.getDefault());
+				if (isTruncatedStr.startsWith("false")) {
+					listingTruncated = false;
+				} else if (isTruncatedStr.startsWith("true")) {
+					listingTruncated = true;
+				} else {
+					throw new RuntimeException(
+							"Invalid value for IsTruncated field: "
+									+ isTruncatedStr);
+				}
+				break;
+
+			// Object details.
+			case CONTENTS:
+				if (visitor == null) {
+					objectListing.getObjectSummaries().add(currentObject);
+				} else if (!visitor.visitObject(currentObject)) {
+					stop(currentObject.getKey());
+				}
+				break;
+			case KEY:
+				lastKey = text();
+				currentObject.setKey(lastKey);
+				break;
+			case LAST_MODIFIED:
+				if (isRead(SummaryField.LastModified)) {
+					try {
+						currentObject.setLastModified(textAsDate());
+					} catch (ParseException e) {
+						throw new RuntimeException(
+								"Non-ISO8601 date for LastModified in bucket's object listing output: "
+										+ text(), e);
+					}
+				}
+				break;
+			case ETAG:
+				if (isRead(SummaryField.ETag))
+					currentObject.setETag(textWithoutQuotes());
+				break;
+			case SIZE:
+				if (isRead(SummaryField.Size)) {
+					try {
+						currentObject.setSize(textAsLong());
+					} catch (NumberFormatException nfe) {
+						Log.e(TAG, "Unable to parse long value '" + text()
+								+ "'", nfe);
+						currentObject.setSize(-1);
+					}
+				}
+				break;
+			case STORAGE_CLASS:
+				if (isRead(SummaryField.StorageClass))
+					currentObject.setStorageClass(text());
+				break;
+
+			// Owner details.
+			case ID:
+				if (isRead(SummaryField.Owner)) {
+					if (currentOwner == null) {
+						currentOwner = new Owner();
+						currentObject.setOwner(currentOwner);
+					}
+					currentOwner.setId(text());
+				}
+				break;
+			case DISPLAY_NAME:
+				if (isRead(SummaryField.Owner))
+					currentOwner.setDisplayName(text());
+				break;
+
+			// Common prefixes.
+			case COMMON_PREFIXES:
+				insideCommonPrefixes = false;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reader for ListBucket response XML documents that adds the objects to a
+	 * {@link CompactObjectListing} instead of creating summaries for them.
+	 * The listing it returns has the page's details and common prefixes but
+	 * no summaries. ETags are skipped.
+	 */
+	private class CompactListBucketReader extends ListBucketReader {
+		private final CompactObjectListing compactListing;
+		private final int firstIndex;
+
+		// The object being read. Its key is kept as characters until it's
+		// added.
+		private char[] key = new char[256];
+		private int keyLength = 0;
+		private long size = 0;
+		private long lastModified = -1;
+		private String storageClass = null;
+		private String ownerId = null;
+		private String ownerDisplayName = null;
+		private boolean insideContents = false;
+
+		// The last strings read, which are reused while objects repeat them.
+		private String lastStorageClass = null;
+		private String lastOwnerId = null;
+		private String lastOwnerDisplayName = null;
+
+		CompactListBucketReader(Set<SummaryField> summaryFields,
+				CompactObjectListing compactListing) {
+			super(summaryFields, null);
+			this.compactListing = compactListing;
+			this.firstIndex = compactListing.size();
+		}
+
+		@Override
+		ObjectListing getObjectListing() {
+			if (compactListing.size() > firstIndex) {
+				lastKey = compactListing.getKey(compactListing.size() - 1);
+			}
+			compactListing.setBucketName(bucketName);
+			compactListing.getCommonPrefixes().addAll(commonPrefixes);
+			return super.getObjectListing();
+		}
+
+		@Override
+		boolean startElement(int element) {
+			switch (element) {
+			case CONTENTS:
+				insideContents = true;
+				keyLength = 0;
+				size = isRead(SummaryField.Size) ? 0 : -1;
+				lastModified = -1;
+				storageClass = null;
+				ownerId = null;
+				ownerDisplayName = null;
+				return true;
+			case OWNER:
+				if (insideContents)
+					return true;
+				break;
+			case ETAG:
+				if (insideContents)
+					return false;
+				break;
+			}
+			return super.startElement(element);
+		}
+
+		@Override
+		void endElement(int element) {
+			if (!insideContents) {
+				super.endElement(element);
+				return;
+			}
+
+			switch (element) {
+			case CONTENTS:
+				compactListing.add(key, 0, keyLength, size, lastModified,
+						storageClass, ownerId, ownerDisplayName);
+				insideContents = false;
+				break;
+			case KEY:
+				if (textLength > key.length)
+					key = new char[Math.max(textLength, key.length * 2)];
+				System.arraycopy(text, 0, key, 0, textLength);
+				keyLength = textLength;
+				break;
+			case LAST_MODIFIED:
+				if (isRead(SummaryField.LastModified)) {
+					lastModified = DateUtils.parseIso8601Time(text, 0,
+							textLength);
+					if (lastModified == Long.MIN_VALUE) {
+						try {
+							lastModified = textAsDate().getTime();
+						} catch (ParseException e) {
+							throw new RuntimeException(
+									"Non-ISO8601 date for LastModified in bucket's object listing output: "
+											+ text(), e);
+						}
+					}
+				}
+				break;
+			case SIZE:
+				if (isRead(SummaryField.Size)) {
+					try {
+						size = textAsLong();
+					} catch (NumberFormatException nfe) {
+						Log.e(TAG, "Unable to parse long value '" + text()
+								+ "'", nfe);
+						size = -1;
+					}
+				}
+				break;
+			case STORAGE_CLASS:
+				if (isRead(SummaryField.StorageClass)) {
+					lastStorageClass = reuseText(lastStorageClass);
+					storageClass = lastStorageClass;
+				}
+				break;
+			case ID:
+				if (isRead(SummaryField.Owner)) {
+					lastOwnerId = reuseText(lastOwnerId);
+					ownerId = lastOwnerId;
+				}
+				break;
+			case DISPLAY_NAME:
+				if (isRead(SummaryField.Owner)) {
+					lastOwnerDisplayName = reuseText(lastOwnerDisplayName);
+					ownerDisplayName = lastOwnerDisplayName;
+				}
+				break;
+			}
+		}
+
+		/**
+		 * Returns the string given if it's the text of the element that just
+		 * ended, or else a new string of the text.
+		 */
+		private String reuseText(String previous) {
+			return previous != null && textEquals(previous) ? previous
+					: text();
+		}
+	}
+
+	/**
+	 * Reader for ListVersions response XML documents, equivalent to
+	 * {@link XmlResponsesSaxParser.ListVersionsHandler}.
+	 */
+	private class ListVersionsReader extends ElementReader {
+		private VersionListing versionListing = new VersionListing();
+		private List<S3VersionSummary> versionSummaries = new ArrayList<S3VersionSummary>();
+		private S3VersionSummary currentVersionSummary;
+		private Owner owner;
+		private boolean insideCommonPrefixes = false;
+
+		/** The summary fields read, or null for all of them */
+		private final Set<SummaryField> summaryFields;
+
+		ListVersionsReader(Set<SummaryField> summaryFields) {
+			this.summaryFields = summaryFields;
+		}
+
+		private boolean isRead(SummaryField field) {
+			return summaryFields == null || summaryFields.contains(field);
+		}
+
+		VersionListing getListing() {
+			return versionListing;
+		}
+
+		@Override
+		boolean startElement(int element) {
+			switch (element) {
+			case COMMON_PREFIXES:
+				insideCommonPrefixes = true;
+				break;
+			case VERSION:
+				currentVersionSummary = new S3VersionSummary();
+				currentVersionSummary.setBucketName(versionListing
+						.getBucketName());
+				if (!isRead(SummaryField.Size))
+					currentVersionSummary.setSize(-1);
+				break;
+			case DELETE_MARKER:
+				currentVersionSummary = new S3VersionSummary();
+				currentVersionSummary.setBucketName(versionListing
+						.getBucketName());
+				if (!isRead(SummaryField.Size))
+					currentVersionSummary.setSize(-1);
+				currentVersionSummary.setIsDeleteMarker(true);
+				break;
+			case OWNER:
+				if (isRead(SummaryField.Owner))
+					owner = new Owner();
+				break;
+			case VERSION_ID:
+				return isRead(SummaryField.VersionId);
+			case IS_LATEST:
+				return isRead(SummaryField.IsLatest);
+			case LAST_MODIFIED:
+				return isRead(SummaryField.LastModified);
+			case ETAG:
+				return isRead(SummaryField.ETag);
+			case SIZE:
+				return isRead(SummaryField.Size);
+			case STORAGE_CLASS:
+				return isRead(SummaryField.StorageClass);
+			case ID:
+			case DISPLAY_NAME:
+				return isRead(SummaryField.Owner);
+			}
+			return true;
+		}
+
+		@Override
+		void endElement(int element) throws ParseException {
+			switch (element) {
+			case LIST_VERSIONS_RESULT:
+				versionListing.setVersionSummaries(versionSummaries);
+				break;
+			case NAME:
+				versionListing.setBucketName(text());
+				break;
+			case PREFIX:
+				if (insideCommonPrefixes) {
+					versionListing.getCommonPrefixes().add(textOrNull());
+				} else {
+					versionListing.setPrefix(textOrNull());
+				}
+				break;
+			case COMMON_PREFIXES:
+				insideCommonPrefixes = false;
+				break;
+			case KEY_MARKER:
+				versionListing.setKeyMarker(textOrNull());
+				break;
+			case VERSION_ID_MARKER:
+				versionListing.setVersionIdMarker(textOrNull());
+				break;
+			case MAX_KEYS:
+				versionListing.setMaxKeys(textAsInt());
+				break;
+			case DELIMITER:
+				versionListing.setDelimiter(textOrNull());
+				break;
+			case NEXT_KEY_MARKER:
+				versionListing.setNextKeyMarker(text());
+				break;
+			case NEXT_VERSION_ID_MARKER:
+				versionListing.setNextVersionIdMarker(text());
+				break;
+			case IS_TRUNCATED:
+				versionListing.setTruncated(textEquals("true"));
+				break;
+			case VERSION:
+			case DELETE_MARKER:
+				versionSummaries.add(currentVersionSummary);
+				currentVersionSummary = null;
+				break;
+			case KEY:
+				currentVersionSummary.setKey(text());
+				break;
+			case VERSION_ID:
+				if (isRead(SummaryField.VersionId))
+					currentVersionSummary.setVersionId(text());
+				break;
+			case IS_LATEST:
+				if (isRead(SummaryField.IsLatest))
+					currentVersionSummary.setIsLatest(textEquals("true"));
+				break;
+			case LAST_MODIFIED:
+				if (isRead(SummaryField.LastModified))
+					currentVersionSummary.setLastModified(textAsDate());
+				break;
+			case ETAG:
+				if (isRead(SummaryField.ETag))
+					currentVersionSummary.setETag(textWithoutQuotes());
+				break;
+			case SIZE:
+				if (isRead(SummaryField.Size))
+					currentVersionSummary.setSize(textAsLong());
+				break;
+			case OWNER:
+				if (isRead(SummaryField.Owner)) {
+					currentVersionSummary.setOwner(owner);
+					owner = null;
+				}
+				break;
+			case STORAGE_CLASS:
+				if (isRead(SummaryField.StorageClass))
+					currentVersionSummary.setStorageClass(text());
+				break;
+			case ID:
+				if (isRead(SummaryField.Owner))
+					owner.setId(text());
+				break;
+			case DISPLAY_NAME:
+				if (isRead(SummaryField.Owner))
+					owner.setDisplayName(text());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reader for ListMultipartUploads response XML documents, equivalent to
+	 * {@link XmlResponsesSaxParser.ListMultipartUploadsHandler}.
+	 */
+	private class ListMultipartUploadsReader extends ElementReader {
+		private MultipartUploadListing result;
+		private MultipartUpload currentMultipartUpload;
+		private Owner currentOwner;
+		private Owner currentInitiator;
+		private boolean inCommonPrefixes = false;
+
+		MultipartUploadListing getListMultipartUploadsResult() {
+			return result;
+		}
+
+		@Override
+		boolean startElement(int element) {
+			switch (element) {
+			case LIST_MULTIPART_UPLOADS_RESULT:
+				result = new MultipartUploadListing();
+				break;
+			case UPLOAD:
+				currentMultipartUpload = new MultipartUpload();
+				break;
+			case OWNER:
+				currentOwner = new Owner();
+				break;
+			case INITIATOR:
+				currentInitiator = new Owner();
+				break;
+			case COMMON_PREFIXES:
+				inCommonPrefixes = true;
+				break;
+			}
+			return true;
+		}
+
+		@Override
+		void endElement(int element) throws ParseException {
+			switch (element) {
+			case BUCKET:
+				result.setBucketName(text());
+				break;
+			case KEY_MARKER:
+				result.setKeyMarker(textOrNull());
+				break;
+			case DELIMITER:
+				result.setDelimiter(textOrNull());
+				break;
+			case PREFIX:
+				if (inCommonPrefixes) {
+					result.getCommonPrefixes().add(text());
+				} else {
+					result.setPrefix(textOrNull());
+				}
+				break;
+			case UPLOAD_ID_MARKER:
+				result.setUploadIdMarker(textOrNull());
+				break;
+			case NEXT_KEY_MARKER:
+				result.setNextKeyMarker(textOrNull());
+				break;
+			case NEXT_UPLOAD_ID_MARKER:
+				result.setNextUploadIdMarker(textOrNull());
+				break;
+			case MAX_UPLOADS:
+				result.setMaxUploads(textAsInt());
+				break;
+			case IS_TRUNCATED:
+				result.setTruncated(Boolean.parseBoolean(text()));
+				break;
+			case UPLOAD:
+				result.getMultipartUploads().add(currentMultipartUpload);
+				break;
+			case KEY:
+				currentMultipartUpload.setKey(text());
+				break;
+			case UPLOAD_ID:
+				currentMultipartUpload.setUploadId(text());
+				break;
+			case OWNER:
+				currentMultipartUpload.setOwner(currentOwner);
+				currentOwner = null;
+				break;
+			case INITIATOR:
+				currentMultipartUpload.setInitiator(currentInitiator);
+				currentInitiator = null;
+				break;
+			case ID:
+				if (currentOwner != null) {
+					currentOwner.setId(textOrNull());
+				} else if (currentInitiator != null) {
+					currentInitiator.setId(textOrNull());
+				}
+				break;
+			case DISPLAY_NAME:
+				if (currentOwner != null) {
+					currentOwner.setDisplayName(textOrNull());
+				} else if (currentInitiator != null) {
+					currentInitiator.setDisplayName(textOrNull());
+				}
+				break;
+			case STORAGE_CLASS:
+				currentMultipartUpload.setStorageClass(text());
+				break;
+			case INITIATED:
+				currentMultipartUpload.setInitiated(textAsDate());
+				break;
+			case COMMON_PREFIXES:
+				inCommonPrefixes = false;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reader for ListParts response XML documents, equivalent to
+	 * {@link XmlResponsesSaxParser.ListPartsHandler}.
+	 */
+	private class ListPartsReader extends ElementReader {
+		private PartListing result;
+		private Owner currentOwner;
+		private Owner currentInitiator;
+		private PartSummary currentPart;
+
+		PartListing getListPartsResult() {
+			return result;
+		}
+
+		@Override
+		boolean startElement(int element) {
+			switch (element) {
+			case LIST_PARTS_RESULT:
+				result = new PartListing();
+				break;
+			case OWNER:
+				currentOwner = new Owner();
+				break;
+			case INITIATOR:
+				currentInitiator = new Owner();
+				break;
+			case PART:
+				currentPart = new PartSummary();
+				break;
+			}
+			return true;
+		}
+
+		@Override
+		void endElement(int element) throws ParseException {
+			switch (element) {
+			case BUCKET:
+				result.setBucketName(text());
+				break;
+			case KEY:
+				result.setKey(text());
+				break;
+			case UPLOAD_ID:
+				result.setUploadId(text());
+				break;
+			case OWNER:
+				result.setOwner(currentOwner);
+				currentOwner = null;
+				break;
+			case INITIATOR:
+				result.setInitiator(currentInitiator);
+				currentInitiator = null;
+				break;
+			case ID:
+				if (currentOwner != null) {
+					currentOwner.setId(textOrNull());
+				} else if (currentInitiator != null) {
+					currentInitiator.setId(textOrNull());
+				}
+				break;
+			case DISPLAY_NAME:
+				if (currentOwner != null) {
+					currentOwner.setDisplayName(textOrNull());
+				} else if (currentInitiator != null) {
+					currentInitiator.setDisplayName(textOrNull());
+				}
+				break;
+			case STORAGE_CLASS:
+				result.setStorageClass(text());
+				break;
+			case PART_NUMBER_MARKER:
+				result.setPartNumberMarker(textAsInteger());
+				break;
+			case NEXT_PART_NUMBER_MARKER:
+				result.setNextPartNumberMarker(textAsInteger());
+				break;
+			case MAX_PARTS:
+				result.setMaxParts(textAsInteger());
+				break;
+			case IS_TRUNCATED:
+				result.setTruncated(Boolean.parseBoolean(text()));
+				break;
+			case PART:
+				result.getParts().add(currentPart);
+				break;
+			case PART_NUMBER:
+				currentPart.setPartNumber(textAsInt());
+				break;
+			case LAST_MODIFIED:
+				currentPart.setLastModified(textAsDate());
+				break;
+			case ETAG:
+				currentPart.setETag(textWithoutQuotes());
+				break;
+			case SIZE:
+				currentPart.setSize(textAsLong());
+				break;
+			}
+		}
+	}
+}
@@ -31,6 +31,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -69,6 +70,7 @@ import com.amazon.s3.model.EmailAddressGrantee;
 import com.amazon.s3.model.Grantee;
 import com.amazon.s3.model.GroupGrantee;
 import com.amazon.s3.model.InitiateMultipartUploadResult;
+import com.amazon.s3.model.ListingVisitor;
 import com.amazon.s3.model.MultiObjectDeleteException;
 import com.amazon.s3.model.MultiObjectDeleteException.DeleteError;
 import com.amazon.s3.model.MultipartUpload;
@@ -84,6 +86,7 @@ import com.amazon.s3.model.RoutingRuleCondition;
 import com.amazon.s3.model.S3ObjectSummary;
 import com.amazon.s3.model.S3VersionSummary;
 import com.amazon.s3.model.StorageClass;
+import com.amazon.s3.model.SummaryField;
 import com.amazon.s3.model.TagSet;
 import com.amazon.s3.model.VersionListing;
 
@@ -146,6 +149,9 @@ public class XmlResponsesSaxParser {
 			xr.setContentHandler(handler);
 			xr.setErrorHandler(handler);
 			xr.parse(new InputSource(breader));
+		} catch (ListingStoppedException e) {
+			// The listing visitor doesn't want the rest of the document.
+			Log.d(TAG, "Listing stopped by visitor");
 		} catch (Throwable t) {
 			try {
 				inputStream.close();
@@ -292,11 +298,61 @@ public class XmlResponsesSaxParser {
 	 */
 	public ListBucketHandler parseListBucketObjectsResponse(
 			InputStream inputStream) throws AmazonClientException {
-		ListBucketHandler handler = new ListBucketHandler();
+		return parseListBucketObjectsResponse(inputStream, null);
+	}
+
+	/**
+	 * Parses a ListBucket response XML document from an input stream, reading
+	 * only the specified summary fields.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @return the XML handler object populated with data parsed from the XML
+	 *         stream.
+	 * @throws AmazonClientException
+	 */
+	public ListBucketHandler parseListBucketObjectsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields)
+			throws AmazonClientException {
+		ListBucketHandler handler = new ListBucketHandler(summaryFields);
 		parseXmlInputStream(handler, sanitizeXmlDocument(handler, inputStream));
 		return handler;
 	}
 
+	/**
+	 * Parses a ListBucket response XML document from an input stream, passing
+	 * each object and common prefix to a visitor as it's parsed instead of
+	 * collecting them. The document is parsed as it's read, and carriage
+	 * returns are escaped as it's read rather than by reading the whole
+	 * document first.
+	 * <p>
+	 * If the visitor stops the listing, the rest of the document isn't parsed
+	 * and the listing is marked as truncated, with the last object key or
+	 * common prefix visited as its next marker.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @param visitor
+	 *            the visitor to pass the objects and common prefixes to.
+	 * @return the XML handler object populated with the details of the
+	 *         listing, without any objects or common prefixes.
+	 * @throws AmazonClientException
+	 */
+	public ListBucketHandler parseListBucketObjectsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields,
+			ListingVisitor visitor) throws AmazonClientException {
+		ListBucketHandler handler = new ListBucketHandler(summaryFields,
+				visitor);
+		parseXmlInputStream(handler,
+				sanitizeXmlDocument ? new CarriageReturnEscapingInputStream(
+						inputStream) : inputStream);
+		return handler;
+	}
+
 	/**
 	 * Parses a ListVersions response XML document from an input stream.
 	 * 
@@ -308,7 +364,25 @@ public class XmlResponsesSaxParser {
 	 */
 	public ListVersionsHandler parseListVersionsResponse(InputStream inputStream)
 			throws AmazonClientException {
-		ListVersionsHandler handler = new ListVersionsHandler();
+		return parseListVersionsResponse(inputStream, null);
+	}
+
+	/**
+	 * Parses a ListVersions response XML document from an input stream,
+	 * reading only the specified summary fields.
+	 * 
+	 * @param inputStream
+	 *            XML data input stream.
+	 * @param summaryFields
+	 *            the summary fields to read, or null for all of them.
+	 * @return the XML handler object populated with data parsed from the XML
+	 *         stream.
+	 * @throws AmazonClientException
+	 */
+	public ListVersionsHandler parseListVersionsResponse(
+			InputStream inputStream, Set<SummaryField> summaryFields)
+			throws AmazonClientException {
+		ListVersionsHandler handler = new ListVersionsHandler(summaryFields);
 		parseXmlInputStream(handler, sanitizeXmlDocument(handler, inputStream));
 		return handler;
 	}
@@ -471,6 +545,18 @@ public class XmlResponsesSaxParser {
 		return handler.isRequesterPays();
 	}
 
+	/**
+	 * Thrown by a listing handler to stop parsing when its visitor stops the
+	 * listing.
+	 */
+	private static class ListingStoppedException extends SAXException {
+		private static final long serialVersionUID = 1L;
+
+		ListingStoppedException() {
+			super("Listing stopped by visitor");
+		}
+	}
+
 	// ////////////
 	// Handlers //
 	// ////////////
@@ -496,11 +582,64 @@ public class XmlResponsesSaxParser {
 		private String requestDelimiter = null;
 		private boolean listingTruncated = false;
 		private String lastKey = null;
+		private String lastCommonPrefix = null;
 		private String nextMarker = null;
 
+		/** The summary fields read, or null for all of them */
+		private final Set<SummaryField> summaryFields;
+
+		/**
+		 * The visitor passed the objects and common prefixes instead of
+		 * collecting them, or null
+		 */
+		private final ListingVisitor visitor;
+
+		/** The last object key or common prefix visited, if the visitor stopped */
+		private String stoppedAt = null;
+
 		public ListBucketHandler() {
+			this(null);
+		}
+
+		/**
+		 * Constructs a handler reading only the specified summary fields.
+		 * 
+		 * @param summaryFields
+		 *            the summary fields to read, or null for all of them.
+		 */
+		public ListBucketHandler(Set<SummaryField> summaryFields) {
+			this(summaryFields, null);
+		}
+
+		/**
+		 * Constructs a handler reading only the specified summary fields, and
+		 * passing each object and common prefix to a visitor as it's parsed
+		 * instead of collecting them.
+		 * 
+		 * @param summaryFields
+		 *            the summary fields to read, or null for all of them.
+		 * @param visitor
+		 *            the visitor to pass the objects and common prefixes to,
+		 *            or null to collect them.
+		 */
+		public ListBucketHandler(Set<SummaryField> summaryFields,
+				ListingVisitor visitor) {
 			super();
 			this.currText = new StringBuilder();
+			this.summaryFields = summaryFields;
+			this.visitor = visitor;
+		}
+
+		/**
+		 * @return true if the visitor stopped the listing before the end of
+		 *         the document.
+		 */
+		public boolean isStopped() {
+			return stoppedAt != null;
+		}
+
+		private boolean isRead(SummaryField field) {
+			return summaryFields == null || summaryFields.contains(field);
 		}
 
 		public ObjectListing getObjectListing() {
@@ -518,17 +657,17 @@ public class XmlResponsesSaxParser {
 			 * give easy access to the next marker if we're returning a list of
 			 * results that's truncated.
 			 */
-			if (nextMarker != null) {
+			if (stoppedAt != null) {
+				objectListing.setTruncated(true);
+				objectListing.setNextMarker(stoppedAt);
+			} else if (nextMarker != null) {
 				objectListing.setNextMarker(nextMarker);
 			} else if (listingTruncated) {
 				String nextMarker = null;
-				if (objectListing.getObjectSummaries().isEmpty() == false) {
-					nextMarker = objectListing.getObjectSummaries()
-							.get(objectListing.getObjectSummaries().size() - 1)
-							.getKey();
-				} else if (objectListing.getCommonPrefixes().isEmpty() == false) {
-					nextMarker = objectListing.getCommonPrefixes().get(
-							objectListing.getCommonPrefixes().size() - 1);
+				if (lastKey != null) {
+					nextMarker = lastKey;
+				} else if (lastCommonPrefix != null) {
+					nextMarker = lastCommonPrefix;
 				} else {
 					Log.e(TAG,
 							"S3 response indicates truncated results, but contains no object summaries or common prefixes.");
@@ -616,16 +755,21 @@ public class XmlResponsesSaxParser {
 			if (name.equals("Contents")) {
 				currentObject = new S3ObjectSummary();
 				currentObject.setBucketName(bucketName);
+				if (!isRead(SummaryField.Size))
+					currentObject.setSize(-1);
 			} else if (name.equals("Owner")) {
-				currentOwner = new Owner();
-				currentObject.setOwner(currentOwner);
+				if (isRead(SummaryField.Owner)) {
+					currentOwner = new Owner();
+					currentObject.setOwner(currentOwner);
+				}
 			} else if (name.equals("CommonPrefixes")) {
 				insideCommonPrefixes = true;
 			}
 		}
 
 		@Override
-		public void endElement(String uri, String name, String qName) {
+		public void endElement(String uri, String name, String qName)
+				throws SAXException {
 			String elementText = this.currText.toString();
 			// Listing details
 			if (name.equals("Name")) {
@@ -658,40 +802,61 @@ public class XmlResponsesSaxParser {
 			}
 			// Object details.
 			else if (name.equals("Contents")) {
-				objectListing.getObjectSummaries().add(currentObject);
+				if (visitor == null) {
+					objectListing.getObjectSummaries().add(currentObject);
+				} else if (!visitor.visitObject(currentObject)) {
+					stop(currentObject.getKey());
+				}
 			} else if (name.equals("Key")) {
 				currentObject.setKey(elementText);
 				lastKey = elementText;
 			} else if (name.equals("LastModified")) {
-				try {
-					currentObject.setLastModified(ServiceUtils
-							.parseIso8601Date(elementText));
-				} catch (ParseException e) {
-					throw new RuntimeException(
-							"Non-ISO8601 date for LastModified in bucket's object listing output: "
-									+ elementText, e);
+				if (isRead(SummaryField.LastModified)) {
+					try {
+						currentObject.setLastModified(ServiceUtils
+								.parseIso8601Date(elementText));
+					} catch (ParseException e) {
+						throw new RuntimeException(
+								"Non-ISO8601 date for LastModified in bucket's object listing output: "
+										+ elementText, e);
+					}
 				}
 			} else if (name.equals("ETag")) {
-				currentObject.setETag(ServiceUtils.removeQuotes(elementText));
+				if (isRead(SummaryField.ETag)) {
+					currentObject.setETag(ServiceUtils.removeQuotes(elementText));
+				}
 			} else if (name.equals("Size")) {
-				currentObject.setSize(parseLong(elementText));
+				if (isRead(SummaryField.Size)) {
+					currentObject.setSize(parseLong(elementText));
+				}
 			} else if (name.equals("StorageClass")) {
-				currentObject.setStorageClass(elementText);
+				if (isRead(SummaryField.StorageClass)) {
+					currentObject.setStorageClass(elementText);
+				}
 			}
 			// Owner details.
 			else if (name.equals("ID")) {
-				if (currentOwner == null) {
-					currentOwner = new Owner();
-					currentObject.setOwner(currentOwner);
-				}
+				if (isRead(SummaryField.Owner)) {
+					if (currentOwner == null) {
+						currentOwner = new Owner();
+						currentObject.setOwner(currentOwner);
+					}
 
-				currentOwner.setId(elementText);
+					currentOwner.setId(elementText);
+				}
 			} else if (name.equals("DisplayName")) {
-				currentOwner.setDisplayName(elementText);
+				if (isRead(SummaryField.Owner)) {
+					currentOwner.setDisplayName(elementText);
+				}
 			}
 			// Common prefixes.
 			else if (insideCommonPrefixes && name.equals("Prefix")) {
-				commonPrefixes.add(elementText);
+				lastCommonPrefix = elementText;
+				if (visitor == null) {
+					commonPrefixes.add(elementText);
+				} else if (!visitor.visitCommonPrefix(elementText)) {
+					stop(elementText);
+				}
 			} else if (name.equals("CommonPrefixes")) {
 				insideCommonPrefixes = false;
 			}
@@ -699,6 +864,14 @@ public class XmlResponsesSaxParser {
 			this.currText = new StringBuilder();
 		}
 
+		/**
+		 * Records where the visitor stopped the listing and stops parsing.
+		 */
+		private void stop(String lastVisited) throws ListingStoppedException {
+			stoppedAt = lastVisited;
+			throw new ListingStoppedException();
+		}
+
 		@Override
 		public void characters(char ch[], int start, int length) {
 			this.currText.append(ch, start, length);
@@ -1217,6 +1390,27 @@ public class XmlResponsesSaxParser {
 		private StringBuilder text;
 		private boolean insideCommonPrefixes = false;
 
+		/** The summary fields read, or null for all of them */
+		private final Set<SummaryField> summaryFields;
+
+		public ListVersionsHandler() {
+			this(null);
+		}
+
+		/**
+		 * Constructs a handler reading only the specified summary fields.
+		 * 
+		 * @param summaryFields
+		 *            the summary fields to read, or null for all of them.
+		 */
+		public ListVersionsHandler(Set<SummaryField> summaryFields) {
+			this.summaryFields = summaryFields;
+		}
+
+		private boolean isRead(SummaryField field) {
+			return summaryFields == null || summaryFields.contains(field);
+		}
+
 		public VersionListing getListing() {
 			return versionListing;
 		}
@@ -1247,10 +1441,14 @@ public class XmlResponsesSaxParser {
 				currentVersionSummary = new S3VersionSummary();
 				currentVersionSummary.setBucketName(versionListing
 						.getBucketName());
+				if (!isRead(SummaryField.Size))
+					currentVersionSummary.setSize(-1);
 			} else if (name.equals("DeleteMarker")) {
 				currentVersionSummary = new S3VersionSummary();
 				currentVersionSummary.setBucketName(versionListing
 						.getBucketName());
+				if (!isRead(SummaryField.Size))
+					currentVersionSummary.setSize(-1);
 				currentVersionSummary.setIsDeleteMarker(true);
 			} else if (name.equals("Key")) {
 			} else if (name.equals("VersionId")) {
@@ -1259,7 +1457,9 @@ public class XmlResponsesSaxParser {
 			} else if (name.equals("ETag")) {
 			} else if (name.equals("Size")) {
 			} else if (name.equals("Owner")) {
-				this.owner = new Owner();
+				if (isRead(SummaryField.Owner)) {
+					this.owner = new Owner();
+				}
 			} else if (name.equals("StorageClass")) {
 			} else if (name.equals("ID")) {
 			} else if (name.equals("DisplayName")) {
@@ -1313,43 +1513,60 @@ public class XmlResponsesSaxParser {
 				currentVersionSummary.setKey(text.toString());
 			} else if (name.equals("VersionId")) {
 				assert (currentVersionSummary != null);
-				currentVersionSummary.setVersionId(text.toString());
+				if (isRead(SummaryField.VersionId)) {
+					currentVersionSummary.setVersionId(text.toString());
+				}
 			} else if (name.equals("IsLatest")) {
 				assert (currentVersionSummary != null);
-				currentVersionSummary
-						.setIsLatest("true".equals(text.toString()));
+				if (isRead(SummaryField.IsLatest)) {
+					currentVersionSummary.setIsLatest("true".equals(text
+							.toString()));
+				}
 			} else if (name.equals("LastModified")) {
 				assert (currentVersionSummary != null);
-				try {
-					currentVersionSummary.setLastModified(ServiceUtils
-							.parseIso8601Date(text.toString()));
-				} catch (ParseException e) {
-					throw new SAXException(
-							"Non-ISO8601 date for LastModified in copy object output: "
-									+ text.toString(), e);
+				if (isRead(SummaryField.LastModified)) {
+					try {
+						currentVersionSummary.setLastModified(ServiceUtils
+								.parseIso8601Date(text.toString()));
+					} catch (ParseException e) {
+						throw new SAXException(
+								"Non-ISO8601 date for LastModified in copy object output: "
+										+ text.toString(), e);
+					}
 				}
 			} else if (name.equals("ETag")) {
 				assert (currentVersionSummary != null);
 				assert (!currentVersionSummary.isDeleteMarker());
-				currentVersionSummary.setETag(ServiceUtils.removeQuotes(text
-						.toString()));
+				if (isRead(SummaryField.ETag)) {
+					currentVersionSummary.setETag(ServiceUtils
+							.removeQuotes(text.toString()));
+				}
 			} else if (name.equals("Size")) {
 				assert (currentVersionSummary != null);
 				assert (!currentVersionSummary.isDeleteMarker());
-				currentVersionSummary.setSize(Long.parseLong(text.toString()));
+				if (isRead(SummaryField.Size)) {
+					currentVersionSummary.setSize(Long.parseLong(text
+							.toString()));
+				}
 			} else if (name.equals("Owner")) {
-				currentVersionSummary.setOwner(owner);
-				owner = null;
+				if (isRead(SummaryField.Owner)) {
+					currentVersionSummary.setOwner(owner);
+					owner = null;
+				}
 			} else if (name.equals("StorageClass")) {
 				assert (currentVersionSummary != null);
 				assert (!currentVersionSummary.isDeleteMarker());
-				currentVersionSummary.setStorageClass(text.toString());
+				if (isRead(SummaryField.StorageClass)) {
+					currentVersionSummary.setStorageClass(text.toString());
+				}
 			} else if (name.equals("ID")) {
-				assert (owner != null);
-				owner.setId(text.toString());
+				if (isRead(SummaryField.Owner)) {
+					owner.setId(text.toString());
+				}
 			} else if (name.equals("DisplayName")) {
-				assert (owner != null);
-				owner.setDisplayName(text.toString());
+				if (isRead(SummaryField.Owner)) {
+					owner.setDisplayName(text.toString());
+				}
 			} else {
 				Log.w(TAG, "Ignoring unexpected tag <" + name + ">");
 			}
@@ -19,11 +19,13 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -33,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import android.util.Log;
 
@@ -46,6 +49,7 @@ import com.amazon.s3.Request;
 import com.amazon.s3.auth.AWSCredentials;
 import com.amazon.s3.auth.AWSCredentialsProvider;
 import com.amazon.s3.auth.AWSCredentialsProviderChain;
+import com.amazon.s3.auth.CachingCredentialsProvider;
 import com.amazon.s3.auth.ClasspathPropertiesFileCredentialsProvider;
 import com.amazon.s3.auth.Signer;
 import com.amazon.s3.auth.SystemPropertiesCredentialsProvider;
@@ -58,14 +62,16 @@ import com.amazon.s3.http.ExecutionContext;
 import com.amazon.s3.http.HttpMethod;
 import com.amazon.s3.http.HttpMethodName;
 import com.amazon.s3.http.HttpResponseHandler;
+import com.amazon.s3.internal.BucketEndpointCache;
 import com.amazon.s3.internal.BucketNameUtils;
 import com.amazon.s3.internal.Constants;
-import com.amazon.s3.internal.InputSubstream;
 import com.amazon.s3.internal.MD5DigestCalculatingInputStream;
+import com.amazon.s3.internal.MappedFileInputStream;
 import com.amazon.s3.internal.Mimetypes;
 import com.amazon.s3.internal.ObjectExpirationHeaderHandler;
+import com.amazon.s3.internal.ObjectMetadataCache;
 import com.amazon.s3.internal.ProgressReportingInputStream;
-import com.amazon.s3.internal.RepeatableFileInputStream;
+import com.amazon.s3.internal.RepeatableFileChannelInputStream;
 import com.amazon.s3.internal.RepeatableInputStream;
 import com.amazon.s3.internal.ResponseHeaderHandlerChain;
 import com.amazon.s3.internal.S3ErrorResponseHandler;
@@ -76,8 +82,10 @@ import com.amazon.s3.internal.S3Signer;
 import com.amazon.s3.internal.S3StringResponseHandler;
 import com.amazon.s3.internal.S3VersionHeaderHandler;
 import com.amazon.s3.internal.S3XmlResponseHandler;
+import com.amazon.s3.internal.SpillingRepeatableInputStream;
 import com.amazon.s3.internal.ServerSideEncryptionHeaderHandler;
 import com.amazon.s3.internal.ServiceUtils;
+import com.amazon.s3.internal.SingleFlight;
 import com.amazon.s3.internal.StaticCredentialsProvider;
 import com.amazon.s3.internal.XmlWriter;
 import com.amazon.s3.model.AbortMultipartUploadRequest;
@@ -93,6 +101,7 @@ import com.amazon.s3.model.BucketTaggingConfiguration;
 import com.amazon.s3.model.BucketVersioningConfiguration;
 import com.amazon.s3.model.BucketWebsiteConfiguration;
 import com.amazon.s3.model.CannedAccessControlList;
+import com.amazon.s3.model.CompactObjectListing;
 import com.amazon.s3.model.CompleteMultipartUploadRequest;
 import com.amazon.s3.model.CompleteMultipartUploadResult;
 import com.amazon.s3.model.CopyObjectRequest;
@@ -105,6 +114,7 @@ import com.amazon.s3.model.DeleteBucketRequest;
 import com.amazon.s3.model.DeleteBucketWebsiteConfigurationRequest;
 import com.amazon.s3.model.DeleteObjectRequest;
 import com.amazon.s3.model.DeleteObjectsRequest;
+import com.amazon.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazon.s3.model.DeleteObjectsResponse;
 import com.amazon.s3.model.DeleteObjectsResult;
 import com.amazon.s3.model.DeleteVersionRequest;
@@ -125,6 +135,7 @@ import com.amazon.s3.model.ListMultipartUploadsRequest;
 import com.amazon.s3.model.ListObjectsRequest;
 import com.amazon.s3.model.ListPartsRequest;
 import com.amazon.s3.model.ListVersionsRequest;
+import com.amazon.s3.model.ListingVisitor;
 import com.amazon.s3.model.MultiFactorAuthentication;
 import com.amazon.s3.model.MultiObjectDeleteException;
 import com.amazon.s3.model.MultipartUploadListing;
@@ -141,6 +152,7 @@ import com.amazon.s3.model.ResponseHeaderOverrides;
 import com.amazon.s3.model.RestoreObjectRequest;
 import com.amazon.s3.model.S3Object;
 import com.amazon.s3.model.S3ObjectInputStream;
+import com.amazon.s3.model.S3ObjectSummary;
 import com.amazon.s3.model.SetBucketAclRequest;
 import com.amazon.s3.model.SetBucketLoggingConfigurationRequest;
 import com.amazon.s3.model.SetBucketNotificationConfigurationRequest;
@@ -148,6 +160,7 @@ import com.amazon.s3.model.SetBucketPolicyRequest;
 import com.amazon.s3.model.SetBucketVersioningConfigurationRequest;
 import com.amazon.s3.model.SetBucketWebsiteConfigurationRequest;
 import com.amazon.s3.model.StorageClass;
+import com.amazon.s3.model.SummaryField;
 import com.amazon.s3.model.UploadPartRequest;
 import com.amazon.s3.model.UploadPartResult;
 import com.amazon.s3.model.VersionListing;
@@ -159,6 +172,7 @@ import com.amazon.s3.model.transform.Unmarshallers;
 import com.amazon.s3.model.transform.XmlResponsesSaxParser.CompleteMultipartUploadHandler;
 import com.amazon.s3.model.transform.XmlResponsesSaxParser.CopyObjectResultHandler;
 import com.amazon.s3.transform.Unmarshaller;
+import com.amazon.s3.uploader.regions.RegionUtils;
 import com.amazon.s3.util.BinaryUtils;
 import com.amazon.s3.util.Md5Utils;
 
@@ -202,6 +216,19 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	/** S3 specific client configuration options */
 	private S3ClientOptions clientOptions = new S3ClientOptions();
 
+	/**
+	 * Cache of object metadata and bucket existence, or null if disabled in
+	 * the client options.
+	 */
+	private volatile ObjectMetadataCache metadataCache;
+
+	/** Endpoints computed for, or learned from, the buckets accessed */
+	private final BucketEndpointCache bucketEndpoints = new BucketEndpointCache(
+			BucketEndpointCache.DEFAULT_MAX_ENTRIES);
+
+	/** Identical reads in flight, shared when request coalescing is enabled */
+	private final SingleFlight inFlightReads = new SingleFlight();
+
 	/** Provider for AWS credentials. */
 	private AWSCredentialsProvider awsCredentialsProvider;
 
@@ -215,6 +242,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 * <li>Instance Profile Credentials - delivered through the Amazon EC2
 	 * metadata service</li>
 	 * </ul>
+	 * The credentials found are cached, and reloaded periodically in the
+	 * background.
 	 * 
 	 * <p>
 	 * If no credentials are found in the chain, this client will attempt to
@@ -245,7 +274,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 * @see AmazonS3Client#AmazonS3Client(AWSCredentials, ClientConfiguration)
 	 */
 	public AmazonS3Client() {
-		this(new AWSCredentialsProviderChain(
+		this(new CachingCredentialsProvider(new AWSCredentialsProviderChain(
 				new SystemPropertiesCredentialsProvider(),
 				new ClasspathPropertiesFileCredentialsProvider()) {
 
@@ -259,7 +288,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 						"No credentials available; falling back to anonymous access");
 				return null;
 			}
-		});
+		}));
 	}
 
 	/**
@@ -371,6 +400,15 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 */
 	public void setS3ClientOptions(S3ClientOptions clientOptions) {
 		this.clientOptions = new S3ClientOptions(clientOptions);
+		this.bucketEndpoints.clear();
+		if (this.clientOptions.getMetadataCacheSize() > 0) {
+			this.metadataCache = new ObjectMetadataCache(
+					this.clientOptions.getMetadataCacheSize(),
+					this.clientOptions.getMetadataCacheTimeToLive(),
+					this.clientOptions.getMetadataCacheNegativeTimeToLive());
+		} else {
+			this.metadataCache = null;
+		}
 	}
 
 	/**
@@ -410,17 +448,21 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			emptyListing.setMaxKeys(previousVersionListing.getMaxKeys());
 			emptyListing.setPrefix(previousVersionListing.getPrefix());
 			emptyListing.setTruncated(false);
+			emptyListing.setSummaryFields(previousVersionListing
+					.getSummaryFields());
 
 			return emptyListing;
 		}
 
-		return listVersions(new ListVersionsRequest(
+		ListVersionsRequest nextRequest = new ListVersionsRequest(
 				previousVersionListing.getBucketName(),
 				previousVersionListing.getPrefix(),
 				previousVersionListing.getNextKeyMarker(),
 				previousVersionListing.getNextVersionIdMarker(),
 				previousVersionListing.getDelimiter(), new Integer(
-						previousVersionListing.getMaxKeys())));
+						previousVersionListing.getMaxKeys()));
+		nextRequest.setSummaryFields(previousVersionListing.getSummaryFields());
+		return listVersions(nextRequest);
 	}
 
 	/*
@@ -487,8 +529,16 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			request.addParameter("max-keys", listVersionsRequest
 					.getMaxResults().toString());
 
-		return invoke(request, new Unmarshallers.VersionListUnmarshaller(),
+		Set<SummaryField> summaryFields = listVersionsRequest
+				.getSummaryFields();
+		Unmarshaller<VersionListing, InputStream> unmarshaller = clientOptions
+				.isPullParserListings() ? new Unmarshallers.PullVersionListUnmarshaller(
+				summaryFields) : new Unmarshallers.VersionListUnmarshaller(
+				summaryFields);
+		VersionListing listing = invoke(request, unmarshaller,
 				listVersionsRequest.getBucketName(), null);
+		listing.setSummaryFields(summaryFields);
+		return listing;
 	}
 
 	/*
@@ -521,11 +571,56 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 * com.amazonaws.services.s3.AmazonS3#listObjects(com.amazonaws.services
 	 * .s3.model.ListObjectsRequest)
 	 */
-	public ObjectListing listObjects(ListObjectsRequest listObjectsRequest)
+	public ObjectListing listObjects(final ListObjectsRequest listObjectsRequest)
 			throws AmazonClientException, AmazonServiceException {
 		assertParameterNotNull(listObjectsRequest.getBucketName(),
 				"The bucket name parameter must be specified when listing objects in a bucket");
 
+		if (!clientOptions.isRequestCoalescing()
+				|| listObjectsRequest.getRequestCredentials() != null) {
+			return fetchObjectListing(listObjectsRequest);
+		}
+
+		Integer maxKeys = listObjectsRequest.getMaxKeys();
+		Set<SummaryField> summaryFields = listObjectsRequest.getSummaryFields();
+		String coalescingKey = SingleFlight.key("LIST",
+				listObjectsRequest.getBucketName(),
+				listObjectsRequest.getPrefix(), listObjectsRequest.getMarker(),
+				listObjectsRequest.getDelimiter(), maxKeys == null ? null
+						: maxKeys.toString(), summaryFields == null ? null
+						: summaryFields.toString());
+		ObjectListing listing = inFlightReads.execute(coalescingKey,
+				new Callable<ObjectListing>() {
+					public ObjectListing call() {
+						return fetchObjectListing(listObjectsRequest);
+					}
+				});
+		return copyObjectListing(listing);
+	}
+
+	/**
+	 * Sends a request for a page of a bucket's objects.
+	 */
+	private ObjectListing fetchObjectListing(
+			ListObjectsRequest listObjectsRequest) {
+		Request<ListObjectsRequest> request = createListObjectsRequest(listObjectsRequest);
+
+		Set<SummaryField> summaryFields = listObjectsRequest.getSummaryFields();
+		Unmarshaller<ObjectListing, InputStream> unmarshaller = clientOptions
+				.isPullParserListings() ? new Unmarshallers.PullListObjectsUnmarshaller(
+				summaryFields) : new Unmarshallers.ListObjectsUnmarshaller(
+				summaryFields);
+		ObjectListing listing = invoke(request, unmarshaller,
+				listObjectsRequest.getBucketName(), null);
+		listing.setSummaryFields(summaryFields);
+		return listing;
+	}
+
+	/**
+	 * Creates the request for a page of a bucket's objects.
+	 */
+	private Request<ListObjectsRequest> createListObjectsRequest(
+			ListObjectsRequest listObjectsRequest) {
 		Request<ListObjectsRequest> request = createRequest(
 				listObjectsRequest.getBucketName(), null, listObjectsRequest,
 				HttpMethodName.GET);
@@ -539,9 +634,30 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 				&& listObjectsRequest.getMaxKeys().intValue() >= 0)
 			request.addParameter("max-keys", listObjectsRequest.getMaxKeys()
 					.toString());
+		return request;
+	}
 
-		return invoke(request, new Unmarshallers.ListObjectsUnmarshaller(),
-				listObjectsRequest.getBucketName(), null);
+	/**
+	 * Returns a copy of a listing shared between coalesced callers, with its
+	 * own summaries and list of common prefixes.
+	 */
+	private static ObjectListing copyObjectListing(ObjectListing listing) {
+		ObjectListing copy = new ObjectListing();
+		for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+			copy.getObjectSummaries().add(
+					ServiceUtils.copyObjectSummary(summary));
+		}
+		copy.setCommonPrefixes(new ArrayList<String>(listing
+				.getCommonPrefixes()));
+		copy.setBucketName(listing.getBucketName());
+		copy.setNextMarker(listing.getNextMarker());
+		copy.setTruncated(listing.isTruncated());
+		copy.setPrefix(listing.getPrefix());
+		copy.setMarker(listing.getMarker());
+		copy.setMaxKeys(listing.getMaxKeys());
+		copy.setDelimiter(listing.getDelimiter());
+		copy.setSummaryFields(listing.getSummaryFields());
+		return copy;
 	}
 
 	/*
@@ -566,16 +682,222 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			emptyListing.setMaxKeys(previousObjectListing.getMaxKeys());
 			emptyListing.setPrefix(previousObjectListing.getPrefix());
 			emptyListing.setTruncated(false);
+			emptyListing.setSummaryFields(previousObjectListing
+					.getSummaryFields());
 
 			return emptyListing;
 		}
 
-		return listObjects(new ListObjectsRequest(
+		ListObjectsRequest nextRequest = new ListObjectsRequest(
 				previousObjectListing.getBucketName(),
 				previousObjectListing.getPrefix(),
 				previousObjectListing.getNextMarker(),
 				previousObjectListing.getDelimiter(), new Integer(
-						previousObjectListing.getMaxKeys())));
+						previousObjectListing.getMaxKeys()));
+		nextRequest.setSummaryFields(previousObjectListing.getSummaryFields());
+		return listObjects(nextRequest);
+	}
+
+	/**
+	 * <p>
+	 * Returns a page of the objects in a bucket, like
+	 * {@link #listObjects(ListObjectsRequest)}, but adds the objects to the
+	 * compact listing given instead of to the listing returned. The objects
+	 * are added as the response is parsed, without creating a summary for
+	 * each one, and their ETags aren't kept.
+	 * </p>
+	 * <p>
+	 * The listing returned has the details of the page, such as whether it's
+	 * truncated and the marker for the next page, and its common prefixes,
+	 * which are also added to the compact listing, but no object summaries.
+	 * Requests made this way are never coalesced with other requests.
+	 * </p>
+	 * <p>
+	 * If this call fails, the compact listing is left as it was before the
+	 * call, so the same page can be requested again into it. Sizes that
+	 * aren't read because of the request's summary fields are stored as -1.
+	 * </p>
+	 * 
+	 * @param listObjectsRequest
+	 *            The request object containing all options for listing the
+	 *            objects in a specified bucket.
+	 * @param compactListing
+	 *            The compact listing to add the listed objects to.
+	 * 
+	 * @return The details of the page of objects listed.
+	 * 
+	 * @see #listAllObjects(ListObjectsRequest)
+	 */
+	public ObjectListing listObjects(ListObjectsRequest listObjectsRequest,
+			CompactObjectListing compactListing) throws AmazonClientException,
+			AmazonServiceException {
+		assertParameterNotNull(listObjectsRequest.getBucketName(),
+				"The bucket name parameter must be specified when listing objects in a bucket");
+		assertParameterNotNull(compactListing,
+				"The compact listing parameter must be specified when listing objects into a compact listing");
+
+		Set<SummaryField> summaryFields = listObjectsRequest.getSummaryFields();
+		int objectCount = compactListing.size();
+		List<String> commonPrefixes = compactListing.getCommonPrefixes();
+		int commonPrefixCount = commonPrefixes.size();
+		ObjectListing listing;
+		try {
+			listing = invoke(createListObjectsRequest(listObjectsRequest),
+					new Unmarshallers.CompactListObjectsUnmarshaller(
+							summaryFields, compactListing),
+					listObjectsRequest.getBucketName(), null);
+		} catch (RuntimeException e) {
+			compactListing.truncate(objectCount);
+			commonPrefixes.subList(commonPrefixCount, commonPrefixes.size())
+					.clear();
+			throw e;
+		}
+		listing.setSummaryFields(summaryFields);
+		return listing;
+	}
+
+	/**
+	 * Lists every object in a bucket that matches the request given, starting
+	 * at its marker, into a new compact listing. Pages are requested one after
+	 * another until the listing isn't truncated.
+	 * 
+	 * @param listObjectsRequest
+	 *            The request object containing all options for listing the
+	 *            objects in a specified bucket. The request isn't modified.
+	 * 
+	 * @return A compact listing of all the objects listed.
+	 * 
+	 * @see #listObjects(ListObjectsRequest, CompactObjectListing)
+	 */
+	public CompactObjectListing listAllObjects(
+			ListObjectsRequest listObjectsRequest) throws AmazonClientException,
+			AmazonServiceException {
+		CompactObjectListing compactListing = new CompactObjectListing();
+		compactListing.setBucketName(listObjectsRequest.getBucketName());
+
+		ObjectListing page = listObjects(listObjectsRequest, compactListing);
+		while (page.isTruncated() && page.getNextMarker() != null) {
+			page = listObjects(
+					nextListObjectsRequest(listObjectsRequest,
+							page.getNextMarker()), compactListing);
+		}
+		return compactListing;
+	}
+
+	/**
+	 * <p>
+	 * Lists every object in a bucket that matches the request given, starting
+	 * at its marker, passing each object and common prefix to a visitor as
+	 * it's parsed instead of collecting them. Pages are requested one after
+	 * another until the listing isn't truncated or the visitor stops it, so
+	 * only the summary being visited is held at a time.
+	 * </p>
+	 * <p>
+	 * The visitor is called on this thread while each response is being
+	 * read, and the response isn't read any further until it returns. If it
+	 * returns false, the rest of the page is discarded and no more pages are
+	 * requested. Requests made this way are never coalesced with other
+	 * requests.
+	 * </p>
+	 * 
+	 * @param listObjectsRequest
+	 *            The request object containing all options for listing the
+	 *            objects in a specified bucket. The request isn't modified.
+	 * @param visitor
+	 *            The visitor to pass the listed objects and common prefixes
+	 *            to.
+	 * 
+	 * @return The details of the last page listed, without any objects or
+	 *         common prefixes. If the visitor stopped the listing, the
+	 *         listing is truncated and its next marker is the last object key
+	 *         or common prefix visited, so listing from that marker resumes
+	 *         after it.
+	 * 
+	 * @throws AmazonClientException
+	 *             If any errors are encountered in the client while making the
+	 *             request or handling the response. The objects visited before
+	 *             the error aren't visited again.
+	 * @throws AmazonServiceException
+	 *             If any errors occurred in Amazon S3 while processing the
+	 *             request.
+	 */
+	public ObjectListing listObjects(ListObjectsRequest listObjectsRequest,
+			ListingVisitor visitor) throws AmazonClientException,
+			AmazonServiceException {
+		assertParameterNotNull(listObjectsRequest.getBucketName(),
+				"The bucket name parameter must be specified when listing objects in a bucket");
+		assertParameterNotNull(visitor,
+				"The visitor parameter must be specified when visiting the objects in a bucket");
+
+		StopRecordingVisitor pageVisitor = new StopRecordingVisitor(visitor);
+		ObjectListing page = fetchVisitedObjectListing(listObjectsRequest,
+				pageVisitor);
+		while (!pageVisitor.stopped && page.isTruncated()
+				&& page.getNextMarker() != null) {
+			page = fetchVisitedObjectListing(
+					nextListObjectsRequest(listObjectsRequest,
+							page.getNextMarker()), pageVisitor);
+		}
+		return page;
+	}
+
+	/**
+	 * Sends a request for a page of a bucket's objects, passing them to a
+	 * visitor as they're parsed.
+	 */
+	private ObjectListing fetchVisitedObjectListing(
+			ListObjectsRequest listObjectsRequest, ListingVisitor visitor) {
+		Set<SummaryField> summaryFields = listObjectsRequest.getSummaryFields();
+		Unmarshaller<ObjectListing, InputStream> unmarshaller = clientOptions
+				.isPullParserListings() ? new Unmarshallers.PullVisitingListObjectsUnmarshaller(
+				summaryFields, visitor)
+				: new Unmarshallers.VisitingListObjectsUnmarshaller(
+						summaryFields, visitor);
+		ObjectListing listing = invoke(
+				createListObjectsRequest(listObjectsRequest), unmarshaller,
+				listObjectsRequest.getBucketName(), null);
+		listing.setSummaryFields(summaryFields);
+		return listing;
+	}
+
+	/**
+	 * Returns a copy of a list objects request that starts at the marker
+	 * given.
+	 */
+	private static ListObjectsRequest nextListObjectsRequest(
+			ListObjectsRequest listObjectsRequest, String marker) {
+		ListObjectsRequest nextRequest = new ListObjectsRequest(
+				listObjectsRequest.getBucketName(),
+				listObjectsRequest.getPrefix(), marker,
+				listObjectsRequest.getDelimiter(),
+				listObjectsRequest.getMaxKeys());
+		nextRequest.setSummaryFields(listObjectsRequest.getSummaryFields());
+		nextRequest.setRequestCredentials(listObjectsRequest
+				.getRequestCredentials());
+		return nextRequest;
+	}
+
+	/**
+	 * Passes the objects and common prefixes of a listing on to another
+	 * visitor, recording whether it stopped the listing.
+	 */
+	private static class StopRecordingVisitor implements ListingVisitor {
+		private final ListingVisitor visitor;
+		private boolean stopped = false;
+
+		StopRecordingVisitor(ListingVisitor visitor) {
+			this.visitor = visitor;
+		}
+
+		public boolean visitObject(S3ObjectSummary objectSummary) {
+			stopped = !visitor.visitObject(objectSummary);
+			return !stopped;
+		}
+
+		public boolean visitCommonPrefix(String commonPrefix) {
+			stopped = !visitor.visitCommonPrefix(commonPrefix);
+			return !stopped;
+		}
 	}
 
 	/*
@@ -622,7 +944,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 * .s3.AmazonS3Client.GetBucketLocationRequest)
 	 */
 	public String getBucketLocation(
-			GetBucketLocationRequest getBucketLocationRequest)
+			final GetBucketLocationRequest getBucketLocationRequest)
 			throws AmazonClientException, AmazonServiceException {
 		assertParameterNotNull(getBucketLocationRequest,
 				"The request parameter must be specified when requesting a bucket's location");
@@ -631,12 +953,66 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 				bucketName,
 				"The bucket name parameter must be specified when requesting a bucket's location");
 
+		if (!clientOptions.isRequestCoalescing()
+				|| getBucketLocationRequest.getRequestCredentials() != null) {
+			return fetchBucketLocation(getBucketLocationRequest);
+		}
+		return inFlightReads.execute(SingleFlight.key("LOCATION", bucketName),
+				new Callable<String>() {
+					public String call() {
+						return fetchBucketLocation(getBucketLocationRequest);
+					}
+				});
+	}
+
+	/**
+	 * Sends a request for a bucket's location, and remembers the location.
+	 */
+	private String fetchBucketLocation(
+			GetBucketLocationRequest getBucketLocationRequest) {
+		String bucketName = getBucketLocationRequest.getBucketName();
 		Request<GetBucketLocationRequest> request = createRequest(bucketName,
 				null, getBucketLocationRequest, HttpMethodName.GET);
 		request.addParameter("location", null);
 
-		return invoke(request, new Unmarshallers.BucketLocationUnmarshaller(),
-				bucketName, null);
+		String location = invoke(request,
+				new Unmarshallers.BucketLocationUnmarshaller(), bucketName,
+				null);
+		learnBucketLocation(bucketName, location);
+		return location;
+	}
+
+	/**
+	 * Remembers the regional endpoint of a bucket whose location is known, so
+	 * requests for it don't have to be redirected there. This is only done
+	 * when the client uses the default endpoint, since a custom endpoint may
+	 * not follow Amazon S3's regional host names.
+	 * <p>
+	 * The regional host is looked up in the region metadata rather than
+	 * derived from the region's name. For a region the metadata doesn't know,
+	 * nothing is remembered here; requests for the bucket then follow Amazon
+	 * S3's redirect, and the host in its Location is remembered instead.
+	 */
+	private void learnBucketLocation(String bucketName, String location) {
+		URI clientEndpoint = endpoint;
+		if (location == null
+				|| !Constants.S3_HOSTNAME.equals(clientEndpoint.getHost()))
+			return;
+
+		String region = location;
+		if (Region.EU_Ireland.toString().equals(region))
+			region = "eu-west-1";
+		if (region.length() == 0 || "US".equals(region))
+			region = "us-east-1";
+
+		String regionalHost = RegionUtils.getServiceHost(region,
+				getServiceAbbreviation());
+		if (regionalHost == null
+				|| regionalHost.equals(clientEndpoint.getHost()))
+			return;
+
+		bucketEndpoints.putRegionalHost(clientEndpoint, bucketName,
+				regionalHost, isVirtualHostBucket(bucketName));
 	}
 
 	/*
@@ -971,12 +1347,78 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		assertParameterNotNull(key,
 				"The key parameter must be specified when requesting an object's metadata");
 
+		ObjectMetadataCache cache = metadataCache;
+		if (getObjectMetadataRequest.getRequestCredentials() != null)
+			cache = null;
+		if (cache != null) {
+			ObjectMetadata cached = cache.getObjectMetadata(bucketName, key,
+					versionId);
+			if (cached != null)
+				return cached;
+		}
+
+		if (cache == null) {
+			return fetchObjectMetadata(getObjectMetadataRequest);
+		}
+
+		long generation = cache.getGeneration(bucketName, key);
+		ObjectMetadata metadata;
+		try {
+			metadata = fetchObjectMetadata(getObjectMetadataRequest);
+		} catch (AmazonS3Exception ase) {
+			if (ase.getStatusCode() == 404) {
+				cache.putObjectNotFound(bucketName, key, versionId, ase,
+						generation);
+			}
+			throw ase;
+		}
+		cache.putObjectMetadata(bucketName, key, versionId, metadata,
+				generation);
+		return metadata;
+	}
+
+	/**
+	 * Sends a HEAD request for an object, sharing it with identical concurrent
+	 * requests if request coalescing is enabled. Requests are only shared
+	 * within the object's metadata cache generation, so a result cached after
+	 * a write never comes from a request sent before it.
+	 */
+	private ObjectMetadata fetchObjectMetadata(
+			final GetObjectMetadataRequest getObjectMetadataRequest) {
+		if (!clientOptions.isRequestCoalescing()
+				|| getObjectMetadataRequest.getRequestCredentials() != null) {
+			return headObject(getObjectMetadataRequest);
+		}
+
+		ObjectMetadataCache cache = metadataCache;
+		String coalescingKey = SingleFlight.key("HEAD",
+				getObjectMetadataRequest.getBucketName(),
+				getObjectMetadataRequest.getKey(),
+				getObjectMetadataRequest.getVersionId(), cache == null ? null
+						: String.valueOf(cache.getGeneration(
+								getObjectMetadataRequest.getBucketName(),
+								getObjectMetadataRequest.getKey())));
+		ObjectMetadata metadata = inFlightReads.execute(coalescingKey,
+				new Callable<ObjectMetadata>() {
+					public ObjectMetadata call() {
+						return headObject(getObjectMetadataRequest);
+					}
+				});
+		return ServiceUtils.copyObjectMetadata(metadata);
+	}
+
+	private ObjectMetadata headObject(
+			GetObjectMetadataRequest getObjectMetadataRequest) {
+		String bucketName = getObjectMetadataRequest.getBucketName();
+		String key = getObjectMetadataRequest.getKey();
 		Request<GetObjectMetadataRequest> request = createRequest(bucketName,
 				key, getObjectMetadataRequest, HttpMethodName.HEAD);
-		if (versionId != null)
-			request.addParameter("versionId", versionId);
+		if (getObjectMetadataRequest.getVersionId() != null)
+			request.addParameter("versionId",
+					getObjectMetadataRequest.getVersionId());
 
-		return invoke(request, new S3MetadataResponseHandler(), bucketName, key);
+		return invoke(request, new S3MetadataResponseHandler(), bucketName,
+				key);
 	}
 
 	/*
@@ -997,7 +1439,27 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 	 */
 	public boolean doesBucketExist(String bucketName)
 			throws AmazonClientException, AmazonServiceException {
+		ObjectMetadataCache cache = metadataCache;
+		if (cache != null) {
+			Boolean cached = cache.getBucketExists(bucketName);
+			if (cached != null)
+				return cached.booleanValue();
+		}
 
+		long generation = cache == null ? 0 : cache.getGeneration(bucketName,
+				null);
+		boolean exists = bucketExists(bucketName);
+		if (cache != null) {
+			cache.putBucketExists(bucketName, exists, generation);
+		}
+		return exists;
+	}
+
+	/**
+	 * Checks with Amazon S3 whether the specified bucket exists.
+	 */
+	private boolean bucketExists(String bucketName)
+			throws AmazonClientException, AmazonServiceException {
 		try {
 			listObjects(new ListObjectsRequest(bucketName, null, null, null, 0));
 
@@ -1096,6 +1558,80 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		assertParameterNotNull(getObjectRequest.getKey(),
 				"The key parameter must be specified when requesting an object");
 
+		if (clientOptions.isRequestCoalescing()
+				&& isCoalescable(getObjectRequest)) {
+			return getObjectCoalesced(getObjectRequest);
+		}
+		return fetchObject(getObjectRequest);
+	}
+
+	/**
+	 * Returns true if a GET request can share its result with identical
+	 * concurrent requests.
+	 */
+	private static boolean isCoalescable(GetObjectRequest request) {
+		return request.getRange() == null
+				&& request.getMatchingETagConstraints().isEmpty()
+				&& request.getNonmatchingETagConstraints().isEmpty()
+				&& request.getModifiedSinceConstraint() == null
+				&& request.getUnmodifiedSinceConstraint() == null
+				&& request.getResponseHeaders() == null
+				&& request.getProgressListener() == null
+				&& request.getRequestCredentials() == null;
+	}
+
+	/**
+	 * Gets an object, sharing the request with identical concurrent requests.
+	 * The content of objects no larger than the coalesced object size limit
+	 * is buffered and every caller gets its own stream over it; for larger
+	 * objects, the caller that sent the request gets its stream and the
+	 * others send their own requests.
+	 */
+	private S3Object getObjectCoalesced(final GetObjectRequest getObjectRequest) {
+		final long sizeLimit = clientOptions.getCoalescedObjectSizeLimit();
+		final S3Object[] unshared = new S3Object[1];
+		String coalescingKey = SingleFlight.key("GET",
+				getObjectRequest.getBucketName(), getObjectRequest.getKey(),
+				getObjectRequest.getVersionId());
+		BufferedObject buffered = inFlightReads.execute(coalescingKey,
+				new Callable<BufferedObject>() {
+					public BufferedObject call() {
+						S3Object s3Object = fetchObject(getObjectRequest);
+						if (s3Object == null)
+							return null;
+						ObjectMetadata metadata = s3Object.getObjectMetadata();
+						if (metadata.getRawMetadata().get(Headers.CONTENT_LENGTH) == null
+								|| metadata.getContentLength() > sizeLimit) {
+							unshared[0] = s3Object;
+							return BufferedObject.UNSHARED;
+						}
+						return new BufferedObject(s3Object);
+					}
+				});
+
+		if (buffered == null)
+			return null;
+		if (buffered == BufferedObject.UNSHARED) {
+			if (unshared[0] != null)
+				return unshared[0];
+			return fetchObject(getObjectRequest);
+		}
+
+		S3Object s3Object = new S3Object();
+		s3Object.setBucketName(getObjectRequest.getBucketName());
+		s3Object.setKey(getObjectRequest.getKey());
+		s3Object.setRedirectLocation(buffered.redirectLocation);
+		s3Object.setObjectMetadata(ServiceUtils
+				.copyObjectMetadata(buffered.metadata));
+		s3Object.setObjectContent(new S3ObjectInputStream(
+				new ByteArrayInputStream(buffered.content), null));
+		return s3Object;
+	}
+
+	/**
+	 * Sends a GET request for an object.
+	 */
+	private S3Object fetchObject(GetObjectRequest getObjectRequest) {
 		Request<GetObjectRequest> request = createRequest(
 				getObjectRequest.getBucketName(), getObjectRequest.getKey(),
 				getObjectRequest, HttpMethodName.GET);
@@ -1301,26 +1837,42 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 						file));
 			}
 
-			FileInputStream fileInputStream = null;
-			try {
-				fileInputStream = new FileInputStream(file);
-				byte[] md5Hash = Md5Utils.computeMD5Hash(fileInputStream);
-				metadata.setContentMD5(BinaryUtils.toBase64(md5Hash));
-			} catch (Exception e) {
-				throw new AmazonClientException(
-						"Unable to calculate MD5 hash: " + e.getMessage(), e);
-			} finally {
+			if (clientOptions.isMemoryMappedFileUploads()
+					&& MappedFileInputStream.canMap(file.length())) {
+				MappedFileInputStream mappedInput = mapFile(file, 0,
+						file.length());
 				try {
-					fileInputStream.close();
+					metadata.setContentMD5(BinaryUtils.toBase64(mappedInput
+							.computeMD5Hash()));
 				} catch (Exception e) {
+					throw new AmazonClientException(
+							"Unable to calculate MD5 hash: " + e.getMessage(),
+							e);
+				}
+				input = mappedInput;
+			} else {
+				FileInputStream fileInputStream = null;
+				try {
+					fileInputStream = new FileInputStream(file);
+					byte[] md5Hash = Md5Utils.computeMD5Hash(fileInputStream);
+					metadata.setContentMD5(BinaryUtils.toBase64(md5Hash));
+				} catch (Exception e) {
+					throw new AmazonClientException(
+							"Unable to calculate MD5 hash: " + e.getMessage(),
+							e);
+				} finally {
+					try {
+						fileInputStream.close();
+					} catch (Exception e) {
+					}
 				}
-			}
 
-			try {
-				input = new RepeatableFileInputStream(file);
-			} catch (FileNotFoundException fnfe) {
-				throw new AmazonClientException(
-						"Unable to find file to upload", fnfe);
+				try {
+					input = new RepeatableFileChannelInputStream(file);
+				} catch (FileNotFoundException fnfe) {
+					throw new AmazonClientException(
+							"Unable to find file to upload", fnfe);
+				}
 			}
 		}
 
@@ -1348,18 +1900,32 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		}
 
 		// Use internal interface to differentiate 0 from unset.
-		if (metadata.getRawMetadata().get(Headers.CONTENT_LENGTH) == null) {
+		if (metadata.getRawMetadata().get(Headers.CONTENT_LENGTH) == null
+				&& input != null) {
 			/*
-			 * There's nothing we can do except for let the HTTP client buffer
-			 * the input stream contents if the caller doesn't tell us how much
-			 * data to expect in a stream since we have to explicitly tell
-			 * Amazon S3 how much we're sending before we start sending any of
-			 * it.
+			 * We have to explicitly tell Amazon S3 how much we're sending
+			 * before we start sending any of it, so if the caller doesn't tell
+			 * us how much data to expect, we drain the stream first. Only the
+			 * first bytes are kept in memory and the rest is spilled to a
+			 * temporary file, which also keeps the upload retryable.
 			 */
-			Log.w(TAG,
-					"No content length specified for stream data.  "
-							+ "Stream contents will be buffered in memory and could result in "
-							+ "out of memory errors.");
+			int memoryThreshold = getIntSystemProperty(
+					"com.amazonaws.sdk.s3.streamMemoryThreshold",
+					Constants.DEFAULT_STREAM_MEMORY_THRESHOLD);
+
+			Log.w(TAG, "No content length specified for stream data.  "
+					+ "Stream contents will be buffered in memory up to "
+					+ memoryThreshold + " bytes and spilled to disk after that.");
+
+			try {
+				SpillingRepeatableInputStream bufferedInput = SpillingRepeatableInputStream
+						.buffer(input, memoryThreshold);
+				metadata.setContentLength(bufferedInput.getLength());
+				input = bufferedInput;
+			} catch (IOException e) {
+				throw new AmazonClientException(
+						"Unable to buffer stream data: " + e.getMessage(), e);
+			}
 		}
 
 		if (progressListener != null) {
@@ -1369,18 +1935,9 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		}
 
 		if (!input.markSupported()) {
-			int streamBufferSize = Constants.DEFAULT_STREAM_BUFFER_SIZE;
-			String bufferSizeOverride = System
-					.getProperty("com.amazonaws.sdk.s3.defaultStreamBufferSize");
-			if (bufferSizeOverride != null) {
-				try {
-					streamBufferSize = Integer.parseInt(bufferSizeOverride);
-				} catch (Exception e) {
-					Log.w(TAG,
-							"Unable to parse buffer size override from value: "
-									+ bufferSizeOverride);
-				}
-			}
+			int streamBufferSize = getIntSystemProperty(
+					"com.amazonaws.sdk.s3.defaultStreamBufferSize",
+					Constants.DEFAULT_STREAM_BUFFER_SIZE);
 
 			input = new RepeatableInputStream(input, streamBufferSize);
 		}
@@ -1821,9 +2378,20 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			throw new AmazonClientException("Couldn't compute md5 sum", e);
 		}
 
-		DeleteObjectsResponse response = invoke(request,
-				new Unmarshallers.DeleteObjectsResultUnmarshaller(),
-				deleteObjectsRequest.getBucketName(), null);
+		DeleteObjectsResponse response;
+		try {
+			response = invoke(request,
+					new Unmarshallers.DeleteObjectsResultUnmarshaller(),
+					deleteObjectsRequest.getBucketName(), null);
+		} finally {
+			ObjectMetadataCache cache = metadataCache;
+			if (cache != null) {
+				for (KeyVersion keyVersion : deleteObjectsRequest.getKeys()) {
+					cache.invalidateObject(deleteObjectsRequest.getBucketName(),
+							keyVersion.getKey(), keyVersion.getVersion());
+				}
+			}
+		}
 
 		/*
 		 * If the result was only partially successful, throw an exception
@@ -2836,8 +3404,10 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			request.addParameter("prefix",
 					listMultipartUploadsRequest.getPrefix());
 
-		return invoke(request,
-				new Unmarshallers.ListMultipartUploadsResultUnmarshaller(),
+		Unmarshaller<MultipartUploadListing, InputStream> unmarshaller = clientOptions
+				.isPullParserListings() ? new Unmarshallers.PullListMultipartUploadsResultUnmarshaller()
+				: new Unmarshallers.ListMultipartUploadsResultUnmarshaller();
+		return invoke(request, unmarshaller,
 				listMultipartUploadsRequest.getBucketName(), null);
 	}
 
@@ -2872,8 +3442,11 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			request.addParameter("part-number-marker", listPartsRequest
 					.getPartNumberMarker().toString());
 
-		return invoke(request, new Unmarshallers.ListPartsResultUnmarshaller(),
-				listPartsRequest.getBucketName(), listPartsRequest.getKey());
+		Unmarshaller<PartListing, InputStream> unmarshaller = clientOptions
+				.isPullParserListings() ? new Unmarshallers.PullListPartsResultUnmarshaller()
+				: new Unmarshallers.ListPartsResultUnmarshaller();
+		return invoke(request, unmarshaller, listPartsRequest.getBucketName(),
+				listPartsRequest.getKey());
 	}
 
 	/*
@@ -2910,20 +3483,34 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		request.addParameter("uploadId", uploadId);
 		request.addParameter("partNumber", Integer.toString(partNumber));
 
-		if (uploadPartRequest.getMd5Digest() != null)
-			request.addHeader(Headers.CONTENT_MD5,
-					uploadPartRequest.getMd5Digest());
-
 		request.addHeader(Headers.CONTENT_LENGTH, Long.toString(partSize));
 
+		String md5Digest = uploadPartRequest.getMd5Digest();
 		InputStream inputStream = null;
 		if (uploadPartRequest.getInputStream() != null) {
 			inputStream = uploadPartRequest.getInputStream();
+		} else if (uploadPartRequest.getFile() != null
+				&& clientOptions.isMemoryMappedFileUploads()
+				&& MappedFileInputStream.canMap(partSize)) {
+			MappedFileInputStream mappedInput = mapFile(
+					uploadPartRequest.getFile(),
+					uploadPartRequest.getFileOffset(), partSize);
+			if (md5Digest == null) {
+				try {
+					md5Digest = BinaryUtils.toBase64(mappedInput
+							.computeMD5Hash());
+				} catch (NoSuchAlgorithmException e) {
+					Log.w(TAG,
+							"No MD5 digest algorithm available.  Unable to calculate "
+									+ "checksum and verify data integrity.", e);
+				}
+			}
+			inputStream = mappedInput;
 		} else if (uploadPartRequest.getFile() != null) {
 			try {
-				inputStream = new InputSubstream(new RepeatableFileInputStream(
-						uploadPartRequest.getFile()),
-						uploadPartRequest.getFileOffset(), partSize, true);
+				inputStream = new RepeatableFileChannelInputStream(
+						uploadPartRequest.getFile(),
+						uploadPartRequest.getFileOffset(), partSize);
 			} catch (FileNotFoundException e) {
 				throw new IllegalArgumentException(
 						"The specified file doesn't exist", e);
@@ -2933,8 +3520,11 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 					"A File or InputStream must be specified when uploading part");
 		}
 
+		if (md5Digest != null)
+			request.addHeader(Headers.CONTENT_MD5, md5Digest);
+
 		MD5DigestCalculatingInputStream md5DigestStream = null;
-		if (uploadPartRequest.getMd5Digest() == null) {
+		if (md5Digest == null) {
 			/*
 			 * If the user hasn't set the content MD5, then we don't want to
 			 * buffer the whole stream in memory just to calculate it. Instead,
@@ -3095,6 +3685,57 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 			throw new IllegalArgumentException(errorMessage);
 	}
 
+	/**
+	 * Memory-maps the specified region of a file being uploaded, wrapping any
+	 * errors as an AmazonClientException.
+	 * 
+	 * @param file
+	 *            The file being uploaded.
+	 * @param offset
+	 *            The offset of the region to upload.
+	 * @param length
+	 *            The length of the region to upload.
+	 */
+	private static MappedFileInputStream mapFile(File file, long offset,
+			long length) {
+		try {
+			return new MappedFileInputStream(file, offset, length);
+		} catch (FileNotFoundException fnfe) {
+			throw new AmazonClientException("Unable to find file to upload",
+					fnfe);
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to memory-map file: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the integer value of the specified system property, or the
+	 * specified default if the property isn't set, can't be parsed or is
+	 * negative.
+	 * 
+	 * @param name
+	 *            The name of the system property.
+	 * @param defaultValue
+	 *            The value to return if the property isn't usable.
+	 */
+	private static int getIntSystemProperty(String name, int defaultValue) {
+		String override = System.getProperty(name);
+		if (override != null) {
+			int value = -1;
+			try {
+				value = Integer.parseInt(override);
+			} catch (NumberFormatException e) {
+			}
+			if (value >= 0)
+				return value;
+			Log.w(TAG, "Ignoring " + name
+					+ " override, which isn't a non-negative integer: "
+					+ override);
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Fires a progress event with the specified event type to the specified
 	 * listener.
@@ -3636,28 +4277,47 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 				Constants.S3_SERVICE_NAME);
 		request.setHttpMethod(httpMethod);
 
-		if (!clientOptions.isPathStyleAccess()
-				&& bucketNameUtils.isDNSBucketName(bucketName)
-				&& !validIP(endpoint.getHost())) {
-			request.setEndpoint(convertToVirtualHostEndpoint(bucketName));
-			request.setResourcePath(ServiceUtils.urlEncode(key));
-		} else {
+		if (bucketName == null) {
 			request.setEndpoint(endpoint);
+			return request;
+		}
 
-			if (bucketName != null) {
-				/*
-				 * We don't URL encode the bucket name, since it shouldn't
-				 * contain any characters that need to be encoded based on
-				 * Amazon S3's naming restrictions.
-				 */
-				request.setResourcePath(bucketName + "/"
-						+ (key != null ? ServiceUtils.urlEncode(key) : ""));
-			}
+		URI clientEndpoint = endpoint;
+		BucketEndpointCache.Resolution resolution = bucketEndpoints.get(
+				clientEndpoint, bucketName);
+		if (resolution == null) {
+			boolean virtualHost = isVirtualHostBucket(bucketName);
+			resolution = bucketEndpoints.putComputed(clientEndpoint,
+					bucketName, virtualHost ? convertToVirtualHostEndpoint(
+							bucketName) : clientEndpoint, virtualHost);
+		}
+
+		request.setEndpoint(resolution.getEndpoint());
+		if (resolution.isVirtualHost()) {
+			request.setResourcePath(ServiceUtils.urlEncode(key));
+		} else {
+			/*
+			 * We don't URL encode the bucket name, since it shouldn't contain
+			 * any characters that need to be encoded based on Amazon S3's
+			 * naming restrictions.
+			 */
+			request.setResourcePath(bucketName + "/"
+					+ (key != null ? ServiceUtils.urlEncode(key) : ""));
 		}
 
 		return request;
 	}
 
+	/**
+	 * Returns true if requests for the specified bucket should use virtual
+	 * host style addressing with this client's options and endpoint.
+	 */
+	private boolean isVirtualHostBucket(String bucketName) {
+		return !clientOptions.isPathStyleAccess()
+				&& bucketNameUtils.isDNSBucketName(bucketName)
+				&& !validIP(endpoint.getHost());
+	}
+
 	private boolean validIP(String IP) {
 		if (IP == null) {
 			return false;
@@ -3719,8 +4379,118 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
 		executionContext.setSigner(createSigner(request, bucket, key));
 		executionContext.setCredentials(credentials);
 
-		return client.execute(request, responseHandler, errorResponseHandler,
-				executionContext);
+		URI clientEndpoint = endpoint;
+		try {
+			X result = client.execute(request, responseHandler,
+					errorResponseHandler, executionContext);
+			if (bucket != null
+					&& executionContext.getRedirectLocation() != null) {
+				bucketEndpoints.putRedirect(clientEndpoint, bucket,
+						executionContext.getRedirectLocation());
+			}
+			return result;
+		} catch (AmazonServiceException ase) {
+			if (bucket != null
+					&& (ase.getStatusCode() == 301 || "NoSuchBucket"
+							.equals(ase.getErrorCode()))) {
+				bucketEndpoints.invalidate(bucket);
+			}
+			throw ase;
+		} catch (AmazonClientException ace) {
+			// The endpoint may be unreachable; resolve it again next time.
+			if (bucket != null) {
+				bucketEndpoints.invalidate(bucket);
+			}
+			throw ace;
+		} finally {
+			if (bucket != null && key == null
+					&& request.getHttpMethod() == HttpMethodName.DELETE
+					&& request.getParameters().isEmpty()) {
+				bucketEndpoints.invalidate(bucket);
+			}
+			invalidateMetadataCache(request, bucket, key);
+		}
+	}
+
+	/**
+	 * Drops any cached metadata made stale by a request that writes to or
+	 * deletes an object or bucket. This runs whether or not the request
+	 * succeeded, since a failed request may still have taken effect.
+	 */
+	private void invalidateMetadataCache(Request<?> request, String bucket,
+			String key) {
+		ObjectMetadataCache cache = metadataCache;
+		if (cache == null || bucket == null)
+			return;
+
+		HttpMethodName method = request.getHttpMethod();
+		if (method == HttpMethodName.GET || method == HttpMethodName.HEAD)
+			return;
+
+		if (key != null) {
+			cache.invalidateObject(bucket, key,
+					request.getParameters().get("versionId"));
+		} else if ((method == HttpMethodName.PUT || method == HttpMethodName.DELETE)
+				&& request.getParameters().isEmpty()) {
+			// A plain PUT or DELETE on a bucket creates or deletes it.
+			cache.invalidateBucket(bucket);
+		}
+	}
+
+	/**
+	 * The content and metadata of an object, read into memory so they can be
+	 * shared between coalesced callers.
+	 */
+	private static final class BufferedObject {
+		/** Marks an object too large to share. */
+		static final BufferedObject UNSHARED = new BufferedObject();
+
+		final ObjectMetadata metadata;
+		final String redirectLocation;
+		final byte[] content;
+
+		private BufferedObject() {
+			this.metadata = null;
+			this.redirectLocation = null;
+			this.content = null;
+		}
+
+		BufferedObject(S3Object s3Object) {
+			S3ObjectInputStream in = s3Object.getObjectContent();
+			byte[] buffer = new byte[(int) s3Object.getObjectMetadata()
+					.getContentLength()];
+			try {
+				int length = 0;
+				int count;
+				while (length < buffer.length
+						&& (count = in.read(buffer, length, buffer.length
+								- length)) != -1) {
+					length += count;
+				}
+				if (length < buffer.length)
+					throw new IOException("Expected " + buffer.length
+							+ " bytes but received " + length);
+				// read to the end so the content's checksum is validated
+				if (in.read() != -1)
+					throw new IOException("Received more than " + buffer.length
+							+ " bytes");
+			} catch (IOException e) {
+				try {
+					in.abort();
+				} catch (IOException abortException) {
+				}
+				throw new AmazonClientException("Unable to read object "
+						+ s3Object.getKey() + ": " + e.getMessage(), e);
+			} finally {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+			this.metadata = s3Object.getObjectMetadata();
+			this.redirectLocation = s3Object.getRedirectLocation();
+			this.content = buffer;
+		}
 	}
 
 }
\ No newline at end of file
@@ -26,10 +26,59 @@ public class S3ClientOptions {
     /** Flag for use of path-style access */
     private boolean pathStyleAccess = DEFAULT_PATH_STYLE_ACCESS;
 
+    /** The default setting for memory-mapping files being uploaded */
+    public static final boolean DEFAULT_MEMORY_MAPPED_FILE_UPLOADS = false;
+
+    /** Flag for memory-mapping files being uploaded */
+    private boolean memoryMappedFileUploads = DEFAULT_MEMORY_MAPPED_FILE_UPLOADS;
+
+    /** The default maximum number of cached metadata entries; zero disables the cache */
+    public static final int DEFAULT_METADATA_CACHE_SIZE = 0;
+
+    /** The default time, in milliseconds, cached metadata is kept */
+    public static final long DEFAULT_METADATA_CACHE_TIME_TO_LIVE = 60 * 1000;
+
+    /** The default time, in milliseconds, cached "not found" results are kept */
+    public static final long DEFAULT_METADATA_CACHE_NEGATIVE_TIME_TO_LIVE = 10 * 1000;
+
+    /** Maximum number of cached metadata entries */
+    private int metadataCacheSize = DEFAULT_METADATA_CACHE_SIZE;
+
+    /** Time to live of cached metadata */
+    private long metadataCacheTimeToLive = DEFAULT_METADATA_CACHE_TIME_TO_LIVE;
+
+    /** Time to live of cached "not found" results */
+    private long metadataCacheNegativeTimeToLive = DEFAULT_METADATA_CACHE_NEGATIVE_TIME_TO_LIVE;
+
+    /** The default setting for coalescing concurrent identical reads */
+    public static final boolean DEFAULT_REQUEST_COALESCING = false;
+
+    /** The default size of the largest object whose content is shared by coalesced reads */
+    public static final long DEFAULT_COALESCED_OBJECT_SIZE_LIMIT = 1024 * 1024;
+
+    /** Flag for coalescing concurrent identical reads */
+    private boolean requestCoalescing = DEFAULT_REQUEST_COALESCING;
+
+    /** Size of the largest object whose content is shared by coalesced reads */
+    private long coalescedObjectSizeLimit = DEFAULT_COALESCED_OBJECT_SIZE_LIMIT;
+
+    /** The default setting for parsing listings with a pull parser */
+    public static final boolean DEFAULT_PULL_PARSER_LISTINGS = false;
+
+    /** Flag for parsing listings with a pull parser */
+    private boolean pullParserListings = DEFAULT_PULL_PARSER_LISTINGS;
+
     public S3ClientOptions() {}
 
     public S3ClientOptions( S3ClientOptions other ) {
         this.pathStyleAccess = other.pathStyleAccess;
+        this.memoryMappedFileUploads = other.memoryMappedFileUploads;
+        this.metadataCacheSize = other.metadataCacheSize;
+        this.metadataCacheTimeToLive = other.metadataCacheTimeToLive;
+        this.metadataCacheNegativeTimeToLive = other.metadataCacheNegativeTimeToLive;
+        this.requestCoalescing = other.requestCoalescing;
+        this.coalescedObjectSizeLimit = other.coalescedObjectSizeLimit;
+        this.pullParserListings = other.pullParserListings;
     }
 
     /**
@@ -104,4 +153,344 @@ public class S3ClientOptions {
       return this;
     }
 
-}
\ No newline at end of file
+    /**
+     * <p>
+     * Returns whether the client memory-maps local files uploaded through
+     * <code>PutObjectRequest</code> and <code>UploadPartRequest</code>.
+     * </p>
+     * <p>
+     * When enabled, the file (or part of the file) being uploaded is mapped
+     * into memory, its MD5 is computed over the mapping, and the request body
+     * is read from it. This avoids copying the data into stream buffers when
+     * it's read and hashed, which matters when many large files are uploaded
+     * at once. The body is still copied through a heap buffer as it's
+     * written to the connection, and when a progress listener is set, it's
+     * written through the listener's stream in small chunks like any other
+     * content. Regions too large to map in one piece are read through a file
+     * channel instead.
+     * </p>
+     * @return True if the client should memory-map uploaded files
+     */
+    public boolean isMemoryMappedFileUploads() {
+        return memoryMappedFileUploads;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client memory-maps local files uploaded through
+     * <code>PutObjectRequest</code> and <code>UploadPartRequest</code>.
+     * </p>
+     * @param memoryMappedFileUploads
+     *            True to memory-map uploaded files.
+     *
+     * @see #isMemoryMappedFileUploads()
+     */
+    public void setMemoryMappedFileUploads(boolean memoryMappedFileUploads) {
+      this.memoryMappedFileUploads = memoryMappedFileUploads;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client memory-maps local files uploaded through
+     * <code>PutObjectRequest</code> and <code>UploadPartRequest</code>.
+     * </p>
+     * @param memoryMappedFileUploads
+     *            True to memory-map uploaded files.
+     *
+     * @return The updated S3ClientOptions object with the new memory-mapping
+     *         setting.
+     *
+     * @see #isMemoryMappedFileUploads()
+     */
+    public S3ClientOptions withMemoryMappedFileUploads(boolean memoryMappedFileUploads) {
+      setMemoryMappedFileUploads(memoryMappedFileUploads);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns the maximum number of entries in the client's metadata cache.
+     * </p>
+     * <p>
+     * When this is greater than zero, the client caches the results of
+     * <code>getObjectMetadata</code> and <code>doesBucketExist</code>,
+     * including "not found" results, and answers repeated calls without a
+     * request. Entries are invalidated by this client's own writes and
+     * deletes, but not by changes made through other clients; use the time to
+     * live settings to bound how stale a cached result can be. The default is
+     * zero, which disables the cache.
+     * </p>
+     * @return The maximum number of cached metadata entries
+     */
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * <p>
+     * Sets the maximum number of entries in the client's metadata cache. Zero
+     * disables the cache.
+     * </p>
+     * @param metadataCacheSize
+     *            The maximum number of cached metadata entries.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public void setMetadataCacheSize(int metadataCacheSize) {
+      this.metadataCacheSize = metadataCacheSize;
+    }
+
+    /**
+     * <p>
+     * Sets the maximum number of entries in the client's metadata cache. Zero
+     * disables the cache.
+     * </p>
+     * @param metadataCacheSize
+     *            The maximum number of cached metadata entries.
+     *
+     * @return The updated S3ClientOptions object with the new metadata cache
+     *         size.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public S3ClientOptions withMetadataCacheSize(int metadataCacheSize) {
+      setMetadataCacheSize(metadataCacheSize);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns how long, in milliseconds, object metadata and existing buckets
+     * are kept in the client's metadata cache.
+     * </p>
+     * @return The time to live of cached metadata
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public long getMetadataCacheTimeToLive() {
+        return metadataCacheTimeToLive;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, object metadata and existing buckets are
+     * kept in the client's metadata cache.
+     * </p>
+     * @param metadataCacheTimeToLive
+     *            The time to live of cached metadata.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public void setMetadataCacheTimeToLive(long metadataCacheTimeToLive) {
+      this.metadataCacheTimeToLive = metadataCacheTimeToLive;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, object metadata and existing buckets are
+     * kept in the client's metadata cache.
+     * </p>
+     * @param metadataCacheTimeToLive
+     *            The time to live of cached metadata.
+     *
+     * @return The updated S3ClientOptions object with the new time to live.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public S3ClientOptions withMetadataCacheTimeToLive(long metadataCacheTimeToLive) {
+      setMetadataCacheTimeToLive(metadataCacheTimeToLive);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns how long, in milliseconds, "not found" results for objects and
+     * buckets are kept in the client's metadata cache.
+     * </p>
+     * @return The time to live of cached "not found" results
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public long getMetadataCacheNegativeTimeToLive() {
+        return metadataCacheNegativeTimeToLive;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, "not found" results for objects and
+     * buckets are kept in the client's metadata cache.
+     * </p>
+     * @param metadataCacheNegativeTimeToLive
+     *            The time to live of cached "not found" results.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public void setMetadataCacheNegativeTimeToLive(long metadataCacheNegativeTimeToLive) {
+      this.metadataCacheNegativeTimeToLive = metadataCacheNegativeTimeToLive;
+    }
+
+    /**
+     * <p>
+     * Sets how long, in milliseconds, "not found" results for objects and
+     * buckets are kept in the client's metadata cache.
+     * </p>
+     * @param metadataCacheNegativeTimeToLive
+     *            The time to live of cached "not found" results.
+     *
+     * @return The updated S3ClientOptions object with the new time to live.
+     *
+     * @see #getMetadataCacheSize()
+     */
+    public S3ClientOptions withMetadataCacheNegativeTimeToLive(long metadataCacheNegativeTimeToLive) {
+      setMetadataCacheNegativeTimeToLive(metadataCacheNegativeTimeToLive);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns whether the client coalesces concurrent identical reads.
+     * </p>
+     * <p>
+     * When enabled, concurrent calls to <code>getObjectMetadata</code>,
+     * <code>listObjects</code>, <code>getBucketLocation</code> and
+     * <code>getObject</code> with identical parameters share a single request
+     * and its result, instead of each sending their own. This prevents many
+     * threads from stampeding the same hot object, for example when a cached
+     * copy of it expires. Object content is shared by buffering it in memory,
+     * so only objects no larger than the coalesced object size limit are
+     * shared; callers for larger objects send their own requests. Requests
+     * with their own credentials, or <code>getObject</code> requests with a
+     * range, constraints, response header overrides or a progress listener,
+     * are never coalesced. The default is false.
+     * </p>
+     * @return True if the client coalesces concurrent identical reads
+     */
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client coalesces concurrent identical reads.
+     * </p>
+     * @param requestCoalescing
+     *            True to coalesce concurrent identical reads.
+     *
+     * @see #isRequestCoalescing()
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+      this.requestCoalescing = requestCoalescing;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client coalesces concurrent identical reads.
+     * </p>
+     * @param requestCoalescing
+     *            True to coalesce concurrent identical reads.
+     *
+     * @return The updated S3ClientOptions object with the new coalescing
+     *         setting.
+     *
+     * @see #isRequestCoalescing()
+     */
+    public S3ClientOptions withRequestCoalescing(boolean requestCoalescing) {
+      setRequestCoalescing(requestCoalescing);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns the size, in bytes, of the largest object whose content is
+     * buffered and shared between coalesced <code>getObject</code> calls.
+     * </p>
+     * @return The size of the largest shared object
+     *
+     * @see #isRequestCoalescing()
+     */
+    public long getCoalescedObjectSizeLimit() {
+        return coalescedObjectSizeLimit;
+    }
+
+    /**
+     * <p>
+     * Sets the size, in bytes, of the largest object whose content is
+     * buffered and shared between coalesced <code>getObject</code> calls.
+     * </p>
+     * @param coalescedObjectSizeLimit
+     *            The size of the largest shared object.
+     *
+     * @see #isRequestCoalescing()
+     */
+    public void setCoalescedObjectSizeLimit(long coalescedObjectSizeLimit) {
+      this.coalescedObjectSizeLimit = coalescedObjectSizeLimit;
+    }
+
+    /**
+     * <p>
+     * Sets the size, in bytes, of the largest object whose content is
+     * buffered and shared between coalesced <code>getObject</code> calls.
+     * </p>
+     * @param coalescedObjectSizeLimit
+     *            The size of the largest shared object.
+     *
+     * @return The updated S3ClientOptions object with the new size limit.
+     *
+     * @see #isRequestCoalescing()
+     */
+    public S3ClientOptions withCoalescedObjectSizeLimit(long coalescedObjectSizeLimit) {
+      setCoalescedObjectSizeLimit(coalescedObjectSizeLimit);
+      return this;
+    }
+
+    /**
+     * <p>
+     * Returns whether the client parses listing responses with an XML pull
+     * parser.
+     * </p>
+     * <p>
+     * When enabled, the responses to <code>listObjects</code>,
+     * <code>listVersions</code>, <code>listMultipartUploads</code> and
+     * <code>listParts</code> are read with a pull parser that handles
+     * elements by number, reuses its text buffer and parses dates without
+     * locking, instead of the SAX handlers used for other responses. The
+     * resulting listings are the same either way. The default is false.
+     * </p>
+     * @return True if the client parses listings with a pull parser
+     */
+    public boolean isPullParserListings() {
+        return pullParserListings;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client parses listing responses with an XML pull
+     * parser.
+     * </p>
+     * @param pullParserListings
+     *            True to parse listings with a pull parser.
+     *
+     * @see #isPullParserListings()
+     */
+    public void setPullParserListings(boolean pullParserListings) {
+      this.pullParserListings = pullParserListings;
+    }
+
+    /**
+     * <p>
+     * Configures whether the client parses listing responses with an XML pull
+     * parser.
+     * </p>
+     * @param pullParserListings
+     *            True to parse listings with a pull parser.
+     *
+     * @return The updated S3ClientOptions object with the new parser setting.
+     *
+     * @see #isPullParserListings()
+     */
+    public S3ClientOptions withPullParserListings(boolean pullParserListings) {
+      setPullParserListings(pullParserListings);
+      return this;
+    }
+
+}
@@ -0,0 +1,549 @@
+package com.amazon.s3.services.cache;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.model.GetObjectMetadataRequest;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * A cache of fixed-size blocks of object content, for readers that
+ * repeatedly read small ranges of the same large objects, such as index
+ * files and the footers of columnar files.
+ * <p>
+ * Ranges are read in whole blocks. Blocks are keyed by bucket, key, ETag and
+ * block index, so a new version of an object never returns stale blocks, and
+ * overlapping or adjacent reads share the blocks they have in common. Blocks
+ * missing from the cache are fetched with one ranged GET per run of
+ * consecutive missing blocks, pinned to the ETag with an
+ * <code>If-Match</code> constraint.
+ * <p>
+ * Blocks are held in a size-bounded memory tier and written through to a
+ * size-bounded directory on disk; either tier can be disabled by giving it a
+ * size of zero. Both tiers evict the least recently used blocks first, and
+ * blocks read from disk are brought back into memory. The index is kept in
+ * memory, so the cache starts out empty in each process.
+ * <p>
+ * Reading a range needs the object's ETag and length. Callers that don't
+ * already have them pay for a HEAD request per read; enabling the client's
+ * metadata cache with {@link com.amazon.s3.services.S3ClientOptions#setMetadataCacheSize(int)}
+ * avoids most of those.
+ */
+public class S3BlockCache {
+	private static final String TAG = "###S3BlockCache###";
+
+	/** The default size of each block. */
+	public static final int DEFAULT_BLOCK_SIZE = 64 * Constants.KB;
+
+	/** Prefix of the files this cache creates in its directory. */
+	private static final String FILE_PREFIX = "s3block-";
+
+	private final AmazonS3 s3;
+	private final File directory;
+	private final int blockSize;
+	private final long maxDiskSize;
+	private final long maxMemorySize;
+
+	/** Cached blocks, in least recently used order; guarded by this. */
+	private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<String, Block>(
+			16, 0.75f, true);
+	private long diskSize = 0;
+	private long memorySize = 0;
+
+	private long hitCount = 0;
+	private long diskHitCount = 0;
+	private long missCount = 0;
+	private long requestCount = 0;
+
+	/**
+	 * Creates a new cache with the default block size.
+	 *
+	 * @param s3
+	 *            The client used to fetch blocks.
+	 * @param directory
+	 *            The directory in which blocks are stored, or null if the
+	 *            disk tier isn't used. Files left over from a previous cache
+	 *            in the same directory are removed.
+	 * @param maxDiskSize
+	 *            The maximum number of bytes stored on disk.
+	 * @param maxMemorySize
+	 *            The maximum number of bytes held in memory.
+	 */
+	public S3BlockCache(AmazonS3 s3, File directory, long maxDiskSize,
+			long maxMemorySize) {
+		this(s3, directory, maxDiskSize, maxMemorySize, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param s3
+	 *            The client used to fetch blocks.
+	 * @param directory
+	 *            The directory in which blocks are stored, or null if the
+	 *            disk tier isn't used. Files left over from a previous cache
+	 *            in the same directory are removed.
+	 * @param maxDiskSize
+	 *            The maximum number of bytes stored on disk.
+	 * @param maxMemorySize
+	 *            The maximum number of bytes held in memory.
+	 * @param blockSize
+	 *            The size of each block.
+	 */
+	public S3BlockCache(AmazonS3 s3, File directory, long maxDiskSize,
+			long maxMemorySize, int blockSize) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (maxDiskSize < 0 || maxMemorySize < 0)
+			throw new IllegalArgumentException(
+					"Cache sizes must not be negative");
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Block size must be positive");
+		if (directory == null && maxDiskSize > 0)
+			throw new IllegalArgumentException(
+					"Directory cannot be null when the disk tier is used");
+
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new AmazonClientException(
+						"Unable to create cache directory " + directory);
+			}
+			File[] leftovers = directory.listFiles();
+			if (leftovers != null) {
+				for (File leftover : leftovers) {
+					if (leftover.getName().startsWith(FILE_PREFIX)) {
+						leftover.delete();
+					}
+				}
+			}
+		}
+
+		this.s3 = s3;
+		this.directory = directory;
+		this.maxDiskSize = directory == null ? 0 : maxDiskSize;
+		this.maxMemorySize = maxMemorySize;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Returns the size of each block.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Reads the range of the object specified in the request, looking up the
+	 * object's ETag and length with a HEAD request. If the request has no
+	 * range, the whole object is read. Only the bucket, key, version ID, range
+	 * and request credentials of the request are used.
+	 *
+	 * @return The bytes of the range. Ranges extending beyond the end of the
+	 *         object are truncated.
+	 */
+	public byte[] getRange(GetObjectRequest request)
+			throws AmazonClientException, AmazonServiceException {
+		GetObjectMetadataRequest metadataRequest = new GetObjectMetadataRequest(
+				request.getBucketName(), request.getKey(),
+				request.getVersionId());
+		metadataRequest.setRequestCredentials(request.getRequestCredentials());
+		return getRange(request, s3.getObjectMetadata(metadataRequest));
+	}
+
+	/**
+	 * Reads the range of the object specified in the request. If the request
+	 * has no range, the whole object is read.
+	 *
+	 * @param request
+	 *            The object and range to read. Only the bucket, key, version
+	 *            ID, range and request credentials of the request are used.
+	 * @param metadata
+	 *            The current metadata of the object, which must include its
+	 *            ETag and length.
+	 *
+	 * @return The bytes of the range. Ranges extending beyond the end of the
+	 *         object are truncated.
+	 *
+	 * @throws AmazonClientException
+	 *             If the object no longer has the ETag in the metadata.
+	 */
+	public byte[] getRange(GetObjectRequest request, ObjectMetadata metadata)
+			throws AmazonClientException, AmazonServiceException {
+		String eTag = metadata.getETag();
+		if (eTag == null)
+			throw new IllegalArgumentException("Metadata must include an ETag");
+
+		long length = metadata.getContentLength();
+		long[] range = request.getRange();
+		long start = range == null ? 0 : range[0];
+		long end = range == null ? length - 1 : Math.min(range[1], length - 1);
+		if (start > end)
+			return new byte[0];
+		if (end - start + 1 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Range is too large to read: "
+					+ (end - start + 1) + " bytes");
+
+		String prefix = blockKeyPrefix(request.getBucketName(),
+				request.getKey(), eTag);
+		byte[] result = new byte[(int) (end - start + 1)];
+		long firstBlock = start / blockSize;
+		long lastBlock = end / blockSize;
+
+		long missingFrom = -1;
+		for (long index = firstBlock; index <= lastBlock; index++) {
+			byte[] block = lookup(prefix + index);
+			if (block != null) {
+				if (missingFrom != -1) {
+					fetch(request, eTag, length, prefix, missingFrom,
+							index - 1, result, start);
+					missingFrom = -1;
+				}
+				copyBlock(block, index, result, start);
+			} else if (missingFrom == -1) {
+				missingFrom = index;
+			}
+		}
+		if (missingFrom != -1) {
+			fetch(request, eTag, length, prefix, missingFrom, lastBlock,
+					result, start);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes any cached blocks of the specified object, for example after
+	 * overwriting or deleting it. Blocks of old versions are otherwise only
+	 * evicted once they are no longer used.
+	 */
+	public synchronized void invalidate(String bucketName, String key) {
+		String prefix = objectKeyPrefix(bucketName, key);
+		Iterator<Map.Entry<String, Block>> it = blocks.entrySet()
+				.iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Block> next = it.next();
+			if (next.getKey().startsWith(prefix)) {
+				discard(next.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached blocks.
+	 */
+	public synchronized void clear() {
+		for (Block block : blocks.values()) {
+			discard(block);
+		}
+		blocks.clear();
+	}
+
+	/** Returns the number of blocks served from memory. */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns the number of blocks served from disk. */
+	public synchronized long getDiskHitCount() {
+		return diskHitCount;
+	}
+
+	/** Returns the number of blocks fetched from Amazon S3. */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/** Returns the number of ranged GETs issued to fetch blocks. */
+	public synchronized long getRequestCount() {
+		return requestCount;
+	}
+
+	/** Returns the number of bytes currently stored on disk. */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	/** Returns the number of bytes currently held in memory. */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Returns the prefix shared by the keys of all cached blocks of an
+	 * object, whatever its ETag. The key's length keeps one key from being a
+	 * prefix of another's blocks.
+	 */
+	private static String objectKeyPrefix(String bucketName, String key) {
+		return bucketName + "/" + key.length() + "/" + key + "/";
+	}
+
+	private static String blockKeyPrefix(String bucketName, String key,
+			String eTag) {
+		return objectKeyPrefix(bucketName, key) + eTag + "/";
+	}
+
+	/**
+	 * Returns the content of a cached block, or null if it isn't cached.
+	 */
+	private byte[] lookup(String blockKey) {
+		File file;
+		synchronized (this) {
+			Block block = blocks.get(blockKey);
+			if (block == null)
+				return null;
+			if (block.content != null) {
+				hitCount++;
+				return block.content;
+			}
+			file = block.file;
+		}
+
+		byte[] content = readFile(file);
+		synchronized (this) {
+			Block block = blocks.get(blockKey);
+			if (content == null) {
+				if (block != null && block.file == file) {
+					blocks.remove(blockKey);
+					discard(block);
+				}
+				return null;
+			}
+			diskHitCount++;
+			if (block != null && block.content == null
+					&& content.length <= maxMemorySize) {
+				block.content = content;
+				memorySize += content.length;
+				evict();
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Fetches a run of consecutive blocks with one ranged GET, caching them
+	 * and copying their bytes into the result.
+	 */
+	private void fetch(GetObjectRequest request, String eTag, long length,
+			String prefix, long firstBlock, long lastBlock, byte[] result,
+			long resultStart) {
+		long rangeStart = firstBlock * blockSize;
+		long rangeEnd = Math.min(length, (lastBlock + 1) * blockSize) - 1;
+		GetObjectRequest rangeRequest = new GetObjectRequest(
+				request.getBucketName(), request.getKey(),
+				request.getVersionId()).withRange(rangeStart, rangeEnd)
+				.withMatchingETagConstraint(eTag);
+		rangeRequest.setRequestCredentials(request.getRequestCredentials());
+
+		synchronized (this) {
+			requestCount++;
+		}
+		S3Object object = s3.getObject(rangeRequest);
+		if (object == null) {
+			throw new AmazonClientException("Unable to read "
+					+ request.getKey() + ": the object's ETag is no longer "
+					+ eTag);
+		}
+
+		InputStream in = object.getObjectContent();
+		try {
+			for (long index = firstBlock; index <= lastBlock; index++) {
+				long blockStart = index * blockSize;
+				byte[] block = new byte[(int) (Math.min(length, blockStart
+						+ blockSize) - blockStart)];
+				readFully(in, block);
+				store(prefix + index, block);
+				copyBlock(block, index, result, resultStart);
+			}
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to read "
+					+ request.getKey() + ": " + e.getMessage(), e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Copies the part of a block that overlaps the result into it.
+	 */
+	private void copyBlock(byte[] block, long index, byte[] result,
+			long resultStart) {
+		long blockStart = index * blockSize;
+		long from = Math.max(blockStart, resultStart);
+		long to = Math.min(blockStart + block.length, resultStart
+				+ result.length);
+		if (from < to) {
+			System.arraycopy(block, (int) (from - blockStart), result,
+					(int) (from - resultStart), (int) (to - from));
+		}
+	}
+
+	/**
+	 * Adds a fetched block to the cache, writing it through to disk.
+	 */
+	private void store(String blockKey, byte[] content) {
+		Block block = new Block();
+		block.length = content.length;
+		if (content.length <= maxMemorySize)
+			block.content = content;
+		if (content.length <= maxDiskSize)
+			block.file = writeFile(content);
+
+		synchronized (this) {
+			missCount++;
+			if (block.content == null && block.file == null)
+				return;
+			Block previous = blocks.put(blockKey, block);
+			if (previous != null)
+				discard(previous);
+			if (block.content != null)
+				memorySize += block.length;
+			if (block.file != null)
+				diskSize += block.length;
+			evict();
+		}
+	}
+
+	/**
+	 * Evicts least recently used blocks until both tiers fit. Blocks evicted
+	 * from memory stay cached on disk.
+	 */
+	private void evict() {
+		Iterator<Block> it = blocks.values().iterator();
+		while (memorySize > maxMemorySize && it.hasNext()) {
+			Block block = it.next();
+			if (block.content != null) {
+				block.content = null;
+				memorySize -= block.length;
+				if (block.file == null)
+					it.remove();
+			}
+		}
+
+		it = blocks.values().iterator();
+		while (diskSize > maxDiskSize && it.hasNext()) {
+			Block block = it.next();
+			if (block.file != null) {
+				discard(block);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Releases the storage held by a block that has been, or is about to be,
+	 * removed from the index.
+	 */
+	private void discard(Block block) {
+		if (block.content != null) {
+			memorySize -= block.length;
+			block.content = null;
+		}
+		if (block.file != null) {
+			diskSize -= block.length;
+			if (!block.file.delete()) {
+				Log.w(TAG, "Unable to delete cached block " + block.file);
+			}
+			block.file = null;
+		}
+	}
+
+	private File writeFile(byte[] content) {
+		File file = null;
+		OutputStream out = null;
+		try {
+			file = File.createTempFile(FILE_PREFIX, ".blk", directory);
+			out = new FileOutputStream(file);
+			out.write(content);
+			out.close();
+			out = null;
+			return file;
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to write cached block: " + e.getMessage());
+			if (file != null)
+				file.delete();
+			return null;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a cached block from disk, returning null if the file has
+	 * disappeared or can't be read.
+	 */
+	private static byte[] readFile(File file) {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			byte[] content = new byte[(int) file.length()];
+			readFully(in, content);
+			return content;
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read cached block " + file + ": "
+					+ e.getMessage());
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static void readFully(InputStream in, byte[] b) throws IOException {
+		int off = 0;
+		while (off < b.length) {
+			int count = in.read(b, off, b.length - off);
+			if (count == -1)
+				throw new IOException("Expected " + b.length
+						+ " bytes but received " + off);
+			off += count;
+		}
+	}
+
+	private static final class Block {
+		File file;
+		long length;
+		byte[] content;
+	}
+}
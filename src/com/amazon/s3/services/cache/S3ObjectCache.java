@@ -0,0 +1,443 @@
+package com.amazon.s3.services.cache;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.internal.ServiceUtils;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * A local cache of object contents, layered over an {@link AmazonS3} client.
+ * <p>
+ * Every object fetched through the cache is stored in a size-bounded
+ * directory on disk, and small objects are also held in a size-bounded memory
+ * tier. Both tiers evict the least recently used objects first. Entries are
+ * keyed by bucket, key and version ID.
+ * <p>
+ * Within the configured time to live, cached objects are served without
+ * contacting Amazon S3 at all. After that, the cache revalidates with a
+ * conditional GET (<code>If-None-Match</code> with the cached ETag), which
+ * costs a round trip but no transfer if the object hasn't changed. Requests
+ * for a specific version ID are never revalidated, since object versions
+ * can't change.
+ * <p>
+ * Only plain GETs are cached. Requests with a range, constraints, response
+ * header overrides or a progress listener are passed straight to the client.
+ * The index is kept in memory, so the cache starts out empty in each process.
+ */
+public class S3ObjectCache {
+	private static final String TAG = "###S3ObjectCache###";
+
+	/** Prefix of the files this cache creates in its directory. */
+	private static final String FILE_PREFIX = "s3cache-";
+
+	/**
+	 * Objects up to this fraction of the memory tier's size are also held in
+	 * memory.
+	 */
+	private static final int MEMORY_OBJECT_FRACTION = 8;
+
+	private final AmazonS3 s3;
+	private final File directory;
+	private final long maxDiskSize;
+	private final long maxMemorySize;
+	private final long timeToLive;
+
+	/** Cached entries, in least recently used order; guarded by this. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+	private long diskSize = 0;
+	private long memorySize = 0;
+
+	private long hitCount = 0;
+	private long revalidationCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param s3
+	 *            The client used to fetch and revalidate objects.
+	 * @param directory
+	 *            The directory in which cached objects are stored. Files left
+	 *            over from a previous cache in the same directory are removed.
+	 * @param maxDiskSize
+	 *            The maximum number of bytes stored on disk.
+	 * @param maxMemorySize
+	 *            The maximum number of bytes held in memory.
+	 * @param timeToLive
+	 *            How long, in milliseconds, a cached object is served without
+	 *            revalidation. Zero revalidates on every request.
+	 */
+	public S3ObjectCache(AmazonS3 s3, File directory, long maxDiskSize,
+			long maxMemorySize, long timeToLive) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (directory == null)
+			throw new IllegalArgumentException("Directory cannot be null");
+		if (maxDiskSize < 0 || maxMemorySize < 0 || timeToLive < 0)
+			throw new IllegalArgumentException(
+					"Cache sizes and time to live must not be negative");
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new AmazonClientException("Unable to create cache directory "
+					+ directory);
+		}
+		File[] leftovers = directory.listFiles();
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				if (leftover.getName().startsWith(FILE_PREFIX)) {
+					leftover.delete();
+				}
+			}
+		}
+
+		this.s3 = s3;
+		this.directory = directory;
+		this.maxDiskSize = maxDiskSize;
+		this.maxMemorySize = maxMemorySize;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the specified object, from the cache if possible.
+	 *
+	 * @see AmazonS3#getObject(String, String)
+	 */
+	public S3Object getObject(String bucketName, String key)
+			throws AmazonClientException, AmazonServiceException {
+		return getObject(new GetObjectRequest(bucketName, key));
+	}
+
+	/**
+	 * Returns the specified object, from the cache if possible. Requests that
+	 * can't be cached are passed straight to the client.
+	 *
+	 * @see AmazonS3#getObject(GetObjectRequest)
+	 */
+	public S3Object getObject(GetObjectRequest getObjectRequest)
+			throws AmazonClientException, AmazonServiceException {
+		if (!isCacheable(getObjectRequest)) {
+			return s3.getObject(getObjectRequest);
+		}
+
+		String bucketName = getObjectRequest.getBucketName();
+		String key = getObjectRequest.getKey();
+		String versionId = getObjectRequest.getVersionId();
+		String cacheKey = cacheKey(bucketName, key, versionId);
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(cacheKey);
+			if (entry != null && isFresh(entry)) {
+				S3Object cached = open(entry);
+				if (cached != null) {
+					hitCount++;
+					return cached;
+				}
+				remove(cacheKey);
+				entry = null;
+			}
+		}
+
+		GetObjectRequest request = new GetObjectRequest(bucketName, key,
+				versionId);
+		if (entry != null) {
+			request.withNonmatchingETagConstraint(entry.eTag);
+		}
+
+		S3Object s3Object = s3.getObject(request);
+		if (s3Object == null && entry != null) {
+			// 304 Not Modified: the cached copy is still current.
+			synchronized (this) {
+				entry.validatedAt = System.currentTimeMillis();
+				S3Object cached = open(entry);
+				if (cached != null) {
+					revalidationCount++;
+					return cached;
+				}
+				// Leave any newer copy stored while the request was made.
+				if (entries.get(cacheKey) == entry)
+					remove(cacheKey);
+			}
+			s3Object = s3.getObject(new GetObjectRequest(bucketName, key,
+					versionId));
+		}
+
+		synchronized (this) {
+			missCount++;
+		}
+		if (s3Object == null) {
+			return null;
+		}
+		return store(cacheKey, s3Object);
+	}
+
+	/**
+	 * Removes any cached copies of the specified object, for example after
+	 * overwriting or deleting it.
+	 */
+	public synchronized void invalidate(String bucketName, String key) {
+		String prefix = cacheKey(bucketName, key, "");
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> next = it.next();
+			if (next.getKey().startsWith(prefix)) {
+				discard(next.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached objects.
+	 */
+	public synchronized void clear() {
+		for (Entry entry : entries.values()) {
+			discard(entry);
+		}
+		entries.clear();
+	}
+
+	/** Returns the number of requests served from the cache without a request. */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/** Returns the number of requests served from the cache after a 304. */
+	public synchronized long getRevalidationCount() {
+		return revalidationCount;
+	}
+
+	/** Returns the number of requests that transferred the object. */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/** Returns the number of bytes currently stored on disk. */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	/** Returns the number of bytes currently held in memory. */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	private static boolean isCacheable(GetObjectRequest request) {
+		return request.getRange() == null
+				&& request.getMatchingETagConstraints().isEmpty()
+				&& request.getNonmatchingETagConstraints().isEmpty()
+				&& request.getModifiedSinceConstraint() == null
+				&& request.getUnmodifiedSinceConstraint() == null
+				&& request.getResponseHeaders() == null
+				&& request.getProgressListener() == null;
+	}
+
+	private static String cacheKey(String bucketName, String key,
+			String versionId) {
+		return bucketName + "/" + key.length() + "/" + key + "/"
+				+ (versionId == null ? "" : versionId);
+	}
+
+	private boolean isFresh(Entry entry) {
+		if (entry.versionId != null)
+			return true;
+		return System.currentTimeMillis() - entry.validatedAt < timeToLive;
+	}
+
+	/**
+	 * Downloads the object's content into the cache and returns an S3Object
+	 * reading from the cached copy. Objects too large for the disk tier are
+	 * returned as they are.
+	 */
+	private S3Object store(String cacheKey, S3Object s3Object) {
+		ObjectMetadata metadata = s3Object.getObjectMetadata();
+		long length = metadata.getContentLength();
+		if (length > maxDiskSize || metadata.getETag() == null) {
+			synchronized (this) {
+				remove(cacheKey);
+			}
+			return s3Object;
+		}
+
+		boolean keepInMemory = length <= maxMemorySize
+				/ MEMORY_OBJECT_FRACTION;
+		File file = null;
+		byte[] content = keepInMemory ? new byte[(int) length] : null;
+		InputStream in = s3Object.getObjectContent();
+		OutputStream out = null;
+		try {
+			file = File.createTempFile(FILE_PREFIX, ".obj", directory);
+			out = new FileOutputStream(file);
+			byte[] buffer = new byte[16 * Constants.KB];
+			long total = 0;
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+				if (content != null && total + count <= content.length) {
+					System.arraycopy(buffer, 0, content, (int) total, count);
+				}
+				total += count;
+			}
+			out.close();
+			out = null;
+			if (total != length) {
+				throw new IOException("Expected " + length
+						+ " bytes but received " + total);
+			}
+		} catch (IOException e) {
+			if (file != null)
+				file.delete();
+			throw new AmazonClientException("Unable to cache object: "
+					+ e.getMessage(), e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		Entry entry = new Entry();
+		entry.bucketName = s3Object.getBucketName();
+		entry.key = s3Object.getKey();
+		entry.versionId = cacheKey.endsWith("/") ? null : metadata
+				.getVersionId();
+		entry.eTag = metadata.getETag();
+		entry.metadata = metadata;
+		entry.file = file;
+		entry.length = length;
+		entry.content = content;
+		entry.validatedAt = System.currentTimeMillis();
+
+		synchronized (this) {
+			remove(cacheKey);
+			entries.put(cacheKey, entry);
+			diskSize += length;
+			if (content != null)
+				memorySize += length;
+			evict();
+			S3Object cached = open(entry);
+			if (cached != null)
+				return cached;
+		}
+		throw new AmazonClientException("Unable to read cached object "
+				+ cacheKey);
+	}
+
+	/**
+	 * Returns a new S3Object reading from the cached copy of the entry, or
+	 * null if the cached file has disappeared. The object gets its own copy of
+	 * the cached metadata, so callers can't change what later callers see.
+	 */
+	private S3Object open(Entry entry) {
+		InputStream content;
+		if (entry.content != null) {
+			content = new ByteArrayInputStream(entry.content);
+		} else {
+			try {
+				content = new FileInputStream(entry.file);
+			} catch (FileNotFoundException e) {
+				Log.w(TAG, "Cached file " + entry.file + " has disappeared");
+				return null;
+			}
+		}
+
+		S3Object s3Object = new S3Object();
+		s3Object.setBucketName(entry.bucketName);
+		s3Object.setKey(entry.key);
+		s3Object.setObjectMetadata(ServiceUtils
+				.copyObjectMetadata(entry.metadata));
+		s3Object.setObjectContent(content);
+		return s3Object;
+	}
+
+	/** Evicts least recently used entries until both tiers fit. */
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (memorySize > maxMemorySize && it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.content != null) {
+				entry.content = null;
+				memorySize -= entry.length;
+			}
+		}
+
+		it = entries.values().iterator();
+		while (diskSize > maxDiskSize && it.hasNext()) {
+			discard(it.next());
+			it.remove();
+		}
+	}
+
+	private void remove(String cacheKey) {
+		Entry entry = entries.remove(cacheKey);
+		if (entry != null)
+			discard(entry);
+	}
+
+	/**
+	 * Releases the storage held by an entry that has been, or is about to be,
+	 * removed from the index. Streams already reading the file keep working.
+	 */
+	private void discard(Entry entry) {
+		diskSize -= entry.length;
+		if (entry.content != null) {
+			memorySize -= entry.length;
+			entry.content = null;
+		}
+		if (!entry.file.delete()) {
+			Log.w(TAG, "Unable to delete cached file " + entry.file);
+		}
+	}
+
+	private static final class Entry {
+		String bucketName;
+		String key;
+		String versionId;
+		String eTag;
+		ObjectMetadata metadata;
+		File file;
+		long length;
+		byte[] content;
+		long validatedAt;
+	}
+}
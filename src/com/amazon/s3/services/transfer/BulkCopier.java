@@ -0,0 +1,570 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.exceptions.AmazonServiceException.ErrorType;
+import com.amazon.s3.model.CopyObjectRequest;
+import com.amazon.s3.model.CopyObjectResult;
+import com.amazon.s3.model.ListObjectsRequest;
+import com.amazon.s3.model.ObjectListing;
+import com.amazon.s3.model.S3ObjectSummary;
+import com.amazon.s3.model.StorageClass;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * Runs large numbers of server-side copies, such as storage class transitions
+ * or re-keying a prefix, with bounded concurrency.
+ * <p>
+ * Copies are taken from an iterator of requests, or generated from a listing
+ * of a prefix, and run on a fixed pool of worker threads; at most that many
+ * copies are in flight at once, so a job never queues more work than it can
+ * run. Each copy goes through a {@link MultipartCopier}, so large objects are
+ * copied in parallel ranges. Copies that fail with a server error, throttling
+ * or a network I/O error are retried with exponential backoff; other errors
+ * are final. A copy whose request has a constraint on the source that isn't
+ * met copies nothing and counts as failed. The outcome of every copy is
+ * reported to the {@link BulkCopyListener}, if one is set.
+ * <p>
+ * If a checkpoint file is set, progress is recorded in it as copies finish.
+ * Copies are numbered in the order they are taken from the input, and the
+ * checkpoint records how many leading copies have all succeeded, along with
+ * the source key of the last of them. A job restarted with the same input and
+ * checkpoint file skips those copies: an iterator is advanced past them, and
+ * a prefix listing restarts after the recorded key. The file is deleted when
+ * every copy of the job has succeeded; if any copy failed, the file is kept,
+ * so running the job again retries from the first failed copy.
+ * <p>
+ * Copying a prefix lists it while copying, so the destination must not be
+ * inside the source: within one bucket, neither prefix may start with the
+ * other, unless they are the same and objects are copied over themselves.
+ */
+public class BulkCopier {
+	private static final String TAG = "###BulkCopier###";
+
+	/** The default number of copies in flight at once. */
+	public static final int DEFAULT_MAX_CONCURRENT_COPIES = 32;
+
+	/** The default number of times each copy is attempted. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+	/** The longest time, in milliseconds, waited between attempts. */
+	private static final long MAX_BACKOFF = 20 * 1000;
+
+	/** How often, in milliseconds, the checkpoint file is rewritten. */
+	private static final long CHECKPOINT_INTERVAL = 5 * 1000;
+
+	private static final String CHECKPOINT_JOB = "job";
+	private static final String CHECKPOINT_POSITION = "position";
+	private static final String CHECKPOINT_MARKER = "marker";
+
+	private final AmazonS3 s3;
+	private final MultipartCopier copier;
+	private final int maxConcurrentCopies;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private File checkpointFile;
+	private BulkCopyListener listener;
+
+	/**
+	 * Creates a new bulk copier running up to
+	 * {@link #DEFAULT_MAX_CONCURRENT_COPIES} copies at once.
+	 *
+	 * @param s3
+	 *            The client used to copy objects.
+	 */
+	public BulkCopier(AmazonS3 s3) {
+		this(s3, DEFAULT_MAX_CONCURRENT_COPIES);
+	}
+
+	/**
+	 * Creates a new bulk copier.
+	 *
+	 * @param s3
+	 *            The client used to copy objects. Its connection pool should
+	 *            allow at least as many connections as copies in flight.
+	 * @param maxConcurrentCopies
+	 *            The maximum number of copies in flight at once.
+	 */
+	public BulkCopier(AmazonS3 s3, int maxConcurrentCopies) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (maxConcurrentCopies < 1)
+			throw new IllegalArgumentException(
+					"At least one concurrent copy must be allowed");
+
+		this.s3 = s3;
+		this.copier = new MultipartCopier(s3);
+		this.maxConcurrentCopies = maxConcurrentCopies;
+	}
+
+	/**
+	 * Returns the copier used for each copy, so its multipart threshold and
+	 * part size can be tuned.
+	 */
+	public MultipartCopier getCopier() {
+		return copier;
+	}
+
+	/**
+	 * Sets the number of times each copy is attempted before it is reported
+	 * as failed.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException(
+					"At least one attempt must be allowed");
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the file in which progress is checkpointed, or null to run without
+	 * a checkpoint.
+	 */
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * Sets the listener told about the outcome of each copy.
+	 */
+	public void setListener(BulkCopyListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Runs every copy produced by the specified iterator, and blocks until all
+	 * of them have finished.
+	 *
+	 * @param requests
+	 *            The copies to run. To resume from a checkpoint, the iterator
+	 *            must produce the same copies in the same order as before.
+	 *
+	 * @return The totals for this run.
+	 */
+	public BulkCopyResult copy(Iterator<CopyObjectRequest> requests) {
+		Checkpoint checkpoint = loadCheckpoint("iterator");
+		long skipped = 0;
+		while (skipped < checkpoint.position && requests.hasNext()) {
+			requests.next();
+			skipped++;
+		}
+		return run(requests, checkpoint, skipped);
+	}
+
+	/**
+	 * Copies every object under a prefix to the same relative key under
+	 * another prefix, optionally in another bucket and with a new storage
+	 * class, and blocks until all copies have finished.
+	 *
+	 * @param sourceBucketName
+	 *            The bucket to copy from.
+	 * @param sourcePrefix
+	 *            The prefix of the keys to copy; empty for the whole bucket.
+	 * @param destinationBucketName
+	 *            The bucket to copy to.
+	 * @param destinationPrefix
+	 *            The prefix that replaces the source prefix in each copied
+	 *            key.
+	 * @param storageClass
+	 *            The storage class of the copies, or null to use the default.
+	 *
+	 * @return The totals for this run.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the destination overlaps the source, so copies would be
+	 *             listed and copied again.
+	 */
+	public BulkCopyResult copyPrefix(String sourceBucketName,
+			String sourcePrefix, String destinationBucketName,
+			String destinationPrefix, StorageClass storageClass) {
+		if (sourcePrefix == null)
+			sourcePrefix = "";
+		if (destinationPrefix == null)
+			destinationPrefix = "";
+		if (sourceBucketName != null
+				&& sourceBucketName.equals(destinationBucketName)
+				&& !sourcePrefix.equals(destinationPrefix)
+				&& (destinationPrefix.startsWith(sourcePrefix) || sourcePrefix
+						.startsWith(destinationPrefix))) {
+			throw new IllegalArgumentException("Destination prefix "
+					+ destinationPrefix + " overlaps source prefix "
+					+ sourcePrefix + " in bucket " + sourceBucketName);
+		}
+
+		Checkpoint checkpoint = loadCheckpoint("prefix:" + sourceBucketName
+				+ "/" + sourcePrefix + ">" + destinationBucketName + "/"
+				+ destinationPrefix + ":" + storageClass);
+		return run(new ListingIterator(sourceBucketName, sourcePrefix,
+				destinationBucketName, destinationPrefix, storageClass,
+				checkpoint.marker), checkpoint, checkpoint.position);
+	}
+
+	/**
+	 * Changes the storage class of every object under a prefix, by copying
+	 * each object over itself, and blocks until all copies have finished.
+	 *
+	 * @param bucketName
+	 *            The bucket containing the objects.
+	 * @param prefix
+	 *            The prefix of the keys to transition; empty for the whole
+	 *            bucket.
+	 * @param storageClass
+	 *            The new storage class.
+	 *
+	 * @return The totals for this run.
+	 *
+	 * @see AmazonS3#changeObjectStorageClass(String, String, StorageClass)
+	 */
+	public BulkCopyResult transitionPrefix(String bucketName, String prefix,
+			StorageClass storageClass) {
+		if (storageClass == null)
+			throw new IllegalArgumentException("StorageClass cannot be null");
+		return copyPrefix(bucketName, prefix, bucketName, prefix, storageClass);
+	}
+
+	/**
+	 * Shuts down the thread pool used to copy large objects in parts.
+	 */
+	public void shutdown() {
+		copier.shutdown();
+	}
+
+	private BulkCopyResult run(Iterator<CopyObjectRequest> requests,
+			final Checkpoint checkpoint, long skipped) {
+		final Semaphore slots = new Semaphore(maxConcurrentCopies);
+		final AtomicLong succeeded = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		ExecutorService executor = Executors
+				.newFixedThreadPool(maxConcurrentCopies);
+
+		try {
+			long sequence = checkpoint.position;
+			while (requests.hasNext()) {
+				final CopyObjectRequest request = requests.next();
+				final long position = sequence++;
+				slots.acquire();
+				executor.execute(new Runnable() {
+					public void run() {
+						boolean copied = false;
+						try {
+							copied = copyWithRetries(request);
+						} finally {
+							(copied ? succeeded : failed).incrementAndGet();
+							checkpoint.finished(position,
+									request.getSourceKey(), copied);
+							slots.release();
+						}
+					}
+				});
+			}
+
+			slots.acquire(maxConcurrentCopies);
+			slots.release(maxConcurrentCopies);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			checkpoint.save();
+			throw new AmazonClientException("Interrupted while copying", e);
+		} catch (RuntimeException e) {
+			// Typically a failed listing; copies already started still finish.
+			executor.shutdown();
+			awaitQuietly(executor);
+			checkpoint.save();
+			throw e;
+		} finally {
+			executor.shutdown();
+		}
+
+		if (failed.get() > 0)
+			checkpoint.save();
+		else
+			checkpoint.complete();
+		return new BulkCopyResult(succeeded.get(), failed.get(), skipped);
+	}
+
+	/**
+	 * Runs one copy, retrying retryable errors, and reports its outcome.
+	 *
+	 * @return True if the copy succeeded.
+	 */
+	private boolean copyWithRetries(CopyObjectRequest request) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				CopyObjectResult result = copier.copy(request);
+				if (result == null) {
+					// Nothing was copied, so it isn't counted as a success;
+					// running the job again retries it.
+					AmazonClientException e = new AmazonClientException(
+							"Unable to copy " + request.getSourceBucketName()
+									+ "/" + request.getSourceKey()
+									+ ": a constraint on the source wasn't met");
+					Log.w(TAG, e.getMessage());
+					if (listener != null)
+						listener.copyFailed(request, e);
+					return false;
+				}
+				if (listener != null)
+					listener.copySucceeded(request, result);
+				return true;
+			} catch (AmazonClientException e) {
+				if (attempt >= maxAttempts || !isRetryable(e)) {
+					Log.w(TAG, "Unable to copy " + request.getSourceBucketName()
+							+ "/" + request.getSourceKey() + ": "
+							+ e.getMessage());
+					if (listener != null)
+						listener.copyFailed(request, e);
+					return false;
+				}
+				try {
+					Thread.sleep(Math.min(MAX_BACKOFF, 200L << attempt));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					if (listener != null)
+						listener.copyFailed(request, e);
+					return false;
+				}
+			}
+		}
+	}
+
+	private static boolean isRetryable(AmazonClientException e) {
+		if (!(e instanceof AmazonServiceException)) {
+			// Only network errors are transient; other client errors, such as
+			// an interrupted copy or an unreadable response, are final.
+			for (Throwable cause = e.getCause(); cause != null; cause = cause
+					.getCause()) {
+				if (cause instanceof IOException)
+					return true;
+			}
+			return false;
+		}
+		AmazonServiceException ase = (AmazonServiceException) e;
+		return ase.getErrorType() == ErrorType.Service
+				|| ase.getStatusCode() >= 500
+				|| "SlowDown".equals(ase.getErrorCode())
+				|| "Throttling".equals(ase.getErrorCode())
+				|| "RequestTimeout".equals(ase.getErrorCode());
+	}
+
+	private static void awaitQuietly(ExecutorService executor) {
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Checkpoint loadCheckpoint(String job) {
+		Checkpoint checkpoint = new Checkpoint(checkpointFile, job);
+		if (checkpointFile == null || !checkpointFile.exists())
+			return checkpoint;
+
+		Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(checkpointFile);
+			properties.load(in);
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to read checkpoint file "
+					+ checkpointFile + ": " + e.getMessage(), e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		if (!job.equals(properties.getProperty(CHECKPOINT_JOB))) {
+			throw new IllegalStateException("Checkpoint file " + checkpointFile
+					+ " belongs to a different job: "
+					+ properties.getProperty(CHECKPOINT_JOB));
+		}
+		checkpoint.position = Long.parseLong(properties.getProperty(
+				CHECKPOINT_POSITION, "0"));
+		checkpoint.marker = properties.getProperty(CHECKPOINT_MARKER);
+		Log.d(TAG, "Resuming " + job + " after " + checkpoint.position
+				+ " copies");
+		return checkpoint;
+	}
+
+	/**
+	 * Tracks the longest run of leading copies that have all succeeded, and
+	 * persists it.
+	 */
+	private static final class Checkpoint {
+		private final File file;
+		private final String job;
+
+		/** The number of leading copies that have all succeeded. */
+		long position;
+		/** The source key of the last of those copies. */
+		String marker;
+
+		/** Copies succeeded out of order, by position. */
+		private final TreeMap<Long, String> finishedAhead = new TreeMap<Long, String>();
+		/** The position of the first failed copy, which position never passes. */
+		private long firstFailure = Long.MAX_VALUE;
+		private long lastSaved = System.currentTimeMillis();
+
+		Checkpoint(File file, String job) {
+			this.file = file;
+			this.job = job;
+		}
+
+		synchronized void finished(long finishedPosition, String sourceKey,
+				boolean succeeded) {
+			if (!succeeded) {
+				firstFailure = Math.min(firstFailure, finishedPosition);
+				finishedAhead.tailMap(Long.valueOf(firstFailure)).clear();
+			} else if (finishedPosition < firstFailure) {
+				finishedAhead.put(Long.valueOf(finishedPosition), sourceKey);
+			}
+			while (!finishedAhead.isEmpty()
+					&& finishedAhead.firstKey().longValue() == position) {
+				marker = finishedAhead.remove(finishedAhead.firstKey());
+				position++;
+			}
+			if (System.currentTimeMillis() - lastSaved >= CHECKPOINT_INTERVAL) {
+				save();
+			}
+		}
+
+		synchronized void save() {
+			if (file == null)
+				return;
+			lastSaved = System.currentTimeMillis();
+
+			Properties properties = new Properties();
+			properties.setProperty(CHECKPOINT_JOB, job);
+			properties.setProperty(CHECKPOINT_POSITION, Long.toString(position));
+			if (marker != null)
+				properties.setProperty(CHECKPOINT_MARKER, marker);
+
+			// Write a new file and rename it over the old one, so a crash
+			// mid-write never leaves a truncated checkpoint.
+			File temp = new File(file.getPath() + ".tmp");
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(temp);
+				properties.store(out, null);
+				out.close();
+				out = null;
+				if (!temp.renameTo(file)) {
+					file.delete();
+					if (!temp.renameTo(file))
+						throw new IOException("Unable to rename " + temp);
+				}
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to write checkpoint file " + file + ": "
+						+ e.getMessage(), e);
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		synchronized void complete() {
+			if (file != null && file.exists() && !file.delete()) {
+				Log.w(TAG, "Unable to delete checkpoint file " + file);
+			}
+		}
+	}
+
+	/**
+	 * Lazily lists a prefix, one page at a time, producing a copy request for
+	 * each object.
+	 */
+	private final class ListingIterator implements Iterator<CopyObjectRequest> {
+		private final String sourceBucketName;
+		private final String sourcePrefix;
+		private final String destinationBucketName;
+		private final String destinationPrefix;
+		private final StorageClass storageClass;
+
+		private Iterator<S3ObjectSummary> page;
+		private String marker;
+		private boolean truncated = true;
+
+		ListingIterator(String sourceBucketName, String sourcePrefix,
+				String destinationBucketName, String destinationPrefix,
+				StorageClass storageClass, String marker) {
+			this.sourceBucketName = sourceBucketName;
+			this.sourcePrefix = sourcePrefix;
+			this.destinationBucketName = destinationBucketName;
+			this.destinationPrefix = destinationPrefix;
+			this.storageClass = storageClass;
+			this.marker = marker;
+		}
+
+		public boolean hasNext() {
+			while ((page == null || !page.hasNext()) && truncated) {
+				ObjectListing listing = s3.listObjects(new ListObjectsRequest(
+						sourceBucketName, sourcePrefix, marker, null, null));
+				page = listing.getObjectSummaries().iterator();
+				truncated = listing.isTruncated();
+				if (!listing.getObjectSummaries().isEmpty()) {
+					marker = listing.getObjectSummaries()
+							.get(listing.getObjectSummaries().size() - 1)
+							.getKey();
+				} else {
+					truncated = false;
+				}
+			}
+			return page.hasNext();
+		}
+
+		public CopyObjectRequest next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			String key = page.next().getKey();
+			CopyObjectRequest request = new CopyObjectRequest(
+					sourceBucketName, key, destinationBucketName,
+					destinationPrefix + key.substring(sourcePrefix.length()));
+			if (storageClass != null)
+				request.setStorageClass(storageClass);
+			return request;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
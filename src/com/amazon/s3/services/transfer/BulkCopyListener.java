@@ -0,0 +1,49 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.model.CopyObjectRequest;
+import com.amazon.s3.model.CopyObjectResult;
+
+/**
+ * Receives the outcome of each copy run by a {@link BulkCopier}. Methods are
+ * called from the copier's worker threads, possibly concurrently, so
+ * implementations must be thread safe.
+ */
+public interface BulkCopyListener {
+
+	/**
+	 * Called when a copy has completed.
+	 *
+	 * @param request
+	 *            The copy that completed.
+	 * @param result
+	 *            The result of the copy.
+	 */
+	public void copySucceeded(CopyObjectRequest request, CopyObjectResult result);
+
+	/**
+	 * Called when a copy has failed, after any retries, or copied nothing
+	 * because one of the request's constraints on the source wasn't met.
+	 *
+	 * @param request
+	 *            The copy that failed.
+	 * @param error
+	 *            The error from the last attempt.
+	 */
+	public void copyFailed(CopyObjectRequest request, AmazonClientException error);
+}
@@ -0,0 +1,55 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+ * Totals for one run of a {@link BulkCopier}.
+ */
+public class BulkCopyResult {
+	private final long succeeded;
+	private final long failed;
+	private final long skipped;
+
+	BulkCopyResult(long succeeded, long failed, long skipped) {
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * Returns the number of copies that completed in this run.
+	 */
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Returns the number of copies that failed in this run, after retries,
+	 * including copies that copied nothing because a constraint on the source
+	 * wasn't met.
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of copies skipped because a checkpoint showed an
+	 * earlier run had already processed them.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+}
@@ -0,0 +1,412 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.Headers;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.model.S3ObjectInputStream;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * Reads many byte ranges of one object with a few ranged GETs.
+ * <p>
+ * The requested ranges are sorted and merged into spans: ranges that overlap
+ * or are separated by no more than the maximum gap are read by the same
+ * request, as long as the span stays within the maximum span size. The spans
+ * are fetched in parallel, each into a single buffer, and every requested
+ * range is returned as a {@link ByteBuffer} slice of its span's buffer, so the
+ * data isn't copied again. Slices of overlapping ranges share their content.
+ * <p>
+ * The first span is read on its own, and the others are only read if the
+ * object still has the ETag the first one returned, so every range comes
+ * from the same version of the object even if it's overwritten meanwhile.
+ * <p>
+ * Ranges are inclusive <code>{start, end}</code> pairs, as in
+ * {@link GetObjectRequest#setRange(long, long)}. Ranges extending beyond the
+ * end of the object are truncated, and ranges starting beyond it are read as
+ * empty.
+ */
+public class MultiRangeReader {
+
+	/** The default largest gap between two ranges read by one request. */
+	public static final long DEFAULT_MAX_GAP = 128 * Constants.KB;
+
+	/** The default largest span merged ranges are read in. */
+	public static final int DEFAULT_MAX_SPAN_SIZE = 8 * Constants.MB;
+
+	/** The default number of spans fetched at once. */
+	public static final int DEFAULT_THREADS = 8;
+
+	/** The initial size of a span's buffer when its length isn't known. */
+	private static final int INITIAL_BUFFER_SIZE = 64 * Constants.KB;
+
+	private final AmazonS3 s3;
+	private final ExecutorService executor;
+	private final boolean shutdownExecutor;
+	private long maxGap = DEFAULT_MAX_GAP;
+	private int maxSpanSize = DEFAULT_MAX_SPAN_SIZE;
+
+	/**
+	 * Creates a new reader with a private pool of {@link #DEFAULT_THREADS}
+	 * threads.
+	 *
+	 * @param s3
+	 *            The client used to read objects.
+	 */
+	public MultiRangeReader(AmazonS3 s3) {
+		this(s3, Executors.newFixedThreadPool(DEFAULT_THREADS), true);
+	}
+
+	/**
+	 * Creates a new reader that fetches spans on the specified executor. The
+	 * executor is not shut down by {@link #shutdown()}.
+	 *
+	 * @param s3
+	 *            The client used to read objects.
+	 * @param executor
+	 *            The executor on which spans are fetched; its number of
+	 *            threads bounds the number of spans fetched at once.
+	 */
+	public MultiRangeReader(AmazonS3 s3, ExecutorService executor) {
+		this(s3, executor, false);
+	}
+
+	private MultiRangeReader(AmazonS3 s3, ExecutorService executor,
+			boolean shutdownExecutor) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (executor == null)
+			throw new IllegalArgumentException("ExecutorService cannot be null");
+
+		this.s3 = s3;
+		this.executor = executor;
+		this.shutdownExecutor = shutdownExecutor;
+	}
+
+	/**
+	 * Sets the largest number of bytes between two ranges that are read by
+	 * the same request. The bytes in the gap are transferred and discarded,
+	 * so this trades bandwidth for fewer requests.
+	 */
+	public void setMaxGap(long maxGap) {
+		if (maxGap < 0)
+			throw new IllegalArgumentException("Maximum gap cannot be negative");
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * Returns the largest number of bytes between two ranges that are read by
+	 * the same request.
+	 */
+	public long getMaxGap() {
+		return maxGap;
+	}
+
+	/**
+	 * Sets the largest span, in bytes, that ranges are merged into. A single
+	 * range larger than this is still read as one span.
+	 */
+	public void setMaxSpanSize(int maxSpanSize) {
+		if (maxSpanSize <= 0)
+			throw new IllegalArgumentException(
+					"Maximum span size must be positive");
+		this.maxSpanSize = maxSpanSize;
+	}
+
+	/**
+	 * Returns the largest span, in bytes, that ranges are merged into.
+	 */
+	public int getMaxSpanSize() {
+		return maxSpanSize;
+	}
+
+	/**
+	 * Reads the specified ranges of an object.
+	 *
+	 * @param request
+	 *            The object to read. Its version ID, constraints and request
+	 *            credentials apply to every request; its range is ignored.
+	 * @param ranges
+	 *            The inclusive <code>{start, end}</code> ranges to read.
+	 *
+	 * @return The content of each range, in the order requested, or null if
+	 *         constraints specified in the request weren't met.
+	 *
+	 * @throws AmazonClientException
+	 *             If a range can't be read, or the object changed while its
+	 *             ranges were being read.
+	 */
+	public List<ByteBuffer> read(GetObjectRequest request, List<long[]> ranges)
+			throws AmazonClientException, AmazonServiceException {
+		if (request == null)
+			throw new IllegalArgumentException(
+					"GetObjectRequest cannot be null");
+		for (long[] range : ranges) {
+			if (range.length != 2 || range[0] < 0 || range[1] < range[0])
+				throw new IllegalArgumentException("Invalid range "
+						+ Arrays.toString(range));
+			if (range[1] - range[0] >= Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Range is too large to read: "
+						+ Arrays.toString(range));
+		}
+
+		List<Span> spans = merge(ranges);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		try {
+			if (!spans.isEmpty()) {
+				Span first = spans.get(0);
+				if (!fetch(request, first, null))
+					return null;
+
+				final String eTag = first.eTag;
+				for (final Span span : spans.subList(1, spans.size())) {
+					if (first.length < first.end - first.start + 1) {
+						// The first span reached the end of the object.
+						span.content = new byte[0];
+						continue;
+					}
+					final GetObjectRequest spanRequest = request;
+					results.add(executor.submit(new Callable<Boolean>() {
+						public Boolean call() {
+							return Boolean.valueOf(fetch(spanRequest, span,
+									eTag));
+						}
+					}));
+				}
+				for (Future<Boolean> result : results) {
+					if (!waitFor(result).booleanValue()) {
+						cancel(results);
+						throw new AmazonClientException("Unable to read "
+								+ request.getKey()
+								+ ": the object changed while it was being read");
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			cancel(results);
+			throw e;
+		}
+
+		ByteBuffer[] slices = new ByteBuffer[ranges.size()];
+		for (Span span : spans) {
+			for (Integer index : span.indexes) {
+				long[] range = ranges.get(index.intValue());
+				int offset = (int) (range[0] - span.start);
+				int length = (int) Math.max(0, Math.min(range[1] - range[0]
+						+ 1, span.length - offset));
+				ByteBuffer slice = ByteBuffer.wrap(span.content,
+						Math.min(offset, span.length), length).slice();
+				slices[index.intValue()] = slice;
+			}
+		}
+		return Arrays.asList(slices);
+	}
+
+	/**
+	 * Shuts down the reader's private thread pool, if it has one.
+	 */
+	public void shutdown() {
+		if (shutdownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the ranges and merges them into spans.
+	 */
+	private List<Span> merge(final List<long[]> ranges) {
+		Integer[] order = new Integer[ranges.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long startA = ranges.get(a.intValue())[0];
+				long startB = ranges.get(b.intValue())[0];
+				return startA < startB ? -1 : (startA == startB ? 0 : 1);
+			}
+		});
+
+		List<Span> spans = new ArrayList<Span>();
+		Span span = null;
+		for (Integer index : order) {
+			long[] range = ranges.get(index.intValue());
+			if (span != null && range[0] <= span.end + 1 + maxGap) {
+				long end = Math.max(span.end, range[1]);
+				if (range[0] <= span.end + 1
+						|| end - span.start + 1 <= maxSpanSize) {
+					if (end - span.start < Integer.MAX_VALUE) {
+						span.end = end;
+						span.indexes.add(index);
+						continue;
+					}
+				}
+			}
+			span = new Span(range[0], range[1]);
+			span.indexes.add(index);
+			spans.add(span);
+		}
+		return spans;
+	}
+
+	/**
+	 * Reads a span into its buffer, and records the ETag of the object read.
+	 * A span starting beyond the end of the object is read as empty.
+	 *
+	 * @param eTag
+	 *            The ETag the object must still have, or null to apply the
+	 *            constraints specified in the request instead.
+	 * @return False if the ETag or constraints weren't met.
+	 */
+	private boolean fetch(GetObjectRequest request, Span span, String eTag) {
+		GetObjectRequest spanRequest = new GetObjectRequest(
+				request.getBucketName(), request.getKey(),
+				request.getVersionId()).withRange(span.start, span.end);
+		if (eTag != null) {
+			spanRequest.withMatchingETagConstraint(eTag);
+		} else {
+			spanRequest.setMatchingETagConstraints(request
+					.getMatchingETagConstraints());
+			spanRequest.setNonmatchingETagConstraints(request
+					.getNonmatchingETagConstraints());
+			spanRequest.setModifiedSinceConstraint(request
+					.getModifiedSinceConstraint());
+			spanRequest.setUnmodifiedSinceConstraint(request
+					.getUnmodifiedSinceConstraint());
+		}
+		spanRequest.setRequestCredentials(request.getRequestCredentials());
+
+		S3Object object;
+		try {
+			object = s3.getObject(spanRequest);
+		} catch (AmazonServiceException e) {
+			if (e.getStatusCode() != 416)
+				throw e;
+			span.content = new byte[0];
+			span.eTag = eTag;
+			return true;
+		}
+		if (object == null)
+			return false;
+		span.eTag = object.getObjectMetadata().getETag();
+
+		/*
+		 * The buffer is sized from the length of the response rather than the
+		 * requested range, which may run far past the end of the object. If
+		 * the response doesn't say, the buffer grows as data arrives.
+		 */
+		int requested = (int) (span.end - span.start + 1);
+		Object contentLength = object.getObjectMetadata().getRawMetadata()
+				.get(Headers.CONTENT_LENGTH);
+		int capacity = contentLength instanceof Long ? (int) Math.min(
+				requested, ((Long) contentLength).longValue()) : Math.min(
+				requested, INITIAL_BUFFER_SIZE);
+
+		S3ObjectInputStream in = object.getObjectContent();
+		span.content = new byte[capacity];
+		try {
+			int length = 0;
+			int count;
+			while (length < requested) {
+				if (length == span.content.length) {
+					span.content = Arrays.copyOf(span.content, (int) Math.min(
+							requested, Math.max(INITIAL_BUFFER_SIZE,
+									2L * length)));
+				}
+				count = in.read(span.content, length, span.content.length
+						- length);
+				if (count == -1)
+					break;
+				length += count;
+			}
+			span.length = length;
+		} catch (IOException e) {
+			try {
+				in.abort();
+			} catch (IOException abortException) {
+			}
+			throw new AmazonClientException("Unable to read "
+					+ request.getKey() + " at byte " + span.start + ": "
+					+ e.getMessage(), e);
+		} finally {
+			closeQuietly(in);
+		}
+		return true;
+	}
+
+	private static Boolean waitFor(Future<Boolean> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException(
+					"Interrupted while waiting for range read", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof AmazonClientException)
+				throw (AmazonClientException) cause;
+			throw new AmazonClientException("Unable to read range: "
+					+ cause.getMessage(), cause);
+		}
+	}
+
+	private static void cancel(List<Future<Boolean>> results) {
+		for (Future<Boolean> result : results) {
+			result.cancel(true);
+		}
+	}
+
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * A run of merged ranges read by one request.
+	 */
+	private static final class Span {
+		final long start;
+		long end;
+		final List<Integer> indexes = new ArrayList<Integer>();
+		byte[] content;
+		int length;
+		String eTag;
+
+		Span(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
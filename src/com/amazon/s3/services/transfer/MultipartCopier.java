@@ -0,0 +1,390 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.model.AbortMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadResult;
+import com.amazon.s3.model.CopyObjectRequest;
+import com.amazon.s3.model.CopyObjectResult;
+import com.amazon.s3.model.CopyPartRequest;
+import com.amazon.s3.model.CopyPartResult;
+import com.amazon.s3.model.GetObjectMetadataRequest;
+import com.amazon.s3.model.InitiateMultipartUploadRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.PartETag;
+import com.amazon.s3.model.StorageClass;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * Copies objects within Amazon S3 using parallel multipart copies, so that
+ * large objects are copied as many byte ranges at once rather than as a single
+ * stream, and objects larger than the single-copy limit can be copied at all.
+ * <p>
+ * For each copy the source is first inspected with a HEAD request. Objects no
+ * larger than the multipart threshold are copied with a single
+ * {@link AmazonS3#copyObject(CopyObjectRequest)} call. Larger objects are
+ * split into ranges that are copied concurrently with
+ * {@link AmazonS3#copyPart(CopyPartRequest)}, after which the multipart upload
+ * is completed. Unless the request has its own matching ETag constraint,
+ * every range is copied on the condition that the source still has the ETag
+ * seen by the HEAD request, so a source that changes mid-copy fails the copy
+ * with an {@link AmazonClientException} instead of producing a mix of two
+ * versions.
+ * <p>
+ * Unless the request specifies new metadata, the source's content headers and
+ * user metadata are carried over to the copy, as a single copy would.
+ */
+public class MultipartCopier {
+	private static final String TAG = "###MultipartCopier###";
+
+	/** The largest object Amazon S3 can copy in a single request. */
+	public static final long MAXIMUM_SINGLE_COPY_SIZE = 5 * Constants.GB;
+
+	/** The default size above which objects are copied in parts. */
+	public static final long DEFAULT_MULTIPART_THRESHOLD = 100 * Constants.MB;
+
+	/** The default size of each copied range. */
+	public static final long DEFAULT_PART_SIZE = 64 * Constants.MB;
+
+	/** The default number of ranges copied at once. */
+	public static final int DEFAULT_THREADS = 10;
+
+	private final AmazonS3 s3;
+	private final ExecutorService executor;
+	private final boolean shutdownExecutor;
+	private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+	private long partSize = DEFAULT_PART_SIZE;
+
+	/**
+	 * Creates a new copier with a private pool of {@link #DEFAULT_THREADS}
+	 * threads.
+	 *
+	 * @param s3
+	 *            The client used to copy objects.
+	 */
+	public MultipartCopier(AmazonS3 s3) {
+		this(s3, Executors.newFixedThreadPool(DEFAULT_THREADS), true);
+	}
+
+	/**
+	 * Creates a new copier that copies ranges on the specified executor. The
+	 * executor is not shut down by {@link #shutdown()}.
+	 *
+	 * @param s3
+	 *            The client used to copy objects.
+	 * @param executor
+	 *            The executor on which ranges are copied; its number of
+	 *            threads bounds the number of ranges copied at once.
+	 */
+	public MultipartCopier(AmazonS3 s3, ExecutorService executor) {
+		this(s3, executor, false);
+	}
+
+	private MultipartCopier(AmazonS3 s3, ExecutorService executor,
+			boolean shutdownExecutor) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (executor == null)
+			throw new IllegalArgumentException("ExecutorService cannot be null");
+
+		this.s3 = s3;
+		this.executor = executor;
+		this.shutdownExecutor = shutdownExecutor;
+	}
+
+	/**
+	 * Sets the size, in bytes, above which objects are copied in parts. It is
+	 * capped at {@link #MAXIMUM_SINGLE_COPY_SIZE}.
+	 */
+	public void setMultipartThreshold(long multipartThreshold) {
+		this.multipartThreshold = Math.min(multipartThreshold,
+				MAXIMUM_SINGLE_COPY_SIZE);
+	}
+
+	/**
+	 * Returns the size, in bytes, above which objects are copied in parts.
+	 */
+	public long getMultipartThreshold() {
+		return multipartThreshold;
+	}
+
+	/**
+	 * Sets the size, in bytes, of each copied range. Sizes too small to copy
+	 * an object within the maximum number of parts are increased for that
+	 * object.
+	 */
+	public void setPartSize(long partSize) {
+		if (partSize < MultipartUploadOutputStream.MINIMUM_PART_SIZE
+				|| partSize > MAXIMUM_SINGLE_COPY_SIZE)
+			throw new IllegalArgumentException("Part size must be between "
+					+ MultipartUploadOutputStream.MINIMUM_PART_SIZE + " and "
+					+ MAXIMUM_SINGLE_COPY_SIZE + " bytes");
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Returns the size, in bytes, of each copied range.
+	 */
+	public long getPartSize() {
+		return partSize;
+	}
+
+	/**
+	 * Copies an object, in parallel parts if it is larger than the multipart
+	 * threshold. Blocks until the copy is complete.
+	 *
+	 * @param copyObjectRequest
+	 *            The source, destination and options of the copy.
+	 *
+	 * @return The result of the copy, or null if one of the request's own
+	 *         constraints on the source was not met.
+	 *
+	 * @throws AmazonClientException
+	 *             If any part of the copy fails, or the source changed during
+	 *             a multipart copy; a multipart upload that was started is
+	 *             aborted.
+	 *
+	 * @see AmazonS3#copyObject(CopyObjectRequest)
+	 */
+	public CopyObjectResult copy(CopyObjectRequest copyObjectRequest)
+			throws AmazonClientException {
+		if (copyObjectRequest == null)
+			throw new IllegalArgumentException(
+					"CopyObjectRequest cannot be null");
+
+		GetObjectMetadataRequest headRequest = new GetObjectMetadataRequest(
+				copyObjectRequest.getSourceBucketName(),
+				copyObjectRequest.getSourceKey(),
+				copyObjectRequest.getSourceVersionId());
+		headRequest.setRequestCredentials(copyObjectRequest
+				.getRequestCredentials());
+		ObjectMetadata source = s3.getObjectMetadata(headRequest);
+		long length = source.getContentLength();
+		if (length <= multipartThreshold) {
+			return s3.copyObject(copyObjectRequest);
+		}
+
+		// Pin the source to the ETag seen above, unless the caller already
+		// constrains it, so every range comes from the same version.
+		final boolean pinned = source.getETag() != null
+				&& copyObjectRequest.getMatchingETagConstraints().isEmpty();
+
+		long size = Math.max(partSize, (length
+				+ Constants.MAXIMUM_UPLOAD_PARTS - 1)
+				/ Constants.MAXIMUM_UPLOAD_PARTS);
+		String uploadId = s3.initiateMultipartUpload(
+				initiateRequest(copyObjectRequest, source)).getUploadId();
+		Log.d(TAG, "Copying " + length + " bytes in parts of " + size
+				+ " bytes with upload " + uploadId);
+
+		List<Future<CopyPartResult>> parts = new ArrayList<Future<CopyPartResult>>();
+		try {
+			int partNumber = 1;
+			for (long offset = 0; offset < length; offset += size) {
+				final CopyPartRequest request = partRequest(copyObjectRequest,
+						pinned ? source.getETag() : null, uploadId,
+						partNumber++, offset, Math.min(length, offset + size) - 1);
+				parts.add(executor.submit(new Callable<CopyPartResult>() {
+					public CopyPartResult call() throws Exception {
+						return s3.copyPart(request);
+					}
+				}));
+			}
+
+			List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+			for (Future<CopyPartResult> part : parts) {
+				CopyPartResult result = waitFor(part);
+				if (result == null) {
+					// A constraint on the source wasn't met: either the
+					// pinned ETag, which is aborted below, or the caller's.
+					if (pinned
+							&& sourceChanged(copyObjectRequest, headRequest, source)) {
+						throw new AmazonClientException("Unable to copy "
+								+ copyObjectRequest.getSourceKey()
+								+ ": the source object changed during the copy");
+					}
+					abort(copyObjectRequest, uploadId, parts);
+					return null;
+				}
+				partETags.add(new PartETag(result.getPartNumber(), result
+						.getETag()));
+			}
+
+			CompleteMultipartUploadResult completed = s3
+					.completeMultipartUpload(new CompleteMultipartUploadRequest(
+							copyObjectRequest.getDestinationBucketName(),
+							copyObjectRequest.getDestinationKey(), uploadId,
+							partETags));
+
+			CopyObjectResult result = new CopyObjectResult();
+			result.setETag(completed.getETag());
+			result.setVersionId(completed.getVersionId());
+			result.setServerSideEncryption(completed.getServerSideEncryption());
+			result.setExpirationTime(completed.getExpirationTime());
+			result.setExpirationTimeRuleId(completed.getExpirationTimeRuleId());
+			return result;
+		} catch (RuntimeException e) {
+			abort(copyObjectRequest, uploadId, parts);
+			throw e;
+		}
+	}
+
+	/**
+	 * Shuts down the copier's thread pool, if it created one. Copies in
+	 * progress are allowed to finish.
+	 */
+	public void shutdown() {
+		if (shutdownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private InitiateMultipartUploadRequest initiateRequest(
+			CopyObjectRequest copyObjectRequest, ObjectMetadata source) {
+		ObjectMetadata metadata = copyObjectRequest.getNewObjectMetadata();
+		if (metadata == null) {
+			metadata = new ObjectMetadata();
+			metadata.setUserMetadata(new HashMap<String, String>(source
+					.getUserMetadata()));
+			if (source.getContentType() != null)
+				metadata.setContentType(source.getContentType());
+			if (source.getContentEncoding() != null)
+				metadata.setContentEncoding(source.getContentEncoding());
+			if (source.getCacheControl() != null)
+				metadata.setCacheControl(source.getCacheControl());
+			if (source.getContentDisposition() != null)
+				metadata.setContentDisposition(source.getContentDisposition());
+			if (source.getServerSideEncryption() != null)
+				metadata.setServerSideEncryption(source
+						.getServerSideEncryption());
+		}
+
+		InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(
+				copyObjectRequest.getDestinationBucketName(),
+				copyObjectRequest.getDestinationKey(), metadata)
+				.withCannedACL(copyObjectRequest.getCannedAccessControlList())
+				.withAccessControlList(copyObjectRequest.getAccessControlList())
+				.withRedirectLocation(copyObjectRequest.getRedirectLocation());
+		if (copyObjectRequest.getStorageClass() != null) {
+			request.setStorageClass(StorageClass.fromValue(copyObjectRequest
+					.getStorageClass()));
+		}
+		request.setRequestCredentials(copyObjectRequest.getRequestCredentials());
+		return request;
+	}
+
+	/**
+	 * Returns true if the source no longer has the ETag of the given metadata,
+	 * or no longer exists. If the request has no constraints of its own, a
+	 * failed constraint can only have been the pinned ETag, so the source isn't
+	 * checked again.
+	 */
+	private boolean sourceChanged(CopyObjectRequest copyObjectRequest,
+			GetObjectMetadataRequest headRequest, ObjectMetadata source) {
+		if (copyObjectRequest.getNonmatchingETagConstraints().isEmpty()
+				&& copyObjectRequest.getModifiedSinceConstraint() == null
+				&& copyObjectRequest.getUnmodifiedSinceConstraint() == null)
+			return true;
+
+		try {
+			return !source.getETag().equals(
+					s3.getObjectMetadata(headRequest).getETag());
+		} catch (AmazonServiceException ase) {
+			if (ase.getStatusCode() == 404)
+				return true;
+			throw ase;
+		}
+	}
+
+	private static CopyPartRequest partRequest(
+			CopyObjectRequest copyObjectRequest, String pinnedETag,
+			String uploadId, int partNumber, long firstByte, long lastByte) {
+		CopyPartRequest request = new CopyPartRequest()
+				.withSourceBucketName(copyObjectRequest.getSourceBucketName())
+				.withSourceKey(copyObjectRequest.getSourceKey())
+				.withSourceVersionId(copyObjectRequest.getSourceVersionId())
+				.withDestinationBucketName(
+						copyObjectRequest.getDestinationBucketName())
+				.withDestinationKey(copyObjectRequest.getDestinationKey())
+				.withUploadId(uploadId).withPartNumber(partNumber)
+				.withFirstByte(Long.valueOf(firstByte))
+				.withLastByte(Long.valueOf(lastByte))
+				.withModifiedSinceConstraint(
+						copyObjectRequest.getModifiedSinceConstraint())
+				.withUnmodifiedSinceConstraint(
+						copyObjectRequest.getUnmodifiedSinceConstraint());
+
+		List<String> matching = new ArrayList<String>(
+				copyObjectRequest.getMatchingETagConstraints());
+		if (pinnedETag != null) {
+			matching.add(pinnedETag);
+		}
+		request.setMatchingETagConstraints(matching);
+		request.setNonmatchingETagConstraints(copyObjectRequest
+				.getNonmatchingETagConstraints());
+		request.setRequestCredentials(copyObjectRequest.getRequestCredentials());
+		return request;
+	}
+
+	private static CopyPartResult waitFor(Future<CopyPartResult> part) {
+		try {
+			return part.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException(
+					"Interrupted while waiting for part copy", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof AmazonClientException)
+				throw (AmazonClientException) cause;
+			throw new AmazonClientException("Unable to copy part: "
+					+ cause.getMessage(), cause);
+		}
+	}
+
+	private void abort(CopyObjectRequest copyObjectRequest, String uploadId,
+			List<Future<CopyPartResult>> parts) {
+		for (Future<CopyPartResult> part : parts) {
+			part.cancel(true);
+		}
+		try {
+			AbortMultipartUploadRequest request = new AbortMultipartUploadRequest(
+					copyObjectRequest.getDestinationBucketName(),
+					copyObjectRequest.getDestinationKey(), uploadId);
+			request.setRequestCredentials(copyObjectRequest
+					.getRequestCredentials());
+			s3.abortMultipartUpload(request);
+		} catch (AmazonClientException e) {
+			Log.w(TAG, "Unable to abort multipart upload " + uploadId + ": "
+					+ e.getMessage(), e);
+		}
+	}
+}
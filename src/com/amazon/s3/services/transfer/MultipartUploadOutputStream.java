@@ -0,0 +1,435 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.internal.ServiceUtils;
+import com.amazon.s3.model.AbortMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadResult;
+import com.amazon.s3.model.InitiateMultipartUploadRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.PartETag;
+import com.amazon.s3.model.PutObjectRequest;
+import com.amazon.s3.model.PutObjectResult;
+import com.amazon.s3.model.UploadPartRequest;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * An output stream that uploads everything written to it to Amazon S3, without
+ * the caller needing to know the total length up front.
+ * <p>
+ * Data is cut into fixed-size parts. Each full part is uploaded with
+ * {@link AmazonS3#uploadPart(UploadPartRequest)} in the background while the
+ * caller keeps writing, and {@link #close()} uploads the final part and
+ * completes the multipart upload. At most <code>maxPartsInMemory</code> part
+ * buffers exist at any one time, so memory use is bounded by that many times
+ * the part size; writes block until a buffer becomes free.
+ * <p>
+ * If the stream is closed before a single part has filled up, the data is
+ * sent with one {@link AmazonS3#putObject(PutObjectRequest)} call instead.
+ * <p>
+ * If any part fails to upload, the multipart upload is aborted and the next
+ * call to {@link #write(byte[], int, int)} or {@link #close()} throws an
+ * <code>IOException</code> carrying the original error.
+ */
+public class MultipartUploadOutputStream extends OutputStream {
+	private static final String TAG = "###MultipartUploadOutputStream###";
+
+	/** The smallest part size Amazon S3 accepts, other than for the last part. */
+	public static final int MINIMUM_PART_SIZE = 5 * Constants.MB;
+
+	/** The default number of part buffers that may exist at once. */
+	public static final int DEFAULT_MAX_PARTS_IN_MEMORY = 4;
+
+	private final AmazonS3 s3;
+	private final InitiateMultipartUploadRequest initiateRequest;
+	private final int partSize;
+	private final ExecutorService executor;
+	private final boolean shutdownExecutor;
+
+	/** One permit per part buffer that may be allocated. */
+	private final Semaphore bufferPermits;
+	private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private final List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+
+	private byte[] buffer;
+	private int bufferLength;
+	private int nextPartNumber = 1;
+	private String uploadId;
+	private volatile Throwable failure;
+	private boolean closed;
+	private boolean aborted;
+
+	private String eTag;
+	private String versionId;
+
+	/**
+	 * Creates a new stream that uploads to the bucket and key of the specified
+	 * request, holding at most {@link #DEFAULT_MAX_PARTS_IN_MEMORY} part
+	 * buffers at once.
+	 *
+	 * @param s3
+	 *            The client used to upload the data.
+	 * @param initiateRequest
+	 *            The bucket, key, metadata, ACL and storage class of the new
+	 *            object.
+	 * @param partSize
+	 *            The size, in bytes, of each part. Must be at least
+	 *            {@link #MINIMUM_PART_SIZE}.
+	 */
+	public MultipartUploadOutputStream(AmazonS3 s3,
+			InitiateMultipartUploadRequest initiateRequest, int partSize) {
+		this(s3, initiateRequest, partSize, DEFAULT_MAX_PARTS_IN_MEMORY);
+	}
+
+	/**
+	 * Creates a new stream that uploads to the bucket and key of the specified
+	 * request, using a private thread pool with one thread per part buffer.
+	 * The pool's threads are daemon threads, so a stream that's never closed
+	 * doesn't keep the process alive.
+	 *
+	 * @param s3
+	 *            The client used to upload the data.
+	 * @param initiateRequest
+	 *            The bucket, key, metadata, ACL and storage class of the new
+	 *            object.
+	 * @param partSize
+	 *            The size, in bytes, of each part. Must be at least
+	 *            {@link #MINIMUM_PART_SIZE}.
+	 * @param maxPartsInMemory
+	 *            The maximum number of part buffers held at once, including
+	 *            the one currently being written.
+	 */
+	public MultipartUploadOutputStream(AmazonS3 s3,
+			InitiateMultipartUploadRequest initiateRequest, int partSize,
+			int maxPartsInMemory) {
+		this(s3, initiateRequest, partSize, maxPartsInMemory,
+				newDaemonThreadPool(maxPartsInMemory), true);
+	}
+
+	/**
+	 * Creates a new stream that uploads to the bucket and key of the specified
+	 * request, running part uploads on the specified executor. The executor is
+	 * not shut down when this stream is closed.
+	 *
+	 * @param s3
+	 *            The client used to upload the data.
+	 * @param initiateRequest
+	 *            The bucket, key, metadata, ACL and storage class of the new
+	 *            object.
+	 * @param partSize
+	 *            The size, in bytes, of each part. Must be at least
+	 *            {@link #MINIMUM_PART_SIZE}.
+	 * @param maxPartsInMemory
+	 *            The maximum number of part buffers held at once, including
+	 *            the one currently being written.
+	 * @param executor
+	 *            The executor on which parts are uploaded.
+	 */
+	public MultipartUploadOutputStream(AmazonS3 s3,
+			InitiateMultipartUploadRequest initiateRequest, int partSize,
+			int maxPartsInMemory, ExecutorService executor) {
+		this(s3, initiateRequest, partSize, maxPartsInMemory, executor, false);
+	}
+
+	private MultipartUploadOutputStream(AmazonS3 s3,
+			InitiateMultipartUploadRequest initiateRequest, int partSize,
+			int maxPartsInMemory, ExecutorService executor,
+			boolean shutdownExecutor) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (initiateRequest == null)
+			throw new IllegalArgumentException(
+					"InitiateMultipartUploadRequest cannot be null");
+		if (partSize < MINIMUM_PART_SIZE)
+			throw new IllegalArgumentException("Part size must be at least "
+					+ MINIMUM_PART_SIZE + " bytes");
+		if (maxPartsInMemory < 1)
+			throw new IllegalArgumentException(
+					"At least one part must be allowed in memory");
+
+		this.s3 = s3;
+		this.initiateRequest = initiateRequest;
+		this.partSize = partSize;
+		this.executor = executor;
+		this.shutdownExecutor = shutdownExecutor;
+		this.bufferPermits = new Semaphore(maxPartsInMemory);
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(int)
+	 */
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/**
+	 * Buffers the specified bytes, handing off each part to be uploaded as
+	 * soon as it fills up. Blocks while all part buffers are in use.
+	 *
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		while (len > 0) {
+			if (buffer == null) {
+				buffer = takeBuffer();
+				bufferLength = 0;
+			}
+
+			int count = Math.min(len, partSize - bufferLength);
+			System.arraycopy(b, off, buffer, bufferLength, count);
+			bufferLength += count;
+			off += count;
+			len -= count;
+
+			if (bufferLength == partSize) {
+				submitPart(false);
+			}
+		}
+	}
+
+	/**
+	 * Uploads any remaining buffered data, waits for all parts to finish and
+	 * completes the upload. Has no effect if the stream is already closed.
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		try {
+			checkFailure();
+			if (uploadId == null) {
+				putSinglePart();
+				return;
+			}
+
+			if (bufferLength > 0) {
+				submitPart(true);
+			}
+
+			List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+			for (Future<PartETag> part : parts) {
+				partETags.add(waitFor(part));
+			}
+
+			CompleteMultipartUploadResult result = s3
+					.completeMultipartUpload(new CompleteMultipartUploadRequest(
+							initiateRequest.getBucketName(), initiateRequest
+									.getKey(), uploadId, partETags));
+			eTag = result.getETag();
+			versionId = result.getVersionId();
+		} catch (IOException e) {
+			abort();
+			throw e;
+		} catch (RuntimeException e) {
+			abort();
+			throw e;
+		} finally {
+			buffer = null;
+			freeBuffers.clear();
+			if (shutdownExecutor) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Abandons this upload, aborting the multipart upload if one was started.
+	 * Any data not yet uploaded is discarded.
+	 */
+	public void abort() {
+		closed = true;
+		if (aborted)
+			return;
+		aborted = true;
+
+		for (Future<PartETag> part : parts) {
+			part.cancel(true);
+		}
+		if (uploadId != null) {
+			try {
+				s3.abortMultipartUpload(new AbortMultipartUploadRequest(
+						initiateRequest.getBucketName(), initiateRequest
+								.getKey(), uploadId));
+			} catch (AmazonClientException e) {
+				Log.w(TAG, "Unable to abort multipart upload " + uploadId
+						+ ": " + e.getMessage(), e);
+			}
+		}
+		if (shutdownExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the ETag of the uploaded object, once this stream has been
+	 * closed successfully.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Returns the version ID of the uploaded object, once this stream has been
+	 * closed successfully, if versioning is enabled for the bucket.
+	 */
+	public String getVersionId() {
+		return versionId;
+	}
+
+	/**
+	 * Returns the ID of the multipart upload, or null if none has been started
+	 * yet.
+	 */
+	public String getUploadId() {
+		return uploadId;
+	}
+
+	private void submitPart(boolean isLastPart) throws IOException {
+		if (nextPartNumber > Constants.MAXIMUM_UPLOAD_PARTS) {
+			throw new IOException("Upload would exceed the maximum of "
+					+ Constants.MAXIMUM_UPLOAD_PARTS
+					+ " parts; use a larger part size");
+		}
+		if (uploadId == null) {
+			try {
+				uploadId = s3.initiateMultipartUpload(initiateRequest)
+						.getUploadId();
+			} catch (AmazonClientException e) {
+				throw new IOException("Unable to initiate multipart upload: "
+						+ e.getMessage(), e);
+			}
+		}
+
+		final byte[] partData = buffer;
+		final UploadPartRequest request = new UploadPartRequest()
+				.withBucketName(initiateRequest.getBucketName())
+				.withKey(initiateRequest.getKey()).withUploadId(uploadId)
+				.withPartNumber(nextPartNumber++).withPartSize(bufferLength)
+				.withInputStream(
+						new ByteArrayInputStream(partData, 0, bufferLength))
+				.withLastPart(isLastPart);
+		buffer = null;
+		bufferLength = 0;
+
+		parts.add(executor.submit(new Callable<PartETag>() {
+			public PartETag call() throws Exception {
+				try {
+					return s3.uploadPart(request).getPartETag();
+				} catch (Exception e) {
+					if (failure == null)
+						failure = e;
+					throw e;
+				} finally {
+					freeBuffers.offer(partData);
+					bufferPermits.release();
+				}
+			}
+		}));
+	}
+
+	private void putSinglePart() {
+		// putObject fills in the length, MD5 and content type, so it's given
+		// a copy rather than the caller's metadata.
+		ObjectMetadata metadata = initiateRequest.getObjectMetadata();
+		metadata = metadata == null ? new ObjectMetadata() : ServiceUtils
+				.copyObjectMetadata(metadata);
+		metadata.setContentLength(bufferLength);
+
+		byte[] data = buffer == null ? new byte[0] : buffer;
+		PutObjectRequest request = new PutObjectRequest(
+				initiateRequest.getBucketName(), initiateRequest.getKey(),
+				new ByteArrayInputStream(data, 0, bufferLength), metadata)
+				.withCannedAcl(initiateRequest.getCannedACL())
+				.withAccessControlList(initiateRequest.getAccessControlList())
+				.withRedirectLocation(initiateRequest.getRedirectLocation());
+		if (initiateRequest.getStorageClass() != null)
+			request.setStorageClass(initiateRequest.getStorageClass());
+
+		PutObjectResult result = s3.putObject(request);
+		eTag = result.getETag();
+		versionId = result.getVersionId();
+	}
+
+	private static ExecutorService newDaemonThreadPool(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "aws-multipart-upload");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private byte[] takeBuffer() throws IOException {
+		try {
+			bufferPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a part buffer");
+		}
+		checkFailure();
+
+		byte[] free = freeBuffers.poll();
+		return free != null ? free : new byte[partSize];
+	}
+
+	private PartETag waitFor(Future<PartETag> part) throws IOException {
+		try {
+			return part.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for part upload");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to upload part: "
+					+ e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream has been closed");
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure;
+		if (t != null) {
+			abort();
+			throw new IOException("Unable to upload part: " + t.getMessage(), t);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.internal.ServiceUtils;
+import com.amazon.s3.model.GetObjectMetadataRequest;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.model.S3ObjectInputStream;
+import com.amazon.s3.services.AmazonS3;
+import com.amazon.s3.util.BinaryUtils;
+import com.amazon.s3.util.Md5Utils;
+
+/**
+ * Downloads an object to a local file, resuming from whatever an earlier,
+ * interrupted download left in the file.
+ * <p>
+ * The ETag and length of the object are recorded in a small journal file
+ * before any data is written. When a download is started again with the same
+ * journal, the rest of the object is fetched with a ranged GET starting at the
+ * partial file's length, pinned to the recorded ETag with an
+ * <code>If-Match</code> constraint. If the object has changed since, the
+ * partial file is discarded and the download starts again. Connection
+ * failures during the download are resumed in the same way, using a
+ * {@link ResumableObjectInputStream}.
+ * <p>
+ * When the whole object is downloaded and its ETag is an MD5 hash, the
+ * completed file is checked against it. If {@link #download()} fails, the
+ * partial file and journal are left in place so a later call can resume; the
+ * journal is deleted once the download completes.
+ */
+public class ResumableFileDownload {
+	private static final String TAG = "###ResumableFileDownload###";
+
+	private static final String JOURNAL_DOWNLOAD = "download";
+
+	private final AmazonS3 s3;
+	private final GetObjectRequest request;
+	private final File file;
+	private final File journalFile;
+	private int maxRetries = ResumableObjectInputStream.DEFAULT_MAX_RETRIES;
+
+	/**
+	 * Creates a new resumable download to the specified file.
+	 *
+	 * @param s3
+	 *            The client used to download the object.
+	 * @param request
+	 *            The object, and optionally the range and constraints, to
+	 *            download. Constraints only apply when a download starts.
+	 * @param file
+	 *            The file to write the object to.
+	 * @param journalFile
+	 *            The file in which the download is recorded. Use the same
+	 *            journal file to resume an interrupted download.
+	 */
+	public ResumableFileDownload(AmazonS3 s3, GetObjectRequest request,
+			File file, File journalFile) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (request == null)
+			throw new IllegalArgumentException(
+					"GetObjectRequest cannot be null");
+		if (file == null || journalFile == null)
+			throw new IllegalArgumentException(
+					"File and journal file cannot be null");
+
+		this.s3 = s3;
+		this.request = request;
+		this.file = file;
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Sets the number of times in a row a failed read is resumed before the
+	 * download fails. The default is
+	 * {@link ResumableObjectInputStream#DEFAULT_MAX_RETRIES}.
+	 */
+	public void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0)
+			throw new IllegalArgumentException(
+					"Maximum retries cannot be negative");
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Downloads the object, or the rest of it if an earlier download was
+	 * interrupted.
+	 *
+	 * @return The object's metadata, or null if constraints specified in the
+	 *         request weren't met.
+	 *
+	 * @throws AmazonClientException
+	 *             If the object can't be downloaded or the file or journal
+	 *             can't be written. The download can be resumed by calling
+	 *             this method again.
+	 */
+	public ObjectMetadata download() throws AmazonClientException {
+		File parentDirectory = file.getParentFile();
+		if (parentDirectory != null && !parentDirectory.exists()) {
+			parentDirectory.mkdirs();
+		}
+
+		Journal state = readJournal();
+		long offset = file.exists() ? file.length() : 0;
+		if (state != null && offset > state.length) {
+			Log.i(TAG, file + " is longer than the object; starting again");
+			state = null;
+		}
+
+		S3Object object = null;
+		GetObjectRequest currentRequest = null;
+		if (state != null && offset == state.length) {
+			ObjectMetadata metadata = s3
+					.getObjectMetadata(new GetObjectMetadataRequest(request
+							.getBucketName(), request.getKey(), request
+							.getVersionId()));
+			if (state.eTag.equals(metadata.getETag())) {
+				return finish(state, metadata);
+			}
+			Log.i(TAG, request.getKey()
+					+ " has changed since it was downloaded; starting again");
+			state = null;
+		} else if (state != null) {
+			long start = request.getRange() == null ? 0
+					: request.getRange()[0];
+			currentRequest = new GetObjectRequest(request.getBucketName(),
+					request.getKey(), request.getVersionId())
+					.withRange(start + offset, start + state.length - 1)
+					.withMatchingETagConstraint(state.eTag)
+					.withResponseHeaders(request.getResponseHeaders())
+					.withProgressListener(request.getProgressListener());
+			currentRequest.setRequestCredentials(request
+					.getRequestCredentials());
+			object = s3.getObject(currentRequest);
+			if (object == null) {
+				Log.i(TAG, request.getKey()
+						+ " has changed since the download started; starting again");
+				state = null;
+			}
+		}
+
+		if (state == null) {
+			currentRequest = request;
+			object = s3.getObject(request);
+			if (object == null)
+				return null;
+			state = new Journal();
+			state.eTag = object.getObjectMetadata().getETag();
+			state.length = object.getObjectMetadata().getContentLength();
+			offset = 0;
+			if (state.eTag != null) {
+				try {
+					writeJournal(state);
+				} catch (AmazonClientException e) {
+					try {
+						object.getObjectContent().abort();
+					} catch (IOException abortException) {
+					}
+					throw e;
+				}
+			}
+		}
+
+		S3ObjectInputStream input = new ResumableObjectInputStream(s3,
+				currentRequest, object, maxRetries);
+		OutputStream output = null;
+		try {
+			output = new FileOutputStream(file, offset > 0);
+			byte[] buffer = new byte[1024 * 10];
+			int bytesRead;
+			while ((bytesRead = input.read(buffer)) > -1) {
+				output.write(buffer, 0, bytesRead);
+			}
+		} catch (IOException e) {
+			try {
+				input.abort();
+			} catch (IOException abortException) {
+				Log.w(TAG, "Couldn't abort stream", abortException);
+			}
+			throw new AmazonClientException(
+					"Unable to store object contents to disk: "
+							+ e.getMessage(), e);
+		} finally {
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e) {
+				}
+			}
+			try {
+				input.close();
+			} catch (IOException e) {
+			}
+		}
+
+		return finish(state, object.getObjectMetadata());
+	}
+
+	/**
+	 * Checks the completed file, deletes the journal and returns the object's
+	 * metadata, with the length of the whole download.
+	 */
+	private ObjectMetadata finish(Journal state, ObjectMetadata metadata) {
+		if (request.getRange() == null && state.eTag != null
+				&& !ServiceUtils.isMultipartUploadETag(state.eTag)) {
+			byte[] clientSideHash = null;
+			try {
+				clientSideHash = Md5Utils.computeMD5Hash(new FileInputStream(
+						file));
+			} catch (Exception e) {
+				Log.w(TAG, "Unable to calculate MD5 hash to validate download: "
+						+ e.getMessage(), e);
+			}
+			if (clientSideHash != null
+					&& !Arrays.equals(clientSideHash,
+							BinaryUtils.fromHex(state.eTag))) {
+				file.delete();
+				journalFile.delete();
+				throw new AmazonClientException(
+						"Unable to verify integrity of data download.  "
+								+ "Client calculated content hash didn't match hash calculated by Amazon S3.  "
+								+ "The data stored in '"
+								+ file.getAbsolutePath()
+								+ "' was corrupt and has been deleted.");
+			}
+		}
+
+		if (journalFile.exists() && !journalFile.delete()) {
+			Log.w(TAG, "Unable to delete journal " + journalFile);
+		}
+		metadata.setContentLength(state.length);
+		return metadata;
+	}
+
+	/**
+	 * Reads the journal, returning null if there is none or it can't be
+	 * parsed.
+	 */
+	private Journal readJournal() {
+		if (!journalFile.exists())
+			return null;
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(journalFile), "UTF-8"));
+			String line = reader.readLine();
+			String[] fields = line == null ? null : line.split(" ");
+			if (fields == null || fields.length != 3
+					|| !fields[0].equals(JOURNAL_DOWNLOAD)) {
+				Log.w(TAG, "Ignoring corrupt journal " + journalFile);
+				return null;
+			}
+			Journal state = new Journal();
+			state.eTag = fields[1];
+			state.length = Long.parseLong(fields[2]);
+			return state;
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read journal " + journalFile + ": "
+					+ e.getMessage(), e);
+			return null;
+		} catch (NumberFormatException e) {
+			Log.w(TAG, "Ignoring corrupt journal " + journalFile);
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void writeJournal(Journal state) {
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(journalFile),
+					"UTF-8");
+			writer.write(JOURNAL_DOWNLOAD + " " + state.eTag + " "
+					+ state.length + "\n");
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to write journal "
+					+ journalFile + ": " + e.getMessage(), e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * The state of a download, as recorded in the journal.
+	 */
+	private static final class Journal {
+		String eTag;
+		long length;
+	}
+}
@@ -0,0 +1,472 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.model.AbortMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadRequest;
+import com.amazon.s3.model.CompleteMultipartUploadResult;
+import com.amazon.s3.model.InitiateMultipartUploadRequest;
+import com.amazon.s3.model.ListPartsRequest;
+import com.amazon.s3.model.PartETag;
+import com.amazon.s3.model.PartListing;
+import com.amazon.s3.model.PartSummary;
+import com.amazon.s3.model.UploadPartRequest;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * Uploads a local file with a multipart upload that survives the process
+ * dying part way through.
+ * <p>
+ * The upload ID, part size and the ETag of every part that has been uploaded
+ * are appended to a small journal file as the upload progresses. When an
+ * upload is started again with the same journal, the journal is reconciled
+ * with the parts Amazon S3 actually holds for that upload, using
+ * {@link AmazonS3#listParts(ListPartsRequest)}, and only the missing parts are
+ * uploaded. Parts S3 holds that the journal doesn't know about, for example
+ * because the process died just after uploading them, are kept if they have
+ * the expected size.
+ * <p>
+ * The journal also records the file's length and modification time. If the
+ * file has changed since the journal was written, or the upload it names no
+ * longer exists, the old upload is abandoned and a new one started.
+ * <p>
+ * If {@link #upload()} fails, the multipart upload and journal are left in
+ * place so a later call can resume; call {@link #abort()} to give up on the
+ * upload instead. The journal is deleted once the upload completes.
+ */
+public class ResumableFileUpload {
+	private static final String TAG = "###ResumableFileUpload###";
+
+	/** The default size of each part. */
+	public static final long DEFAULT_PART_SIZE = 8 * Constants.MB;
+
+	private static final String JOURNAL_UPLOAD = "upload";
+	private static final String JOURNAL_PART = "part";
+
+	private final AmazonS3 s3;
+	private final InitiateMultipartUploadRequest initiateRequest;
+	private final File file;
+	private final File journalFile;
+	private long partSize = DEFAULT_PART_SIZE;
+	private int threads = 1;
+
+	private Writer journal;
+
+	/**
+	 * Creates a new resumable upload of the specified file.
+	 *
+	 * @param s3
+	 *            The client used to upload the file.
+	 * @param initiateRequest
+	 *            The bucket, key, metadata, ACL and storage class of the new
+	 *            object.
+	 * @param file
+	 *            The file to upload.
+	 * @param journalFile
+	 *            The file in which progress is recorded. Use the same journal
+	 *            file to resume an interrupted upload.
+	 */
+	public ResumableFileUpload(AmazonS3 s3,
+			InitiateMultipartUploadRequest initiateRequest, File file,
+			File journalFile) {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (initiateRequest == null)
+			throw new IllegalArgumentException(
+					"InitiateMultipartUploadRequest cannot be null");
+		if (file == null || journalFile == null)
+			throw new IllegalArgumentException(
+					"File and journal file cannot be null");
+
+		this.s3 = s3;
+		this.initiateRequest = initiateRequest;
+		this.file = file;
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Sets the size, in bytes, of each part of a new upload. Sizes too small
+	 * to upload the file within the maximum number of parts are increased. A
+	 * resumed upload keeps the part size it was started with.
+	 */
+	public void setPartSize(long partSize) {
+		if (partSize < MultipartUploadOutputStream.MINIMUM_PART_SIZE)
+			throw new IllegalArgumentException("Part size must be at least "
+					+ MultipartUploadOutputStream.MINIMUM_PART_SIZE + " bytes");
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Sets the number of parts uploaded at once. The default is one.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException(
+					"At least one thread must be allowed");
+		this.threads = threads;
+	}
+
+	/**
+	 * Uploads the file, resuming from the journal if it describes an upload
+	 * of the same file, and blocks until the upload is complete.
+	 *
+	 * @return The result of completing the multipart upload.
+	 *
+	 * @throws AmazonClientException
+	 *             If a part can't be uploaded or the journal can't be
+	 *             written. The upload can be resumed by calling this method
+	 *             again.
+	 */
+	public CompleteMultipartUploadResult upload() throws AmazonClientException {
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+
+		Journal state = readJournal();
+		if (state != null
+				&& (state.length != length || state.lastModified != lastModified)) {
+			Log.i(TAG, file + " has changed since upload " + state.uploadId
+					+ " started; starting again");
+			abortQuietly(state.uploadId);
+			state = null;
+		}
+
+		if (state != null) {
+			try {
+				reconcile(state);
+			} catch (AmazonServiceException e) {
+				if (!"NoSuchUpload".equals(e.getErrorCode()))
+					throw e;
+				Log.i(TAG, "Upload " + state.uploadId
+						+ " no longer exists; starting again");
+				state = null;
+			}
+		}
+
+		if (state == null) {
+			state = new Journal();
+			state.length = length;
+			state.lastModified = lastModified;
+			state.partSize = Math.max(partSize, (length
+					+ Constants.MAXIMUM_UPLOAD_PARTS - 1)
+					/ Constants.MAXIMUM_UPLOAD_PARTS);
+			state.uploadId = s3.initiateMultipartUpload(initiateRequest)
+					.getUploadId();
+		}
+
+		openJournal(state);
+		try {
+			uploadMissingParts(state);
+			closeJournal();
+
+			List<PartETag> partETags = new ArrayList<PartETag>();
+			for (Map.Entry<Integer, String> part : state.parts.entrySet()) {
+				partETags.add(new PartETag(part.getKey().intValue(), part
+						.getValue()));
+			}
+			CompleteMultipartUploadResult result = s3
+					.completeMultipartUpload(new CompleteMultipartUploadRequest(
+							initiateRequest.getBucketName(), initiateRequest
+									.getKey(), state.uploadId, partETags));
+			if (!journalFile.delete()) {
+				Log.w(TAG, "Unable to delete journal " + journalFile);
+			}
+			return result;
+		} finally {
+			closeJournal();
+		}
+	}
+
+	/**
+	 * Abandons the upload recorded in the journal, if any, aborting the
+	 * multipart upload and deleting the journal.
+	 */
+	public void abort() {
+		Journal state = readJournal();
+		if (state != null) {
+			abortQuietly(state.uploadId);
+		}
+		journalFile.delete();
+	}
+
+	private void uploadMissingParts(final Journal state) {
+		int partCount = (int) Math.max(1, (state.length + state.partSize - 1)
+				/ state.partSize);
+
+		List<UploadPartRequest> missing = new ArrayList<UploadPartRequest>();
+		for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+			if (state.parts.containsKey(Integer.valueOf(partNumber)))
+				continue;
+			long offset = (partNumber - 1) * state.partSize;
+			missing.add(new UploadPartRequest()
+					.withBucketName(initiateRequest.getBucketName())
+					.withKey(initiateRequest.getKey())
+					.withUploadId(state.uploadId).withPartNumber(partNumber)
+					.withFile(file).withFileOffset(offset)
+					.withPartSize(Math.min(state.partSize, state.length - offset))
+					.withLastPart(partNumber == partCount));
+		}
+		Log.d(TAG, "Uploading " + missing.size() + " of " + partCount
+				+ " parts for upload " + state.uploadId);
+
+		if (threads == 1 || missing.size() <= 1) {
+			for (UploadPartRequest request : missing) {
+				uploadPart(state, request);
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, missing.size()));
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final UploadPartRequest request : missing) {
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						uploadPart(state, request);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new AmazonClientException(
+							"Interrupted while uploading parts", e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof AmazonClientException)
+						throw (AmazonClientException) cause;
+					throw new AmazonClientException("Unable to upload part: "
+							+ cause.getMessage(), cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void uploadPart(Journal state, UploadPartRequest request) {
+		PartETag partETag = s3.uploadPart(request).getPartETag();
+		synchronized (this) {
+			state.parts.put(Integer.valueOf(partETag.getPartNumber()),
+					partETag.getETag());
+			appendJournal(JOURNAL_PART + " " + partETag.getPartNumber() + " "
+					+ partETag.getETag());
+		}
+	}
+
+	/**
+	 * Replaces the journal's record of uploaded parts with the parts Amazon S3
+	 * holds that have the expected size.
+	 */
+	private void reconcile(Journal state) {
+		int partCount = (int) Math.max(1, (state.length + state.partSize - 1)
+				/ state.partSize);
+		TreeMap<Integer, String> confirmed = new TreeMap<Integer, String>();
+
+		Integer marker = null;
+		while (true) {
+			ListPartsRequest request = new ListPartsRequest(
+					initiateRequest.getBucketName(), initiateRequest.getKey(),
+					state.uploadId).withPartNumberMarker(marker);
+			PartListing listing = s3.listParts(request);
+			for (PartSummary part : listing.getParts()) {
+				int partNumber = part.getPartNumber();
+				if (partNumber > partCount)
+					continue;
+				long offset = (partNumber - 1) * state.partSize;
+				long expectedSize = Math.min(state.partSize, state.length
+						- offset);
+				String journaled = state.parts.get(Integer.valueOf(partNumber));
+				if (part.getSize() == expectedSize
+						&& (journaled == null || journaled.equals(part
+								.getETag()))) {
+					confirmed.put(Integer.valueOf(partNumber), part.getETag());
+				}
+			}
+			if (!listing.isTruncated())
+				break;
+			marker = listing.getNextPartNumberMarker();
+		}
+
+		Log.d(TAG, "Resuming upload " + state.uploadId + " with "
+				+ confirmed.size() + " of " + partCount + " parts uploaded");
+		state.parts = confirmed;
+	}
+
+	/**
+	 * Reads the journal, returning null if there is none or it can't be
+	 * parsed.
+	 */
+	private Journal readJournal() {
+		if (!journalFile.exists())
+			return null;
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(journalFile), "UTF-8"));
+			Journal state = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields[0].equals(JOURNAL_UPLOAD) && fields.length == 5) {
+					state = new Journal();
+					state.uploadId = fields[1];
+					state.partSize = Long.parseLong(fields[2]);
+					state.length = Long.parseLong(fields[3]);
+					state.lastModified = Long.parseLong(fields[4]);
+				} else if (fields[0].equals(JOURNAL_PART) && fields.length == 3
+						&& state != null) {
+					state.parts.put(Integer.valueOf(fields[1]), fields[2]);
+				}
+				// Anything else is a line torn by a crash; ignore it.
+			}
+			return state;
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read journal " + journalFile + ": "
+					+ e.getMessage(), e);
+			return null;
+		} catch (NumberFormatException e) {
+			Log.w(TAG, "Ignoring corrupt journal " + journalFile);
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the journal from the specified state and leaves it open for
+	 * appending. The new journal is written and synced to a temporary file
+	 * that is then renamed over the old one, so a crash mid-write never loses
+	 * the journal already on disk.
+	 */
+	private void openJournal(Journal state) {
+		File temp = new File(journalFile.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			writer.write(JOURNAL_UPLOAD + " " + state.uploadId + " "
+					+ state.partSize + " " + state.length + " "
+					+ state.lastModified + "\n");
+			for (Map.Entry<Integer, String> part : state.parts.entrySet()) {
+				writer.write(JOURNAL_PART + " " + part.getKey() + " "
+						+ part.getValue() + "\n");
+			}
+			writer.flush();
+			out.getFD().sync();
+			out.close();
+			out = null;
+
+			if (!temp.renameTo(journalFile)) {
+				journalFile.delete();
+				if (!temp.renameTo(journalFile))
+					throw new IOException("Unable to rename " + temp);
+			}
+
+			// Parts appended from here on are only flushed; a part lost in a
+			// crash is still found by reconciling with Amazon S3.
+			journal = new OutputStreamWriter(new FileOutputStream(journalFile,
+					true), "UTF-8");
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to write journal "
+					+ journalFile + ": " + e.getMessage(), e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	private void appendJournal(String line) {
+		try {
+			journal.write(line);
+			journal.write('\n');
+			journal.flush();
+		} catch (IOException e) {
+			throw new AmazonClientException("Unable to write journal "
+					+ journalFile + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void closeJournal() {
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to close journal " + journalFile, e);
+			}
+			journal = null;
+		}
+	}
+
+	private void abortQuietly(String uploadId) {
+		try {
+			s3.abortMultipartUpload(new AbortMultipartUploadRequest(
+					initiateRequest.getBucketName(), initiateRequest.getKey(),
+					uploadId));
+		} catch (AmazonClientException e) {
+			Log.w(TAG, "Unable to abort multipart upload " + uploadId + ": "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The state of an upload, as recorded in the journal.
+	 */
+	private static final class Journal {
+		String uploadId;
+		long partSize;
+		long length;
+		long lastModified;
+		TreeMap<Integer, String> parts = new TreeMap<Integer, String>();
+	}
+}
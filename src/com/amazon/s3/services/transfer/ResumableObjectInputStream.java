@@ -0,0 +1,303 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.exceptions.AmazonServiceException.ErrorType;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.model.S3ObjectInputStream;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * An object's content stream that recovers from connection failures part way
+ * through a download.
+ * <p>
+ * When reading from the underlying connection fails, the stream issues a
+ * ranged GET for the rest of the object, starting at the current offset, and
+ * carries on reading from the new connection. Each resumed request is pinned
+ * to the ETag of the original response with an <code>If-Match</code>
+ * constraint, so if the object is replaced in the meantime the read fails
+ * rather than splicing two versions together.
+ * <p>
+ * A read fails once the configured number of retries has been used without
+ * any data being read in between; every successful read resets the count.
+ * Objects without an ETag are never resumed.
+ * <p>
+ * Bytes from resumed requests aren't covered by the MD5 check S3 clients
+ * normally apply when a whole object is read; the <code>If-Match</code>
+ * constraint guarantees they belong to the same object.
+ */
+public class ResumableObjectInputStream extends S3ObjectInputStream {
+	private static final String TAG = "###ResumableObjectInputStream###";
+
+	/** The default number of consecutive attempts to resume a download. */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/** The maximum time, in milliseconds, to wait before resuming. */
+	private static final long MAX_BACKOFF = 20 * 1000;
+
+	private final AmazonS3 s3;
+	private final GetObjectRequest request;
+	private final String eTag;
+	private final long end;
+	private final int maxRetries;
+
+	private S3ObjectInputStream current;
+	private long position;
+	private int retries;
+	private boolean closed;
+
+	/**
+	 * Gets an object and returns it with a content stream that resumes after
+	 * connection failures.
+	 *
+	 * @param s3
+	 *            The client used to get the object and to resume reads.
+	 * @param request
+	 *            The request for the object.
+	 * @param maxRetries
+	 *            The number of times in a row a failed read is resumed.
+	 *
+	 * @return The object, or null if constraints specified in the request
+	 *         weren't met.
+	 */
+	public static S3Object getObject(AmazonS3 s3, GetObjectRequest request,
+			int maxRetries) throws AmazonClientException,
+			AmazonServiceException {
+		S3Object object = s3.getObject(request);
+		if (object == null)
+			return null;
+		object.setObjectContent(new ResumableObjectInputStream(s3, request,
+				object, maxRetries));
+		return object;
+	}
+
+	/**
+	 * Wraps the content of an object retrieved with the specified request.
+	 *
+	 * @param s3
+	 *            The client used to resume reads.
+	 * @param request
+	 *            The request the object was retrieved with.
+	 * @param object
+	 *            The object, whose content stream hasn't been read yet.
+	 * @param maxRetries
+	 *            The number of times in a row a failed read is resumed.
+	 */
+	public ResumableObjectInputStream(AmazonS3 s3, GetObjectRequest request,
+			S3Object object, int maxRetries) {
+		super(object.getObjectContent(), null);
+		if (maxRetries < 0)
+			throw new IllegalArgumentException(
+					"Maximum retries cannot be negative");
+
+		this.s3 = s3;
+		this.request = request;
+		this.eTag = object.getObjectMetadata().getETag();
+		this.maxRetries = maxRetries;
+		this.current = object.getObjectContent();
+
+		long[] range = request.getRange();
+		this.position = range == null ? 0 : range[0];
+		this.end = position + object.getObjectMetadata().getContentLength()
+				- 1;
+	}
+
+	/**
+	 * Returns the offset within the object of the next byte to be read.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (true) {
+			try {
+				int b = current.read();
+				if (b != -1) {
+					position++;
+					retries = 0;
+					return b;
+				}
+				if (position > end)
+					return -1;
+				resume(new IOException("Connection closed after " + position
+						+ " of " + (end + 1) + " bytes"));
+			} catch (IOException e) {
+				resume(e);
+			}
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		while (true) {
+			try {
+				int count = current.read(b, off, len);
+				if (count > 0) {
+					position += count;
+					retries = 0;
+					return count;
+				}
+				if (count == 0)
+					return 0;
+				if (position > end)
+					return -1;
+				resume(new IOException("Connection closed after " + position
+						+ " of " + (end + 1) + " bytes"));
+			} catch (IOException e) {
+				resume(e);
+			}
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		while (true) {
+			try {
+				long skipped = current.skip(Math.min(n, end + 1 - position));
+				position += skipped;
+				return skipped;
+			} catch (IOException e) {
+				resume(e);
+			}
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		try {
+			return current.available();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		current.close();
+	}
+
+	/**
+	 * Returns the http request currently supplying the object's content.
+	 */
+	@Override
+	public HttpRequestBase getHttpRequest() {
+		return current.getHttpRequest();
+	}
+
+	/**
+	 * Replaces the current connection with a ranged request for the rest of
+	 * the object, or rethrows the failure if that isn't possible.
+	 */
+	private void resume(IOException cause) throws IOException {
+		if (closed || eTag == null)
+			throw cause;
+
+		abortQuietly(current);
+		while (true) {
+			if (retries >= maxRetries)
+				throw cause;
+			try {
+				Thread.sleep(Math.min(MAX_BACKOFF, 100L << retries));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while resuming download");
+			}
+			retries++;
+
+			Log.w(TAG, "Resuming " + request.getBucketName() + "/"
+					+ request.getKey() + " at byte " + position + ": "
+					+ cause.getMessage());
+
+			GetObjectRequest resumeRequest = new GetObjectRequest(
+					request.getBucketName(), request.getKey(),
+					request.getVersionId()).withRange(position, end)
+					.withMatchingETagConstraint(eTag)
+					.withResponseHeaders(request.getResponseHeaders());
+			resumeRequest.setRequestCredentials(request
+					.getRequestCredentials());
+
+			S3Object object;
+			try {
+				object = s3.getObject(resumeRequest);
+			} catch (AmazonClientException e) {
+				if (!isRetryable(e)) {
+					IOException ioe = new IOException(
+							"Unable to resume download: " + e.getMessage());
+					ioe.initCause(e);
+					throw ioe;
+				}
+				continue;
+			}
+			if (object == null) {
+				throw new IOException("Unable to resume download of "
+						+ request.getBucketName() + "/" + request.getKey()
+						+ ": the object has changed since it was first read");
+			}
+			current = object.getObjectContent();
+			return;
+		}
+	}
+
+	private static boolean isRetryable(AmazonClientException e) {
+		if (!(e instanceof AmazonServiceException))
+			return true;
+		AmazonServiceException ase = (AmazonServiceException) e;
+		return ase.getErrorType() == ErrorType.Service
+				|| ase.getStatusCode() >= 500
+				|| "SlowDown".equals(ase.getErrorCode())
+				|| "RequestTimeout".equals(ase.getErrorCode());
+	}
+
+	private static void abortQuietly(S3ObjectInputStream stream) {
+		try {
+			stream.abort();
+		} catch (IOException e) {
+			// the connection is already broken
+		} catch (RuntimeException e) {
+			// the connection is already broken
+		}
+	}
+}
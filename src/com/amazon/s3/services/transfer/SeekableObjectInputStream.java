@@ -0,0 +1,376 @@
+package com.amazon.s3.services.transfer;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.util.Log;
+
+import com.amazon.s3.exceptions.AmazonClientException;
+import com.amazon.s3.exceptions.AmazonServiceException;
+import com.amazon.s3.internal.Constants;
+import com.amazon.s3.model.GetObjectMetadataRequest;
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.model.S3ObjectInputStream;
+import com.amazon.s3.services.AmazonS3;
+
+/**
+ * A random-access stream over an object's content, for readers that read a
+ * file's footer or index and then jump between the sections it points to.
+ * <p>
+ * Data is read with ranged GETs. Each request covers the read that caused it
+ * plus a read-ahead window, so a run of small sequential reads is served by a
+ * single request. A seek forward by no more than the forward-seek limit, and
+ * within the range of the open request, discards bytes from the open
+ * connection rather than issuing a new request; other seeks close the open
+ * request and the next read issues a new one. Nothing is requested until data
+ * is read, so seeking is cheap.
+ * <p>
+ * The object's length and ETag are read with a HEAD request when the stream
+ * is created, and every ranged GET is pinned to that ETag with an
+ * <code>If-Match</code> constraint. If the object is replaced while it is
+ * being read, reads fail rather than mixing data from two objects.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class SeekableObjectInputStream extends InputStream {
+	private static final String TAG = "###SeekableObjectInputStream###";
+
+	/** The default number of bytes requested beyond each read. */
+	public static final int DEFAULT_READ_AHEAD = 256 * Constants.KB;
+
+	/**
+	 * The default number of bytes a forward seek may discard from the open
+	 * connection rather than issuing a new request.
+	 */
+	public static final int DEFAULT_FORWARD_SEEK_LIMIT = 64 * Constants.KB;
+
+	private final AmazonS3 s3;
+	private final GetObjectRequest request;
+	private final ObjectMetadata metadata;
+	private final long length;
+	private int readAhead = DEFAULT_READ_AHEAD;
+	private int forwardSeekLimit = DEFAULT_FORWARD_SEEK_LIMIT;
+
+	/** The open request's content, or null if there is none. */
+	private S3ObjectInputStream current;
+
+	/** The offset of the next byte the open request will return. */
+	private long currentPosition;
+
+	/** The offset just past the last byte of the open request's range. */
+	private long currentEnd;
+
+	/** The offset of the next byte this stream will return. */
+	private long position;
+
+	private boolean closed;
+
+	/**
+	 * Opens a stream over the specified object.
+	 *
+	 * @param s3
+	 *            The client used to read the object.
+	 * @param bucketName
+	 *            The name of the bucket containing the object.
+	 * @param key
+	 *            The key of the object.
+	 */
+	public SeekableObjectInputStream(AmazonS3 s3, String bucketName, String key)
+			throws AmazonClientException, AmazonServiceException {
+		this(s3, new GetObjectRequest(bucketName, key));
+	}
+
+	/**
+	 * Opens a stream over the object specified by the request. Only the
+	 * bucket, key, version ID, response header overrides and request
+	 * credentials of the request are used.
+	 *
+	 * @param s3
+	 *            The client used to read the object.
+	 * @param request
+	 *            The object to read.
+	 */
+	public SeekableObjectInputStream(AmazonS3 s3, GetObjectRequest request)
+			throws AmazonClientException, AmazonServiceException {
+		if (s3 == null)
+			throw new IllegalArgumentException("AmazonS3 cannot be null");
+		if (request == null)
+			throw new IllegalArgumentException(
+					"GetObjectRequest cannot be null");
+
+		this.s3 = s3;
+		this.request = request;
+
+		GetObjectMetadataRequest metadataRequest = new GetObjectMetadataRequest(
+				request.getBucketName(), request.getKey(),
+				request.getVersionId());
+		metadataRequest.setRequestCredentials(request.getRequestCredentials());
+		this.metadata = s3.getObjectMetadata(metadataRequest);
+		this.length = metadata.getContentLength();
+	}
+
+	/**
+	 * Sets the number of bytes requested beyond each read. Larger windows
+	 * mean fewer requests for sequential reads, but more data transferred
+	 * and discarded for scattered ones.
+	 */
+	public void setReadAhead(int readAhead) {
+		if (readAhead < 0)
+			throw new IllegalArgumentException(
+					"Read-ahead cannot be negative");
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Returns the number of bytes requested beyond each read.
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Sets the number of bytes a forward seek may read and discard from the
+	 * open connection rather than issuing a new request.
+	 */
+	public void setForwardSeekLimit(int forwardSeekLimit) {
+		if (forwardSeekLimit < 0)
+			throw new IllegalArgumentException(
+					"Forward seek limit cannot be negative");
+		this.forwardSeekLimit = forwardSeekLimit;
+	}
+
+	/**
+	 * Returns the number of bytes a forward seek may discard from the open
+	 * connection.
+	 */
+	public int getForwardSeekLimit() {
+		return forwardSeekLimit;
+	}
+
+	/**
+	 * Returns the metadata of the object, as read when the stream was opened.
+	 */
+	public ObjectMetadata getObjectMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Returns the length of the object.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the offset of the next byte to be read.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Sets the offset of the next byte to be read. Seeking to or beyond the
+	 * end of the object is allowed; reads there return end of stream.
+	 */
+	public void seek(long newPosition) throws IOException {
+		checkOpen();
+		if (newPosition < 0)
+			throw new EOFException("Cannot seek to a negative offset");
+		position = newPosition;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int count = read(b, 0, 1);
+		return count == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		if (position >= length)
+			return -1;
+
+		ensureOpen(len);
+		int count;
+		try {
+			count = current.read(b, off,
+					(int) Math.min(len, currentEnd - currentPosition));
+			if (count == -1)
+				throw new EOFException("Connection closed at byte "
+						+ currentPosition + " of " + request.getKey());
+		} catch (IOException e) {
+			releaseCurrent(false);
+			throw e;
+		}
+		currentPosition += count;
+		position += count;
+		return count;
+	}
+
+	/**
+	 * Reads exactly <code>len</code> bytes starting at the specified offset,
+	 * without moving the stream's position.
+	 *
+	 * @throws EOFException
+	 *             If the object ends before all the bytes are read.
+	 */
+	public void readFully(long offset, byte[] b, int off, int len)
+			throws IOException {
+		long saved = position;
+		seek(offset);
+		try {
+			while (len > 0) {
+				int count = read(b, off, len);
+				if (count == -1)
+					throw new EOFException("Object ends at byte " + length);
+				off += count;
+				len -= count;
+			}
+		} finally {
+			position = saved;
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkOpen();
+		long skipped = Math.max(0, Math.min(n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkOpen();
+		if (current == null || currentPosition != position)
+			return 0;
+		return (int) Math.min(Integer.MAX_VALUE, currentEnd - currentPosition);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		closeCurrent();
+	}
+
+	/**
+	 * Makes the open request's next byte the stream's position, discarding
+	 * bytes for a short forward seek or issuing a new request otherwise.
+	 */
+	private void ensureOpen(int len) throws IOException {
+		if (current != null && position >= currentPosition
+				&& position < currentEnd
+				&& position - currentPosition <= forwardSeekLimit) {
+			try {
+				discard(position - currentPosition);
+				return;
+			} catch (IOException e) {
+				Log.w(TAG, "Unable to seek within open request: "
+						+ e.getMessage());
+			}
+		}
+
+		closeCurrent();
+		long end = Math.min(length, position + Math.max(len, 1)
+				+ (long) readAhead);
+		GetObjectRequest rangeRequest = new GetObjectRequest(
+				request.getBucketName(), request.getKey(),
+				request.getVersionId()).withRange(position, end - 1)
+				.withResponseHeaders(request.getResponseHeaders());
+		if (metadata.getETag() != null) {
+			rangeRequest.withMatchingETagConstraint(metadata.getETag());
+		}
+		rangeRequest.setRequestCredentials(request.getRequestCredentials());
+
+		S3Object object;
+		try {
+			object = s3.getObject(rangeRequest);
+		} catch (AmazonClientException e) {
+			IOException ioe = new IOException("Unable to read "
+					+ request.getKey() + " at byte " + position + ": "
+					+ e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+		if (object == null) {
+			throw new IOException("Unable to read " + request.getKey()
+					+ ": the object has changed since the stream was opened");
+		}
+		current = object.getObjectContent();
+		currentPosition = position;
+		currentEnd = end;
+	}
+
+	private void discard(long n) throws IOException {
+		byte[] buffer = null;
+		while (n > 0) {
+			long skipped = current.skip(n);
+			if (skipped <= 0) {
+				if (buffer == null)
+					buffer = new byte[(int) Math.min(n, 8 * Constants.KB)];
+				int count = current.read(buffer, 0,
+						(int) Math.min(n, buffer.length));
+				if (count == -1)
+					throw new EOFException("Connection closed at byte "
+							+ currentPosition);
+				skipped = count;
+			}
+			currentPosition += skipped;
+			n -= skipped;
+		}
+	}
+
+	/**
+	 * Releases the open request. Its connection is kept for reuse if only a
+	 * little data is left to drain, and aborted otherwise.
+	 */
+	private void closeCurrent() {
+		releaseCurrent(currentEnd - currentPosition <= forwardSeekLimit);
+	}
+
+	private void releaseCurrent(boolean reuseConnection) {
+		if (current == null)
+			return;
+		try {
+			if (reuseConnection) {
+				current.close();
+			} else {
+				current.abort();
+			}
+		} catch (IOException e) {
+			// the request is being discarded anyway
+		}
+		current = null;
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+}
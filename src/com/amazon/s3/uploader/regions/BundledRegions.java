@@ -0,0 +1,75 @@
+package com.amazon.s3.uploader.regions;
+
+/*
+ * Copyright 2013-2013 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The region table compiled into the SDK, used when no regions file is loaded.
+ * <p>
+ * The table is built directly from constants, so it needs neither network
+ * access nor XML parsing, which keeps the first region lookup cheap for
+ * short-lived processes. It lists the Amazon S3 endpoint of every region in
+ * {@link Regions}.
+ */
+final class BundledRegions {
+
+	private static final String S3 = "s3";
+
+	private BundledRegions() {
+	}
+
+	/**
+	 * Returns a new list of the bundled regions.
+	 */
+	static List<Region> create() {
+		Map<String, Region> regions = new LinkedHashMap<String, Region>();
+		addEndpoint(regions, "us-east-1", S3, "s3.amazonaws.com", true, true);
+		addEndpoint(regions, "us-west-1", S3, "s3-us-west-1.amazonaws.com",
+				true, true);
+		addEndpoint(regions, "us-west-2", S3, "s3-us-west-2.amazonaws.com",
+				true, true);
+		addEndpoint(regions, "eu-west-1", S3, "s3-eu-west-1.amazonaws.com",
+				true, true);
+		addEndpoint(regions, "ap-southeast-1", S3,
+				"s3-ap-southeast-1.amazonaws.com", true, true);
+		addEndpoint(regions, "ap-southeast-2", S3,
+				"s3-ap-southeast-2.amazonaws.com", true, true);
+		addEndpoint(regions, "ap-northeast-1", S3,
+				"s3-ap-northeast-1.amazonaws.com", true, true);
+		addEndpoint(regions, "sa-east-1", S3, "s3-sa-east-1.amazonaws.com",
+				true, true);
+		addEndpoint(regions, "us-gov-west-1", S3,
+				"s3-us-gov-west-1.amazonaws.com", true, true);
+		return new ArrayList<Region>(regions.values());
+	}
+
+	private static void addEndpoint(Map<String, Region> regions,
+			String regionName, String serviceName, String hostname,
+			boolean http, boolean https) {
+		Region region = regions.get(regionName);
+		if (region == null) {
+			region = new Region(regionName);
+			regions.put(regionName, region);
+		}
+		region.getServiceEndpoints().put(serviceName, hostname);
+		region.getHttpSupport().put(serviceName, Boolean.valueOf(http));
+		region.getHttpsSupport().put(serviceName, Boolean.valueOf(https));
+	}
+}
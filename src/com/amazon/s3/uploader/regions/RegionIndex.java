@@ -0,0 +1,141 @@
+package com.amazon.s3.uploader.regions;
+
+/*
+ * Copyright 2013-2013 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the known regions, indexed by region name, by
+ * endpoint host and by service.
+ * <p>
+ * The indexes are built once when the regions are loaded, so the lookups in
+ * {@link RegionUtils} are single hash lookups instead of scans of every
+ * region and endpoint.
+ */
+final class RegionIndex {
+
+	private final List<Region> regions;
+	private final Map<String, Region> regionsByName;
+	private final Map<String, Region> regionsByHost;
+	private final Map<String, List<Region>> regionsByService;
+
+	/**
+	 * Builds the indexes for the regions given. Where several regions share
+	 * a name or an endpoint host, the first one in the list wins, as it did
+	 * when the list was scanned.
+	 */
+	RegionIndex(List<Region> regions) {
+		Map<String, Region> byName = new HashMap<String, Region>();
+		Map<String, Region> byHost = new HashMap<String, Region>();
+		Map<String, List<Region>> byService = new HashMap<String, List<Region>>();
+
+		for (Region region : regions) {
+			if (!byName.containsKey(region.getName())) {
+				byName.put(region.getName(), region);
+			}
+			for (Map.Entry<String, String> endpoint : region
+					.getServiceEndpoints().entrySet()) {
+				String host = getHost(endpoint.getValue());
+				if (host != null && !byHost.containsKey(host)) {
+					byHost.put(host, region);
+				}
+
+				List<Region> supporting = byService.get(endpoint.getKey());
+				if (supporting == null) {
+					supporting = new ArrayList<Region>();
+					byService.put(endpoint.getKey(), supporting);
+				}
+				supporting.add(region);
+			}
+		}
+
+		for (Map.Entry<String, List<Region>> entry : byService.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+
+		this.regions = Collections.unmodifiableList(new ArrayList<Region>(
+				regions));
+		this.regionsByName = byName;
+		this.regionsByHost = byHost;
+		this.regionsByService = byService;
+	}
+
+	/**
+	 * Returns all the regions, in the order they were loaded.
+	 */
+	List<Region> getRegions() {
+		return regions;
+	}
+
+	/**
+	 * Returns the region with the name given, or null if there is none.
+	 */
+	Region getRegion(String regionName) {
+		return regionsByName.get(regionName);
+	}
+
+	/**
+	 * Returns the region with a service endpoint at the host given, or null
+	 * if there is none.
+	 */
+	Region getRegionByHost(String host) {
+		if (host == null) {
+			return null;
+		}
+		return regionsByHost.get(host.toLowerCase(Locale.US));
+	}
+
+	/**
+	 * Returns the regions that support the service given, which is empty if
+	 * there are none.
+	 */
+	List<Region> getRegionsForService(String serviceAbbreviation) {
+		List<Region> supporting = regionsByService.get(serviceAbbreviation);
+		if (supporting == null) {
+			return Collections.emptyList();
+		}
+		return supporting;
+	}
+
+	/**
+	 * Returns the lower-cased host of an endpoint on record, which is usually
+	 * a bare hostname but may also be a URL with a scheme, port or path.
+	 */
+	static String getHost(String endpoint) {
+		if (endpoint == null) {
+			return null;
+		}
+
+		int start = endpoint.indexOf("://");
+		start = start < 0 ? 0 : start + 3;
+		int end = endpoint.length();
+		for (int i = start; i < end; i++) {
+			char c = endpoint.charAt(i);
+			if (c == ':' || c == '/' || c == '?' || c == '#') {
+				end = i;
+				break;
+			}
+		}
+
+		String host = endpoint.substring(start, end).trim();
+		return host.length() == 0 ? null : host.toLowerCase(Locale.US);
+	}
+}
@@ -21,8 +21,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.http.HttpEntity;
@@ -41,40 +39,40 @@ import android.util.Log;
 
 /**
  * Utilities for working with regions.
+ * <p>
+ * The regions are loaded on first use from the file named by the
+ * <code>com.amazon.s3.uploader.regions.RegionUtils.fileOverride</code> system
+ * property if it is set, and otherwise from the table compiled into the SDK,
+ * without any network access. Call {@link #init()} to fetch the latest
+ * regions file from the network instead.
+ * <p>
+ * The loaded regions are indexed by name, endpoint host and service, so the
+ * lookups here don't scan the region list.
  */
 public class RegionUtils {
 
 	private static final String CLOUDFRONT_DISTRO = "http://aws-sdk-configurations.amazonwebservices.com/";
-	private static List<Region> regions;
+	private static volatile RegionIndex index;
 	private static final String REGIONS_FILE_OVERRIDE = RegionUtils.class
 			.getName() + ".fileOverride";
 	private static final String TAG = "###RegionUtils###";
 
 	/**
-	 * Returns a list of the available AWS regions.
+	 * Returns an unmodifiable list of the available AWS regions.
 	 */
-	public synchronized static List<Region> getRegions() {
-		if (regions == null) {
-			init();
-		}
-
-		return regions;
+	public static List<Region> getRegions() {
+		return getIndex().getRegions();
 	}
 
 	/**
-	 * Returns a list of the regions that support the service given.
+	 * Returns an unmodifiable list of the regions that support the service
+	 * given.
 	 * 
 	 * @see ServiceAbbreviations
 	 */
-	public synchronized static List<Region> getRegionsForService(
+	public static List<Region> getRegionsForService(
 			String serviceAbbreviation) {
-		List<Region> regions = new LinkedList<Region>();
-		for (Region r : getRegions()) {
-			if (r.isServiceSupported(serviceAbbreviation)) {
-				regions.add(r);
-			}
-		}
-		return regions;
+		return getIndex().getRegionsForService(serviceAbbreviation);
 	}
 
 	/**
@@ -82,22 +80,33 @@ public class RegionUtils {
 	 * null.
 	 */
 	public static Region getRegion(String regionName) {
-		for (Region r : getRegions()) {
-			if (r.getName().equals(regionName)) {
-				return r;
-			}
-		}
+		return getIndex().getRegion(regionName);
+	}
 
-		return null;
+	/**
+	 * Returns the lower-cased host of the given service in the named region,
+	 * or null if the region doesn't exist or doesn't list the service.
+	 * 
+	 * @see ServiceAbbreviations
+	 */
+	public static String getServiceHost(String regionName,
+			String serviceAbbreviation) {
+		Region region = getIndex().getRegion(regionName);
+		if (region == null) {
+			return null;
+		}
+		return RegionIndex.getHost(region
+				.getServiceEndpoint(serviceAbbreviation));
 	}
 
 	/**
-	 * Searches through all known regions to find one with any service at the
-	 * specified endpoint. If no region is found with a service at that
-	 * endpoint, an exception is thrown.
+	 * Finds the region with any service at the specified endpoint. If no
+	 * region is found with a service at that endpoint, an exception is
+	 * thrown.
 	 * 
 	 * @param endpoint
-	 *            The endpoint for any service residing in the desired region.
+	 *            The endpoint for any service residing in the desired region,
+	 *            either a URL or a bare hostname.
 	 * @return The region containing any service running at the specified
 	 *         endpoint, otherwise an exception is thrown if no region is found
 	 *         with a service at the specified endpoint.
@@ -107,21 +116,15 @@ public class RegionUtils {
 	 */
 	public static Region getRegionByEndpoint(String endpoint)
 			throws MalformedURLException {
-		URL targetEndpointUrl = null;
-		try {
-			targetEndpointUrl = new URL(endpoint);
-		} catch (MalformedURLException e) {
+		String targetHost = RegionIndex.getHost(endpoint);
+		if (targetHost == null) {
 			throw new RuntimeException("Unable to parse service endpoint: "
-					+ e.getMessage());
+					+ endpoint);
 		}
 
-		String targetHost = targetEndpointUrl.getHost();
-		for (Region region : getRegions()) {
-			for (String serviceEndpoint : region.getServiceEndpoints().values()) {
-				URL serviceEndpointUrl = new URL(serviceEndpoint);
-				if (serviceEndpointUrl.getHost().equals(targetHost))
-					return region;
-			}
+		Region region = getIndex().getRegionByHost(targetHost);
+		if (region != null) {
+			return region;
 		}
 
 		throw new RuntimeException(
@@ -153,11 +156,45 @@ public class RegionUtils {
 		}
 
 		// Fall back onto the version we ship with the SDK
-		if (regions == null) {
+		if (index == null) {
 			initSDKRegions();
 		}
 	}
 
+	/**
+	 * Loads the regions from the override file, if one is specified, or from
+	 * the bundled table, unless they have already been loaded.
+	 */
+	private static synchronized RegionIndex initDefaultRegions() {
+		if (index == null) {
+			if (System.getProperty(REGIONS_FILE_OVERRIDE) != null) {
+				init();
+			} else {
+				setRegions(BundledRegions.create());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of the loaded regions, loading them first if needed.
+	 */
+	private static RegionIndex getIndex() {
+		RegionIndex current = index;
+		if (current == null) {
+			current = initDefaultRegions();
+		}
+
+		return current;
+	}
+
+	/**
+	 * Indexes the regions given and makes them the current regions.
+	 */
+	private static void setRegions(List<Region> regions) {
+		index = new RegionIndex(regions);
+	}
+
 	private static void loadRegionsFromOverrideFile()
 			throws FileNotFoundException {
 		System.setProperty("com.amazonaws.sdk.disableCertChecking", "true");
@@ -172,7 +209,7 @@ public class RegionUtils {
 	private static void initRegions(InputStream regionsFile) {
 		try {
 			RegionMetadataParser parser = new RegionMetadataParser();
-			regions = parser.parseRegionMetadata(regionsFile);
+			setRegions(parser.parseRegionMetadata(regionsFile));
 		} catch (Exception e) {
 			Log.w(TAG, "Failed to parse regional endpoints", e);
 		}
@@ -186,7 +223,12 @@ public class RegionUtils {
 		ClassLoader classLoader = RegionUtils.class.getClassLoader();
 		InputStream inputStream = classLoader
 				.getResourceAsStream("/etc/regions.xml");
-		initRegions(inputStream);
+		if (inputStream != null) {
+			initRegions(inputStream);
+		}
+		if (index == null) {
+			setRegions(BundledRegions.create());
+		}
 	}
 
 	/**
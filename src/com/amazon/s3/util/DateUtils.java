@@ -81,6 +81,93 @@ public class DateUtils {
         }
     }
 
+    /**
+     * Parses an ISO 8601 date in one of the two formats S3 returns, with or
+     * without milliseconds, directly from characters and without locking.
+     * Dates in any other form, including out of range fields and years before
+     * 1900, aren't handled here; callers should fall back to
+     * {@link #parseIso8601Date(String)} for those.
+     *
+     * @param chars
+     *            The characters holding the date.
+     * @param offset
+     *            The offset of the date in the characters.
+     * @param length
+     *            The length of the date.
+     *
+     * @return The time in milliseconds since the epoch, or
+     *         {@link Long#MIN_VALUE} if the date isn't in a handled form.
+     */
+    public static long parseIso8601Time(char[] chars, int offset, int length) {
+        if (length != 20 && length != 24)
+            return Long.MIN_VALUE;
+        if (chars[offset + 4] != '-' || chars[offset + 7] != '-'
+                || chars[offset + 10] != 'T' || chars[offset + 13] != ':'
+                || chars[offset + 16] != ':'
+                || chars[offset + length - 1] != 'Z')
+            return Long.MIN_VALUE;
+
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        int second = digits(chars, offset + 17, 2);
+        int millis = 0;
+        if (length == 24) {
+            if (chars[offset + 19] != '.')
+                return Long.MIN_VALUE;
+            millis = digits(chars, offset + 20, 3);
+        }
+
+        if (year < 1900 || month < 1 || month > 12 || day < 1
+                || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59
+                || millis < 0)
+            return Long.MIN_VALUE;
+
+        // Days since the epoch in the proleptic Gregorian calendar, counting
+        // years from March so the leap day falls at the end of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * Returns the value of the specified number of decimal digits, or -1 if
+     * any of the characters isn't a digit.
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
     /**
      * Formats the specified date as an ISO 8601 string.
      *
@@ -23,6 +23,7 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -54,6 +55,18 @@ public class Md5Utils {
         }
     }
 
+    /**
+     * Computes the MD5 hash of the remaining data in the given buffer and
+     * returns it as an array of bytes. The data is digested in place, so
+     * direct and memory-mapped buffers aren't copied onto the heap, and the
+     * buffer is left at its limit.
+     */
+    public static byte[] computeMD5Hash(ByteBuffer data) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        messageDigest.update(data);
+        return messageDigest.digest();
+    }
+
     /**
      * Computes the MD5 hash of the given data and returns it as an array of
      * bytes.
@@ -30,14 +30,28 @@ public class VersionInfoUtils {
 
 	private static final String TAG = "###VersionInfoUtils###";
 
-	/** SDK version info */
-	private static String version = null;
-
-	/** SDK platform info */
-	private static String platform = null;
+	/**
+	 * Holds the SDK version info, which is loaded when this class is first
+	 * initialized, the first time it is requested.
+	 */
+	private static final class VersionHolder {
+		static final String VERSION;
+		static final String PLATFORM;
+
+		static {
+			Properties versionInfo = loadVersionInfo();
+			VERSION = versionInfo.getProperty("version");
+			PLATFORM = versionInfo.getProperty("platform");
+		}
+	}
 
-	/** User Agent info */
-	private static String userAgent = null;
+	/**
+	 * Holds the User Agent info, which is built the first time it is
+	 * requested.
+	 */
+	private static final class UserAgentHolder {
+		static final String USER_AGENT = buildUserAgent();
+	}
 
 	/**
 	 * Returns the current version for the AWS SDK in which this class is
@@ -50,11 +64,7 @@ public class VersionInfoUtils {
 	 *         available.
 	 */
 	public static String getVersion() {
-		if (version == null) {
-			initializeVersion();
-		}
-
-		return version;
+		return VersionHolder.VERSION;
 	}
 
 	/**
@@ -68,11 +78,7 @@ public class VersionInfoUtils {
 	 *         available.
 	 */
 	public static String getPlatform() {
-		if (platform == null) {
-			initializeVersion();
-		}
-
-		return platform;
+		return VersionHolder.PLATFORM;
 	}
 
 	/**
@@ -81,19 +87,14 @@ public class VersionInfoUtils {
 	 *         region information.
 	 */
 	public static String getUserAgent() {
-		if (userAgent == null) {
-			initializeUserAgent();
-		}
-
-		return userAgent;
+		return UserAgentHolder.USER_AGENT;
 	}
 
 	/**
-	 * Loads the versionInfo.properties file from the AWS Java SDK and stores
-	 * the information so that the file doesn't have to be read the next time
-	 * the data is needed.
+	 * Loads the versionInfo.properties file from the AWS Java SDK, falling back
+	 * to placeholder values if it isn't available.
 	 */
-	private static void initializeVersion() {
+	private static Properties loadVersionInfo() {
 		InputStream inputStream = VersionInfoUtils.class.getClassLoader()
 				.getResourceAsStream(VERSION_INFO_FILE);
 		Properties versionInfoProperties = new Properties();
@@ -103,23 +104,32 @@ public class VersionInfoUtils {
 						+ " not found on classpath");
 
 			versionInfoProperties.load(inputStream);
-			version = versionInfoProperties.getProperty("version");
-			platform = versionInfoProperties.getProperty("platform");
+			if (versionInfoProperties.getProperty("version") == null
+					|| versionInfoProperties.getProperty("platform") == null)
+				throw new Exception(VERSION_INFO_FILE
+						+ " is missing version or platform");
 		} catch (Exception e) {
 			Log.i(TAG,
 					"Unable to load version information for the running SDK: "
 							+ e.getMessage());
-			version = "unknown-version";
-			platform = "java";
+			versionInfoProperties.setProperty("version", "unknown-version");
+			versionInfoProperties.setProperty("platform", "java");
+		} finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (Exception e) {
+				}
+			}
 		}
+		return versionInfoProperties;
 	}
 
 	/**
-	 * Loads the versionInfo.properties file from the AWS Java SDK and stores
-	 * the information so that the file doesn't have to be read the next time
-	 * the data is needed.
+	 * Builds the User Agent string from the SDK version info and the system
+	 * properties describing the platform.
 	 */
-	private static void initializeUserAgent() {
+	private static String buildUserAgent() {
 		StringBuilder buffer = new StringBuilder(1024);
 		buffer.append("aws-sdk-" + VersionInfoUtils.getPlatform().toLowerCase()
 				+ "/");
@@ -141,6 +151,6 @@ public class VersionInfoUtils {
 
 		buffer.append(region);
 
-		userAgent = buffer.toString();
+		return buffer.toString();
 	}
 }
@@ -22,8 +22,13 @@ import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
@@ -48,6 +53,11 @@ import android.util.Log;
 /**
  * Utility methods for extracting data from XML documents using Xpath
  * expressions.
+ * <p>
+ * Only simple paths of element names separated by slashes are supported.
+ * Each distinct path is split into its element names once and cached, and
+ * each thread reuses its own document builder, so repeated evaluations don't
+ * redo that work.
  */
 public class XpathUtils {
 
@@ -58,16 +68,48 @@ public class XpathUtils {
 
     private static DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 
+    /** The document builder reused by each thread. */
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+
+    /** The most paths that are cached, to bound the cache if callers build paths dynamically. */
+    private static final int MAX_CACHED_PATHS = 512;
+
+    /** The element names of each path evaluated so far. */
+    private static final ConcurrentMap<String, String[]> compiledPaths = new ConcurrentHashMap<String, String[]>();
+
 
     public static Document documentFrom(InputStream is)
             throws SAXException, IOException, ParserConfigurationException {
         is = new NamespaceRemovingInputStream(is);
-        Document doc = factory.newDocumentBuilder().parse(is);
+        DocumentBuilder builder = getDocumentBuilder();
+        Document doc;
+        try {
+            doc = builder.parse(is);
+        } finally {
+            builder.reset();
+        }
         is.close();
 		
         return doc;
     }
 
+    /**
+     * Returns the document builder for the current thread, creating it on
+     * first use. The shared factory isn't thread safe, so builders are
+     * created while holding its lock.
+     */
+    private static DocumentBuilder getDocumentBuilder()
+            throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilder.get();
+        if (builder == null) {
+            synchronized (factory) {
+                builder = factory.newDocumentBuilder();
+            }
+            documentBuilder.set(builder);
+        }
+        return builder;
+    }
+
     public static Document documentFrom(String xml) throws SAXException,
             IOException, ParserConfigurationException {
         return documentFrom(new ByteArrayInputStream(xml.getBytes()));
@@ -363,27 +405,7 @@ public class XpathUtils {
     }
 	
 	private static String evaluateXPath( Node node, String xPath ) {
-		int currentSearchIndex = 0;
-		while ( currentSearchIndex < xPath.length() ) {
-		
-			int endingIndex = xPath.indexOf( "/", currentSearchIndex );
-			
-			String noderNameFromXPath = null;
-			if ( endingIndex == -1 ) {
-				noderNameFromXPath = xPath.substring( currentSearchIndex );
-			}
-			else {
-				noderNameFromXPath = xPath.substring( currentSearchIndex, endingIndex );
-			}
-			
-			node = findChildNodeWithName( node, noderNameFromXPath );
-			
-			if ( endingIndex == -1 ) {
-				break;
-			}
-			
-			currentSearchIndex = endingIndex + 1;
-		}
+		node = findPathNode( node, xPath );
 		
 		if ( node != null && node.getFirstChild() != null ) {
 			return node.getFirstChild().getNodeValue();
@@ -397,55 +419,54 @@ public class XpathUtils {
 	}
 	
 	private static Node findXPathNode( Node node, String xPath ) {
-		int currentSearchIndex = 0;
-		while ( currentSearchIndex < xPath.length() ) {
+		return findPathNode( node, xPath );
+	}
+	
+	private static NodeList findXPathNodeList( Node node, String xPath ) {
+		node = findPathNode( node, xPath );
 		
-			int endingIndex = xPath.indexOf( "/", currentSearchIndex );
-			
-			String noderNameFromXPath = null;
-			if ( endingIndex == -1 ) {
-				noderNameFromXPath = xPath.substring( currentSearchIndex );
-			}
-			else {
-				noderNameFromXPath = xPath.substring( currentSearchIndex, endingIndex );
-			}
-			
-			node = findChildNodeWithName( node, noderNameFromXPath );
-			
-			if ( endingIndex == -1 ) {
-				break;
-			}
-			
-			currentSearchIndex = endingIndex + 1;
+		return node.getChildNodes();
+	}
+
+	/**
+	 * Follows the element names of the specified path from the specified
+	 * node, returning the node reached or null if there is none.
+	 */
+	private static Node findPathNode( Node node, String xPath ) {
+		String[] nodeNames = compilePath( xPath );
+		for ( int i = 0; i < nodeNames.length; i++ ) {
+			node = findChildNodeWithName( node, nodeNames[i] );
 		}
-		
 		return node;
 	}
-	
-	private static NodeList findXPathNodeList( Node node, String xPath ) {
+
+	/**
+	 * Returns the element names of the specified path, splitting it and
+	 * caching the result the first time the path is seen.
+	 */
+	private static String[] compilePath( String xPath ) {
+		String[] nodeNames = compiledPaths.get( xPath );
+		if ( nodeNames != null ) {
+			return nodeNames;
+		}
+
+		List<String> names = new ArrayList<String>();
 		int currentSearchIndex = 0;
 		while ( currentSearchIndex < xPath.length() ) {
-		
 			int endingIndex = xPath.indexOf( "/", currentSearchIndex );
-			
-			String noderNameFromXPath = null;
-			if ( endingIndex == -1 ) {
-				noderNameFromXPath = xPath.substring( currentSearchIndex );
-			}
-			else {
-				noderNameFromXPath = xPath.substring( currentSearchIndex, endingIndex );
-			}
-			
-			node = findChildNodeWithName( node, noderNameFromXPath );
-			
 			if ( endingIndex == -1 ) {
+				names.add( xPath.substring( currentSearchIndex ) );
 				break;
 			}
-			
+			names.add( xPath.substring( currentSearchIndex, endingIndex ) );
 			currentSearchIndex = endingIndex + 1;
 		}
-		
-		return node.getChildNodes();
+
+		nodeNames = names.toArray( new String[names.size()] );
+		if ( compiledPaths.size() < MAX_CACHED_PATHS ) {
+			compiledPaths.putIfAbsent( xPath, nodeNames );
+		}
+		return nodeNames;
 	}
 
 	private static Node findChildNodeWithName( Node node, String childName ) {
@@ -0,0 +1,132 @@
+package com.amazon.s3.internal;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepeatableFileChannelInputStreamTest {
+
+	private File file;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws IOException {
+		data = new byte[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		file = File.createTempFile("repeatable-channel", ".tmp");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * The HTTP client closes the content after every attempt, and a retry
+	 * resets it and reads it again.
+	 */
+	@Test
+	public void readsAgainAfterCloseAndReset() throws IOException {
+		RepeatableFileChannelInputStream in = new RepeatableFileChannelInputStream(
+				file);
+		in.mark(-1);
+		assertArrayEquals(data, readFully(in));
+		in.close();
+
+		in.reset();
+		assertArrayEquals(data, readFully(in));
+		in.close();
+	}
+
+	@Test
+	public void resetAfterCloseReturnsToMark() throws IOException {
+		RepeatableFileChannelInputStream in = new RepeatableFileChannelInputStream(
+				file, 100, 1000);
+		in.skip(200);
+		in.mark(-1);
+		in.read(new byte[300]);
+		in.close();
+
+		in.reset();
+		byte[] expected = new byte[800];
+		System.arraycopy(data, 300, expected, 0, expected.length);
+		assertArrayEquals(expected, readFully(in));
+		in.close();
+	}
+
+	@Test
+	public void readsAgainAfterCloseAndResetOnSharedChannel()
+			throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			RepeatableFileChannelInputStream in = new RepeatableFileChannelInputStream(
+					channel, 0, data.length, false);
+			in.mark(-1);
+			assertArrayEquals(data, readFully(in));
+			in.close();
+			assertTrue(channel.isOpen());
+
+			in.reset();
+			assertArrayEquals(data, readFully(in));
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Test
+	public void readAfterCloseFails() throws IOException {
+		RepeatableFileChannelInputStream in = new RepeatableFileChannelInputStream(
+				file);
+		in.close();
+		try {
+			in.read();
+			fail("Expected an IOException");
+		} catch (IOException expected) {
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+}
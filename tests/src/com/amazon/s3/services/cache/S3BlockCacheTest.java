@@ -0,0 +1,123 @@
+package com.amazon.s3.services.cache;
+
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazon.s3.model.GetObjectRequest;
+import com.amazon.s3.model.ObjectMetadata;
+import com.amazon.s3.model.S3Object;
+import com.amazon.s3.services.AmazonS3;
+
+public class S3BlockCacheTest {
+
+	private static final int BLOCK_SIZE = 16;
+
+	private byte[] data;
+	private ObjectMetadata metadata;
+	private S3BlockCache cache;
+
+	@Before
+	public void setUp() {
+		data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		metadata = new ObjectMetadata();
+		metadata.setContentLength(data.length);
+		metadata.setHeader("ETag", "abc");
+		cache = new S3BlockCache(rangedGets(data), null, 0, 1024, BLOCK_SIZE);
+	}
+
+	@Test
+	public void secondReadIsServedFromCache() {
+		byte[] first = cache.getRange(range("idx", 10, 20), metadata);
+		byte[] second = cache.getRange(range("idx", 10, 20), metadata);
+
+		assertArrayEquals(slice(10, 20), first);
+		assertArrayEquals(slice(10, 20), second);
+		assertEquals(1, cache.getRequestCount());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void invalidatedBlocksAreFetchedAgain() {
+		cache.getRange(range("idx", 0, 5), metadata);
+		assertEquals(1, cache.getMissCount());
+
+		cache.invalidate("bkt", "idx");
+		assertEquals(0, cache.getMemorySize());
+
+		assertArrayEquals(slice(0, 5),
+				cache.getRange(range("idx", 0, 5), metadata));
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void invalidateLeavesOtherKeysCached() {
+		cache.getRange(range("idx", 0, 5), metadata);
+		cache.getRange(range("idx2", 0, 5), metadata);
+
+		cache.invalidate("bkt", "idx");
+
+		cache.getRange(range("idx2", 0, 5), metadata);
+		assertEquals(1, cache.getHitCount());
+	}
+
+	private static GetObjectRequest range(String key, long start, long end) {
+		return new GetObjectRequest("bkt", key).withRange(start, end);
+	}
+
+	private byte[] slice(int start, int end) {
+		byte[] slice = new byte[end - start + 1];
+		System.arraycopy(data, start, slice, 0, slice.length);
+		return slice;
+	}
+
+	/**
+	 * Returns a client that answers ranged GETs of any object with the
+	 * specified content.
+	 */
+	private static AmazonS3 rangedGets(final byte[] content) {
+		return (AmazonS3) Proxy.newProxyInstance(
+				AmazonS3.class.getClassLoader(),
+				new Class<?>[] { AmazonS3.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (!method.getName().equals("getObject")
+								|| !(args[0] instanceof GetObjectRequest))
+							throw new UnsupportedOperationException(method
+									.getName());
+						long[] range = ((GetObjectRequest) args[0]).getRange();
+						S3Object object = new S3Object();
+						object.setObjectContent(new ByteArrayInputStream(
+								content, (int) range[0],
+								(int) (range[1] - range[0] + 1)));
+						return object;
+					}
+				});
+	}
+}